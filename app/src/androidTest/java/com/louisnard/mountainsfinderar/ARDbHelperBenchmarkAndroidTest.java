@@ -0,0 +1,206 @@
+package com.louisnard.mountainsfinderar;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.location.Location;
+import android.support.test.InstrumentationRegistry;
+import android.util.Log;
+
+import com.louisnard.mountainsfinderar.model.database.ARDbContract;
+import com.louisnard.mountainsfinderar.model.database.ARDbHelper;
+import com.louisnard.mountainsfinderar.model.objects.Point;
+import com.louisnard.mountainsfinderar.model.services.PointService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Android benchmark of {@link ARDbHelper#getPointsAround(Location, int)} query time:<br>
+ * - Versus the points table size, with and without the spatial index.<br>
+ * - With the {@link SQLiteDatabase} kept open between queries, and closed after each query as {@link ARDbHelper} used to do.<br>
+ * And of the whole points table reading, as {@link Point}s by {@link ARDbHelper#getAllPoints()}.<br>
+ * And of the full-text search by {@link ARDbHelper#findPointsByName(String)}, versus a LIKE query on the points table.<br>
+ * Results are written to the log under the {@link #TAG} tag.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class ARDbHelperBenchmarkAndroidTest {
+
+    // Tag
+    private static final String TAG = ARDbHelperBenchmarkAndroidTest.class.getSimpleName();
+
+    // Constants
+    private static final String DATABASE_NAME = "benchmark.db";
+    private static final int[] TABLE_SIZES = new int[] {1000, 10000, 100000};
+    private static final int CONNECTION_BENCHMARK_TABLE_SIZE = 10000;
+    private static final int ALL_POINTS_BENCHMARK_TABLE_SIZE = 100000;
+    private static final int ALL_POINTS_READINGS_NUMBER = 5;
+    private static final int SEARCH_BENCHMARK_TABLE_SIZE = 100000;
+    private static final int SEARCHES_NUMBER = 20;
+    private static final int QUERIES_NUMBER = 50;
+    private static final int SEARCH_DISTANCE = 10000;
+    // Points are spread over metropolitan France
+    private static final double LATITUDE_MIN = 42;
+    private static final double LATITUDE_MAX = 51;
+    private static final double LONGITUDE_MIN = -5;
+    private static final double LONGITUDE_MAX = 8;
+
+    private Context mContext;
+    private ARDbHelper mDbHelper;
+    private final Random mRandom = new Random(42);
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDbHelper = ARDbHelper.newTestInstance(mContext, DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    /**
+     * Benchmarks {@link ARDbHelper#getPointsAround(Location, int)} with and without the spatial index for growing table sizes.
+     */
+    @Test
+    public void benchmark_getPointsAround() {
+        final Location location = new Location("");
+        location.setLatitude(45.1916626);
+        location.setLongitude(5.7385538);
+        int tableSize = 0;
+        for (int targetSize : TABLE_SIZES) {
+            insertRandomPoints(targetSize - tableSize);
+            tableSize = targetSize;
+
+            final long indexedNanos = medianQueryNanos(location);
+            mDbHelper.getWritableDatabase().execSQL("DROP INDEX " + ARDbContract.PointsColumns.INDEX_TILE);
+            final long fullScanNanos = medianQueryNanos(location);
+            mDbHelper.getWritableDatabase().execSQL("CREATE INDEX " + ARDbContract.PointsColumns.INDEX_TILE + " ON " + ARDbContract.PointsColumns.TABLE_NAME + "(" + ARDbContract.PointsColumns.COLUMN_TILE + ")");
+
+            Log.i(TAG, "getPointsAround() on " + tableSize + " points: " + indexedNanos / 1000 + "µs with the spatial index, " + fullScanNanos / 1000 + "µs with a full table scan");
+            assertTrue(indexedNanos > 0 && fullScanNanos > 0);
+        }
+    }
+
+    /**
+     * Benchmarks repeated {@link ARDbHelper#getPointsAround(Location, int)} calls with the {@link SQLiteDatabase} kept open, and closed after each call.
+     */
+    @Test
+    public void benchmark_getPointsAround_connection() {
+        final Location location = new Location("");
+        location.setLatitude(45.1916626);
+        location.setLongitude(5.7385538);
+        insertRandomPoints(CONNECTION_BENCHMARK_TABLE_SIZE);
+
+        final long openNanos = medianQueryNanos(location);
+        final long reopenNanos = medianQueryNanos(location, true);
+
+        Log.i(TAG, "getPointsAround() on " + CONNECTION_BENCHMARK_TABLE_SIZE + " points: " + openNanos / 1000 + "µs with the database kept open, " + reopenNanos / 1000 + "µs when closing it after each query");
+        assertTrue(openNanos > 0 && reopenNanos > 0);
+    }
+
+    /**
+     * Benchmarks the reading of the whole points table by {@link ARDbHelper#getAllPoints()}.
+     */
+    @Test
+    public void benchmark_getAllPoints() {
+        insertRandomPoints(ALL_POINTS_BENCHMARK_TABLE_SIZE);
+
+        final long[] pointsDurations = new long[ALL_POINTS_READINGS_NUMBER];
+        for (int i = 0; i < ALL_POINTS_READINGS_NUMBER; i++) {
+            final long start = System.nanoTime();
+            final List<Point> points = mDbHelper.getAllPoints();
+            pointsDurations[i] = System.nanoTime() - start;
+            assertEquals(ALL_POINTS_BENCHMARK_TABLE_SIZE, points.size());
+        }
+        Arrays.sort(pointsDurations);
+
+        Log.i(TAG, "Reading " + ALL_POINTS_BENCHMARK_TABLE_SIZE + " points: " + pointsDurations[ALL_POINTS_READINGS_NUMBER / 2] / 1000000 + "ms as Points");
+    }
+
+    /**
+     * Benchmarks {@link ARDbHelper#findPointsByName(String)} versus a LIKE query, and checks that it finds the names by word prefixes regardless of case and accents.
+     */
+    @Test
+    public void benchmark_findPointsByName() {
+        insertRandomPoints(SEARCH_BENCHMARK_TABLE_SIZE);
+        mDbHelper.addPoint(new Point("Dent Blanche", 45.9866, 7.6115, 4357));
+        mDbHelper.addPoint(new Point("Barre des Écrins", 44.9220, 6.3597, 4102));
+
+        final long[] searchDurations = new long[SEARCHES_NUMBER];
+        final long[] likeDurations = new long[SEARCHES_NUMBER];
+        final SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        for (int i = 0; i < SEARCHES_NUMBER; i++) {
+            long start = System.nanoTime();
+            final List<Point> points = mDbHelper.findPointsByName("dent bl");
+            searchDurations[i] = System.nanoTime() - start;
+            start = System.nanoTime();
+            final Cursor cursor = db.query(ARDbContract.PointsColumns.TABLE_NAME, null, ARDbContract.PointsColumns.COLUMN_NAME + " LIKE ?", new String[] {"%Dent Bl%"}, null, null, null);
+            while (cursor.moveToNext()) {
+                // Read all rows
+            }
+            cursor.close();
+            likeDurations[i] = System.nanoTime() - start;
+            assertEquals(1, points.size());
+            assertEquals("Dent Blanche", points.get(0).getName());
+        }
+        Arrays.sort(searchDurations);
+        Arrays.sort(likeDurations);
+        assertEquals(1, mDbHelper.findPointsByName("ecrins").size());
+
+        Log.i(TAG, "Searching a name among " + SEARCH_BENCHMARK_TABLE_SIZE + " points: " + searchDurations[SEARCHES_NUMBER / 2] / 1000 + "µs with the full-text search table, "
+                + likeDurations[SEARCHES_NUMBER / 2] / 1000 + "µs with a LIKE query");
+    }
+
+    // Returns the median duration of QUERIES_NUMBER calls to getPointsAround(), in nanoseconds
+    private long medianQueryNanos(Location location) {
+        return medianQueryNanos(location, false);
+    }
+
+    // Returns the median duration of QUERIES_NUMBER calls to getPointsAround(), in nanoseconds, optionally closing the database after each call
+    private long medianQueryNanos(Location location, boolean closeDatabase) {
+        final long[] durations = new long[QUERIES_NUMBER];
+        for (int i = 0; i < QUERIES_NUMBER; i++) {
+            final long start = System.nanoTime();
+            mDbHelper.getPointsAround(location, SEARCH_DISTANCE);
+            if (closeDatabase) {
+                mDbHelper.close();
+            }
+            durations[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(durations);
+        return durations[QUERIES_NUMBER / 2];
+    }
+
+    // Inserts random points in a single transaction
+    private void insertRandomPoints(int number) {
+        final SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        final String sql = "INSERT INTO " + ARDbContract.PointsColumns.TABLE_NAME + " ("
+                + ARDbContract.PointsColumns.COLUMN_NAME + "," + ARDbContract.PointsColumns.COLUMN_LATITUDE + "," + ARDbContract.PointsColumns.COLUMN_LONGITUDE + ","
+                + ARDbContract.PointsColumns.COLUMN_ALTITUDE + "," + ARDbContract.PointsColumns.COLUMN_TILE + ") VALUES (?,?,?,?,?)";
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < number; i++) {
+                final double latitude = LATITUDE_MIN + mRandom.nextDouble() * (LATITUDE_MAX - LATITUDE_MIN);
+                final double longitude = LONGITUDE_MIN + mRandom.nextDouble() * (LONGITUDE_MAX - LONGITUDE_MIN);
+                db.execSQL(sql, new Object[] {"Point " + i, latitude, longitude, mRandom.nextInt(4800), PointService.getTileKey(latitude, longitude)});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
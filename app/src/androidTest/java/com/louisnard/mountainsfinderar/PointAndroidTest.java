@@ -208,11 +208,12 @@ public class PointAndroidTest {
         assertEquals(angle, a.verticalAngleTo(b), ERROR_TOLERANCE * 360);
         assertEquals(-angle, b.verticalAngleTo(a), ERROR_TOLERANCE * 360);
 
+        // Each pole is straight down through the Earth from the other one, raised by the refraction
         a = MockPoint.mNorthPolePoint;
         b = MockPoint.mSouthPolePoint;
-        angle = 0f;
+        angle = -90f * (1 - PointService.REFRACTION_COEFFICIENT);
         assertEquals(angle, a.verticalAngleTo(b), ERROR_TOLERANCE * 360);
-        assertEquals(-angle, b.verticalAngleTo(a), ERROR_TOLERANCE * 360);
+        assertEquals(angle, b.verticalAngleTo(a), ERROR_TOLERANCE * 360);
 
         a = MockPoint.mZeroPoint;
         b = new Point("100m away and 100m above from point zero", PointService.metersToDegrees(100), 0, 100);
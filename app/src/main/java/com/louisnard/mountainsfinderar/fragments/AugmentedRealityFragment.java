@@ -23,13 +23,18 @@ import com.louisnard.mountainsfinderar.R;
 import com.louisnard.mountainsfinderar.debug.DevUtils;
 import com.louisnard.mountainsfinderar.model.Utils;
 import com.louisnard.mountainsfinderar.model.database.ARDbHelper;
+import com.louisnard.mountainsfinderar.model.database.PointRepository;
+import com.louisnard.mountainsfinderar.model.database.PointsFile;
+import com.louisnard.mountainsfinderar.model.database.PointsTileCache;
 import com.louisnard.mountainsfinderar.model.objects.Point;
+import com.louisnard.mountainsfinderar.model.objects.PointsSnapshot;
 import com.louisnard.mountainsfinderar.model.services.Compass;
-import com.louisnard.mountainsfinderar.model.services.PointService;
+import com.louisnard.mountainsfinderar.model.services.PointsLoader;
 import com.louisnard.mountainsfinderar.views.CompassView;
-import com.louisnard.mountainsfinderar.views.PointsView;
+import com.louisnard.mountainsfinderar.views.PointsOverlay;
 
-import java.util.List;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Fragment showing the points around the user location using augmented reality over a camera preview.<br>
@@ -38,7 +43,7 @@ import java.util.List;
  *
  * @author Alexandre Louisnard
  */
-public class AugmentedRealityFragment extends CameraPreviewFragment implements LocationListener, Compass.CompassListener {
+public class AugmentedRealityFragment extends CameraPreviewFragment implements LocationListener, Compass.CompassListener, PointsLoader.PointsLoaderListener {
 
     // TODO: use this library to build "Mountain Peaks - France"
     // TODO: solve crash bug with camera lock opening
@@ -63,14 +68,14 @@ public class AugmentedRealityFragment extends CameraPreviewFragment implements L
     private static final int MIN_DISTANCE_DIFFERENCE_BETWEEN_DATABASE_RELOADS = 500;
     // The maximum distance to search and display points around the user's location, in meters
     private static final int MAX_RADIUS_DISTANCE_TO_SEARCH_POINTS_AROUND = 10000;
+    // The directory of the application external files where the SRTM .hgt elevation tiles are looked up, to hide the points occluded by the terrain
+    private static final String ELEVATION_MODEL_DIRECTORY = "dem";
+    // The binary points file of the application external files, read instead of the database when it exists (see PointsFile)
+    private static final String POINTS_FILE_NAME = "points.bin";
     // The minimum time interval between GPS location updates, in milliseconds
     private static final long MIN_TIME_INTERVAL_BETWEEN_LOCATION_UPDATES = 5000;
     // The maximum age of a location update from the system to be considered as still valid (in order to avoid working with old positions), in milliseconds
     private static final long MAX_AGE_FOR_A_LOCATION = 3 * 60000;
-    // The minimum difference with the last orientation values from Compass for the CompassListener to be notified, in degrees
-    private static final float MIN_AZIMUTH_DIFFERENCE_BETWEEN_COMPASS_UPDATES = 1;
-    private static final float MIN_VERTICAL_INCLINATION_DIFFERENCE_BETWEEN_COMPASS_UPDATES = 1;
-    private static final float MIN_HORIZONTAL_INCLINATION_DIFFERENCE_BETWEEN_COMPASS_UPDATES = 1;
 
     // Location
     private LocationManager mLocationManager;
@@ -81,11 +86,10 @@ public class AugmentedRealityFragment extends CameraPreviewFragment implements L
 
     // Points
     private Point mUserLocationPoint;
-    private Location mUserLocationAtLastDbReading;
-    private List<Point> mPoints;
+    private PointsLoader mPointsLoader;
 
     // Views
-    private PointsView mPointsView;
+    private PointsOverlay mPointsView;
     private CompassView mCompassView;
     private TextView mGpsStatusTextView;
     private TextView mVerticalInclinationTextView;
@@ -114,6 +118,9 @@ public class AugmentedRealityFragment extends CameraPreviewFragment implements L
         } else {
             // Compass
             mCompass = Compass.newInstance(getContext(), this);
+            // Points loader
+            mPointsLoader = new PointsLoader(getPointRepository(), getContext().getExternalFilesDir(ELEVATION_MODEL_DIRECTORY),
+                    MAX_RADIUS_DISTANCE_TO_SEARCH_POINTS_AROUND, MIN_DISTANCE_DIFFERENCE_BETWEEN_DATABASE_RELOADS, this);
         }
     }
 
@@ -128,7 +135,7 @@ public class AugmentedRealityFragment extends CameraPreviewFragment implements L
         super.onViewCreated(view, savedInstanceState);
 
         // Views
-        mPointsView = view.findViewById(R.id.points_view);
+        mPointsView = (PointsOverlay) view.findViewById(R.id.points_view);
         mCompassView = view.findViewById(R.id.compass_view);
         mGpsStatusTextView = view.findViewById(R.id.gps_status_text_view);
         mVerticalInclinationTextView = view.findViewById(R.id.pitch_text_view);
@@ -140,6 +147,9 @@ public class AugmentedRealityFragment extends CameraPreviewFragment implements L
         super.onResume();
 
         if (mHasPermissions) {
+            // Start points loader
+            mPointsLoader.start();
+
             // GPS location listener
             mLocationManager = (LocationManager) getActivity().getSystemService(Activity.LOCATION_SERVICE);
             try {
@@ -157,9 +167,9 @@ public class AugmentedRealityFragment extends CameraPreviewFragment implements L
                 DevUtils.exportDatabaseToExternalStorage(getActivity(), ARDbHelper.getDbName());
             }
 
-            // Start compass
+            // Start compass: one orientation per frame
             if (mCompass != null)
-                mCompass.start(MIN_AZIMUTH_DIFFERENCE_BETWEEN_COMPASS_UPDATES, MIN_VERTICAL_INCLINATION_DIFFERENCE_BETWEEN_COMPASS_UPDATES, MIN_HORIZONTAL_INCLINATION_DIFFERENCE_BETWEEN_COMPASS_UPDATES);
+                mCompass.startFramePaced();
 
             // Start GPS updated checks
             mCheckGpsHandler.postDelayed(mCheckGpsRunnable, 1000);
@@ -180,6 +190,20 @@ public class AugmentedRealityFragment extends CameraPreviewFragment implements L
         if (mHasPermissions) {
             // Stop compass
             if (mCompass != null) mCompass.stop();
+
+            // Stop points loader: the points will be loaded again from the next location update
+            mPointsLoader.stop();
+            mUserLocationPoint = null;
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        // Release points loader thread
+        if (mPointsLoader != null) {
+            mPointsLoader.release();
         }
     }
 
@@ -194,7 +218,7 @@ public class AugmentedRealityFragment extends CameraPreviewFragment implements L
         // Set camera angles
         if (cameraPreviewAnglesOfView != null) {
             if (BuildConfig.DEBUG)
-                Log.d(TAG, "Configuring PointsView with camera angles (horizontal x vertical): " + cameraPreviewAnglesOfView[0] + "° x " + cameraPreviewAnglesOfView[1] + "°");
+                Log.d(TAG, "Configuring the points view with camera angles (horizontal x vertical): " + cameraPreviewAnglesOfView[0] + "° x " + cameraPreviewAnglesOfView[1] + "°");
             mPointsView.setCameraAngles(cameraPreviewAnglesOfView[0], cameraPreviewAnglesOfView[1]);
         }
     }
@@ -222,27 +246,24 @@ public class AugmentedRealityFragment extends CameraPreviewFragment implements L
         if (location.getTime() >= System.currentTimeMillis() - MAX_AGE_FOR_A_LOCATION) {
             mLastGpsLocation = location;
 
-            // Load points around the user from the database
-            if (mPoints == null || mUserLocationAtLastDbReading == null || mUserLocationAtLastDbReading.distanceTo(location) > MIN_DISTANCE_DIFFERENCE_BETWEEN_DATABASE_RELOADS) {
-                mUserLocationAtLastDbReading = location;
-                final ARDbHelper dbHelper = ARDbHelper.getInstance(getActivity().getApplicationContext());
-                mPoints = dbHelper.getPointsAround(location, MAX_RADIUS_DISTANCE_TO_SEARCH_POINTS_AROUND);
-                if (BuildConfig.DEBUG)
-                    Log.d(TAG, "Found " + mPoints.size() + " points in the database around the new user location");
-            }
-
             // Update user location and recalculate relative azimuths of points from the new user location
+            // Points are reloaded from the database in the background if the user has moved far enough: the points view is updated in onPointsLoaded()
             if (mUserLocationPoint == null || mUserLocationPoint.distanceTo(location) > MIN_DISTANCE_DIFFERENCE_BETWEEN_RECALCULATIONS) {
                 if (BuildConfig.DEBUG)
                     Log.d(TAG, "Recalculating points azimuth from the new user location");
                 mUserLocationPoint = new Point(getString(R.string.gps_your_location), location);
-                // Update points view
-                mPointsView.setPoints(mUserLocationPoint, PointService.sortPointsByRelativeAzimuth(mUserLocationPoint, mPoints));
+                mPointsLoader.loadPointsAround(mUserLocationPoint);
             }
         }
         updateGpsStatus();
     }
 
+    // PointsLoaderListener interface
+    @Override
+    public void onPointsLoaded(PointsSnapshot pointsSnapshot) {
+        mPointsView.setPoints(pointsSnapshot);
+    }
+
     // LocationListener interface
     @Override
     public void onStatusChanged(String provider, int status, Bundle extras) {
@@ -292,7 +313,7 @@ public class AugmentedRealityFragment extends CameraPreviewFragment implements L
                 if (BuildConfig.DEBUG) Log.d(TAG, "GPS is disabled");
                 mLastGpsLocation = null;
                 mGpsStatusTextView.setText(getString(R.string.gps_disabled));
-                mPointsView.setPoints(null, null);
+                clearPoints();
                 showEnableGpsAlertDialog();
             } else {
                 if (BuildConfig.DEBUG) Log.d(TAG, "GPS is enabled");
@@ -303,12 +324,33 @@ public class AugmentedRealityFragment extends CameraPreviewFragment implements L
                 } else {
                     if (BuildConfig.DEBUG) Log.d(TAG, "GPS waiting for location");
                     mGpsStatusTextView.setText(getString(R.string.gps_waiting_for_location));
-                    mPointsView.setPoints(null, null);
+                    clearPoints();
                 }
             }
         }
     }
 
+    // Return the repository to read the points from: the binary points file if it exists and is valid, the database otherwise
+    private PointRepository getPointRepository() {
+        final File pointsFile = new File(getContext().getExternalFilesDir(null), POINTS_FILE_NAME);
+        if (pointsFile.isFile()) {
+            try {
+                return new PointsFile(pointsFile);
+            } catch (IOException e) {
+                if (BuildConfig.DEBUG) Log.d(TAG, "Cannot read the points file: the points are read from the database", e);
+            }
+        }
+        return new PointsTileCache(ARDbHelper.getInstance(getContext().getApplicationContext()));
+    }
+
+    // Clear the points view and cancel the points loading
+    // The points will be loaded again from the next location update
+    private void clearPoints() {
+        mPointsLoader.cancel();
+        mUserLocationPoint = null;
+        mPointsView.setPoints(null);
+    }
+
     // Display an alert dialog asking the user to enable the GPS
     private void showEnableGpsAlertDialog() {
         if (isAdded() && getFragmentManager().findFragmentByTag(TAG_ALERT_DIALOG_ENABLE_GPS) == null) {
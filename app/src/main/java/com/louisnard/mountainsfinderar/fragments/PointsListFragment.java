@@ -13,19 +13,25 @@ import android.widget.TextView;
 import com.louisnard.mountainsfinderar.R;
 import com.louisnard.mountainsfinderar.model.database.ARDbHelper;
 import com.louisnard.mountainsfinderar.model.objects.Point;
-
-import java.util.List;
+import com.louisnard.mountainsfinderar.model.services.PointsPager;
 
 /**
  * Points list {@link Fragment} showing the list of {@link Point}s in the database.<br>
+ * The points are read page by page as the list scrolls, through a {@link PointsPager}.
  *
  * @author Alexandre Louisnard
  */
-public class PointsListFragment extends Fragment {
+public class PointsListFragment extends Fragment implements PointsPager.PointsPagerListener {
 
     // Tag
     private static final String TAG = PointsListFragment.class.getSimpleName();
 
+    // Constants
+    // The number of points read at a time from the database
+    private static final int PAGE_SIZE = 100;
+    // The maximum number of pages held in memory
+    private static final int MAX_PAGES_IN_MEMORY = 5;
+
     // Views
     private RecyclerView mRecyclerView;
 
@@ -33,12 +39,12 @@ public class PointsListFragment extends Fragment {
     private PointsAdapter mAdapter;
 
     // Points
-    private List<Point> mPointsList;
+    private PointsPager mPointsPager;
 
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mPointsList = ARDbHelper.getInstance(getContext()).getAllPoints();
+        mPointsPager = new PointsPager(ARDbHelper.getInstance(getContext().getApplicationContext()), PAGE_SIZE, MAX_PAGES_IN_MEMORY, this);
     }
 
     @Nullable
@@ -61,21 +67,49 @@ public class PointsListFragment extends Fragment {
         super.onActivityCreated(savedInstanceState);
 
         // Set adapter
-        mAdapter = new PointsAdapter(mPointsList);
+        mAdapter = new PointsAdapter(mPointsPager);
         mRecyclerView.setAdapter(mAdapter);
         mRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        mPointsPager.start();
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        mPointsPager.stop();
+    }
+
+    // PointsPagerListener interface
+    @Override
+    public void onPointsChanged(int positionStart, int itemCount) {
+        if (mAdapter != null) {
+            mAdapter.notifyItemRangeChanged(positionStart, itemCount);
+        }
+    }
+
+    // PointsPagerListener interface
+    @Override
+    public void onPointsInserted(int positionStart, int itemCount) {
+        if (mAdapter != null) {
+            mAdapter.notifyItemRangeInserted(positionStart, itemCount);
+        }
+    }
+
 
     /**
      * {@link RecyclerView.Adapter} that exposes {@link Point}s data to a {@link RecyclerView} through a {@link PointViewHolder}.
      */
     private class PointsAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
-        private List<Point> mPointsList;
+        private PointsPager mPointsPager;
 
-        public PointsAdapter(List<Point> pointsList) {
-            mPointsList = pointsList;
+        public PointsAdapter(PointsPager pointsPager) {
+            mPointsPager = pointsPager;
         }
 
         @Override
@@ -86,12 +120,13 @@ public class PointsListFragment extends Fragment {
 
         @Override
         public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
-            ((PointViewHolder) holder).mNameTextView.setText(mPointsList.get(position).getName());
+            // The name is null while its page is being read: the item is bound again once it is read
+            ((PointViewHolder) holder).mNameTextView.setText(mPointsPager.getName(position));
         }
 
         @Override
         public int getItemCount() {
-            return mPointsList.size();
+            return mPointsPager.getCount();
         }
     }
 
@@ -23,19 +23,17 @@ import com.louisnard.mountainsfinderar.activities.SettingsActivity;
 import com.louisnard.mountainsfinderar.model.Utils;
 import com.louisnard.mountainsfinderar.model.database.ARDbContract;
 import com.louisnard.mountainsfinderar.model.database.ARDbHelper;
-import com.louisnard.mountainsfinderar.model.objects.Point;
 import com.louisnard.mountainsfinderar.model.services.PointService;
 
 import java.io.FileNotFoundException;
 import java.io.InputStream;
-import java.util.List;
 
 /**
  * Fragment showing the points around the user location using augmented reality over a camera preview.<br>
  *
  * @author Alexandre Louisnard
  */
-public class SettingsFragment extends Fragment implements View.OnClickListener, ARDbHelper.ARDbHelperListener, SettingsActivity.BackButtonListener, PointService.GpxParserListener {
+public class SettingsFragment extends Fragment implements View.OnClickListener, SettingsActivity.BackButtonListener, PointService.GpxImportListener {
 
     // Tag
     private static final String TAG = SettingsFragment.class.getSimpleName();
@@ -49,7 +47,6 @@ public class SettingsFragment extends Fragment implements View.OnClickListener,
     private static final int REQUEST_PICK_GPX_FILE = 1;
     private static final int REQUEST_PERMISSIONS = 2;
     private static final int REQUEST_CLEAR_EXISTING_POINTS_FROM_DB = 3;
-    private static final int REQUEST_ADD_POINTS_IN_DB_CONFIRMATION_DIALOG = 4;
 
     private boolean mFragmentIsPaused;
 
@@ -60,9 +57,6 @@ public class SettingsFragment extends Fragment implements View.OnClickListener,
     private Button mClearExistingPointsButton;
     private Button mImportGpxFileButton;
 
-    // GPX parsing
-    List<Point> mParsedPointsList;
-
 
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
@@ -105,6 +99,8 @@ public class SettingsFragment extends Fragment implements View.OnClickListener,
     @Override
     public boolean onBackPressed() {
         if (mProgressBar.getVisibility() == View.VISIBLE) {
+            // Stop a running import: the points inserted so far are kept
+            PointService.getInstance().cancelGpxImport();
             return false;
         }
         return true;
@@ -176,14 +172,11 @@ public class SettingsFragment extends Fragment implements View.OnClickListener,
                 e.printStackTrace();
             }
 
-            // Parse the input stream
-            showProgressBar(true, getString(R.string.gpx_parsing));
-            PointService.getInstance().parseGpxAsynchronously(inputStream, this);
+            // Parse the input stream and import its points into the database at the same time
+            showProgressBar(true, getString(R.string.gpx_importing));
+            PointService.getInstance().importGpxAsynchronously(inputStream, ARDbHelper.getInstance(getContext().getApplicationContext()), this);
         } else if (REQUEST_CLEAR_EXISTING_POINTS_FROM_DB == requestCode && resultCode == Activity.RESULT_OK) {
             ARDbHelper.getInstance(getContext()).clearTable(ARDbContract.PointsColumns.TABLE_NAME);
-        } else if (REQUEST_ADD_POINTS_IN_DB_CONFIRMATION_DIALOG == requestCode && resultCode == Activity.RESULT_OK) {
-            ARDbHelper.getInstance(getContext()).addPointsAsynchronously(mParsedPointsList, this);
-            showProgressBar(true, getString(R.string.gpx_importing));
         } else {
             super.onActivityResult(requestCode, resultCode, data);
         }
@@ -204,35 +197,34 @@ public class SettingsFragment extends Fragment implements View.OnClickListener,
         startActivityForResult(intent, REQUEST_PICK_GPX_FILE);
     }
 
-    // PointService.GpxParserListener implementation
+    // PointService.GpxImportListener implementation
     @Override
-    public void onGpxParsed(List<Point> parsedPoints) {
-        showProgressBar(false, null);
-        mParsedPointsList = parsedPoints;
-        if (mParsedPointsList == null) {
-            alertInvalidGpxFile();
-            return;
+    public void onGpxImportProgress(long parsedPointsNumber, long importedPointsNumber) {
+        if (isAdded()) {
+            showProgressBar(true, String.format(getString(R.string.gpx_importing_progress), importedPointsNumber, parsedPointsNumber));
         }
-        int pointsNumber = mParsedPointsList.size();
-        if (BuildConfig.DEBUG) Log.d(TAG, "Parsed " + pointsNumber + " points from the GPX file");
+    }
 
-        if (pointsNumber == 0) {
-            AlertDialogFragment.newInstance(R.string.gpx_parsed_alert_title, R.string.gpx_parsed_no_points_alert_message).show(getFragmentManager(), AlertDialogFragment.TAG);
-        } else {
-            AlertDialogFragment alertDialogFragment = AlertDialogFragment.newInstance(getString(R.string.gpx_parsed_alert_title), String.format(getString(R.string.gpx_parsed_alert_message), pointsNumber), android.R.string.ok, android.R.string.cancel);
-            alertDialogFragment.setTargetFragment(this, REQUEST_ADD_POINTS_IN_DB_CONFIRMATION_DIALOG);
-            alertDialogFragment.show(getFragmentManager(), AlertDialogFragment.TAG);
+    // PointService.GpxImportListener implementation
+    @Override
+    public void onGpxImported(long importedPointsNumber) {
+        if (BuildConfig.DEBUG) Log.d(TAG, "Imported " + importedPointsNumber + " points from the GPX file");
+        showProgressBar(false, null);
+        if (!mFragmentIsPaused) {
+            if (importedPointsNumber == 0) {
+                AlertDialogFragment.newInstance(R.string.gpx_parsed_alert_title, R.string.gpx_parsed_no_points_alert_message).show(getFragmentManager(), AlertDialogFragment.TAG);
+            } else {
+                AlertDialogFragment.newInstance(getString(R.string.gpx_parsed_alert_title), String.format(getString(R.string.gpx_points_imported_alert_message), importedPointsNumber)).show(getFragmentManager(), AlertDialogFragment.TAG);
+            }
         }
     }
 
-    // ARDbHelper.ARDbHelperListener implementation
+    // PointService.GpxImportListener implementation
     @Override
-    public void onPointsInserted(long insertedPointsNumber) {
-        if (BuildConfig.DEBUG)
-            Log.d(TAG, "Added " + insertedPointsNumber + " points in the database");
+    public void onGpxInvalid() {
         showProgressBar(false, null);
         if (!mFragmentIsPaused) {
-            AlertDialogFragment.newInstance(getString(R.string.gpx_parsed_alert_title), String.format(getString(R.string.gpx_points_imported_alert_message), insertedPointsNumber)).show(getFragmentManager(), AlertDialogFragment.TAG);
+            alertInvalidGpxFile();
         }
     }
 
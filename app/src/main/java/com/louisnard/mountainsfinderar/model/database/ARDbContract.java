@@ -22,5 +22,20 @@ public final class ARDbContract {
         public static final String COLUMN_LATITUDE = "latitude";
         public static final String COLUMN_LONGITUDE = "longitude";
         public static final String COLUMN_ALTITUDE = "altitude";
+        public static final String COLUMN_TILE = "tile";
+        public static final String INDEX_TILE = "points_tile_index";
+    }
+
+    /**
+     * Columns for the full-text search table of the points names.<br>
+     * Each row has the id of its point as docid, and is kept in sync with the points table by triggers.
+     */
+    public static final class PointsSearchColumns {
+        public static final String TABLE_NAME = "points_search";
+        public static final String COLUMN_DOCID = "docid";
+        public static final String COLUMN_NAME = "name";
+        public static final String TRIGGER_INSERT = "points_search_insert";
+        public static final String TRIGGER_DELETE = "points_search_delete";
+        public static final String TRIGGER_UPDATE = "points_search_update";
     }
 }
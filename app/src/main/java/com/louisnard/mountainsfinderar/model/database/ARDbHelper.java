@@ -4,21 +4,37 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.location.Location;
-import android.os.AsyncTask;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 
 import com.louisnard.mountainsfinderar.BuildConfig;
+import com.louisnard.mountainsfinderar.model.objects.BoundingBox;
 import com.louisnard.mountainsfinderar.model.objects.Point;
+import com.louisnard.mountainsfinderar.model.objects.PointStore;
 import com.louisnard.mountainsfinderar.model.services.PointService;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Helper class for managing the {@link SQLiteDatabase}.<br>
  *
+ * The {@link SQLiteDatabase} is opened once and stays open for the life of the singleton, so that its page cache and its compiled statements cache are kept between calls: the methods of this class never close it.<br>
+ * Write-ahead logging is enabled, so that the points can be read while a large import is writing into the {@link SQLiteDatabase}.<br>
+ * The points names are indexed in a full-text search table, kept in sync with the points table by triggers (see {@link #findPointsByName(String)}).<br>
+ *
  * @author Alexandre Louisnard
  */
 public class ARDbHelper extends SQLiteOpenHelper {
@@ -28,21 +44,13 @@ public class ARDbHelper extends SQLiteOpenHelper {
 
     // Database information
     private static final String DATABASE_NAME = "database.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 3;
 
     // Singleton pattern
     private static ARDbHelper sInstance;
 
-    /**
-     * {@link ARDbHelper} asynchronous operations listener.
-     */
-    public interface ARDbHelperListener {
-        /**
-         * Called whenever an {@link ARDbHelper} asynchronous {@link Point}s insertion operation completes.
-         * @param insertedPointsNumber the number of inserted {@link Point}s.
-         */
-        void onPointsInserted(long insertedPointsNumber);
-    }
+    // Incremented each time points are added or removed, so that the points read before can be known as outdated
+    private final AtomicLong mPointsVersion = new AtomicLong();
 
     // SQL requests
     private static final String SQL_CREATE_TABLE_POINTS = "CREATE TABLE " + ARDbContract.PointsColumns.TABLE_NAME
@@ -52,7 +60,81 @@ public class ARDbHelper extends SQLiteOpenHelper {
             + ARDbContract.PointsColumns.COLUMN_LATITUDE + " REAL,"
             + ARDbContract.PointsColumns.COLUMN_LONGITUDE + " REAL,"
             + ARDbContract.PointsColumns.COLUMN_ALTITUDE + " INTEGER,"
+            + ARDbContract.PointsColumns.COLUMN_TILE + " INTEGER,"
             + "UNIQUE(" + ARDbContract.PointsColumns.COLUMN_LATITUDE + "," + ARDbContract.PointsColumns.COLUMN_LONGITUDE + "," + ARDbContract.PointsColumns.COLUMN_ALTITUDE + ") ON CONFLICT REPLACE)";
+    private static final String SQL_CREATE_INDEX_TILE = "CREATE INDEX " + ARDbContract.PointsColumns.INDEX_TILE
+            + " ON " + ARDbContract.PointsColumns.TABLE_NAME + "(" + ARDbContract.PointsColumns.COLUMN_TILE + ")";
+    // Full-text search on the points names: case and accent insensitive, by token
+    private static final String SQL_CREATE_TABLE_POINTS_SEARCH = "CREATE VIRTUAL TABLE " + ARDbContract.PointsSearchColumns.TABLE_NAME
+            + " USING fts4(" + ARDbContract.PointsSearchColumns.COLUMN_NAME + ", tokenize=unicode61 \"remove_diacritics=1\")";
+    private static final String SQL_FILL_TABLE_POINTS_SEARCH = "INSERT INTO " + ARDbContract.PointsSearchColumns.TABLE_NAME
+            + " (" + ARDbContract.PointsSearchColumns.COLUMN_DOCID + "," + ARDbContract.PointsSearchColumns.COLUMN_NAME + ")"
+            + " SELECT " + ARDbContract.PointsColumns._ID + "," + ARDbContract.PointsColumns.COLUMN_NAME + " FROM " + ARDbContract.PointsColumns.TABLE_NAME;
+    private static final String SQL_CREATE_TRIGGER_POINTS_SEARCH_INSERT = "CREATE TRIGGER " + ARDbContract.PointsSearchColumns.TRIGGER_INSERT
+            + " AFTER INSERT ON " + ARDbContract.PointsColumns.TABLE_NAME + " BEGIN"
+            + " INSERT INTO " + ARDbContract.PointsSearchColumns.TABLE_NAME + " (" + ARDbContract.PointsSearchColumns.COLUMN_DOCID + "," + ARDbContract.PointsSearchColumns.COLUMN_NAME + ")"
+            + " VALUES (new." + ARDbContract.PointsColumns._ID + ",new." + ARDbContract.PointsColumns.COLUMN_NAME + "); END";
+    private static final String SQL_CREATE_TRIGGER_POINTS_SEARCH_DELETE = "CREATE TRIGGER " + ARDbContract.PointsSearchColumns.TRIGGER_DELETE
+            + " AFTER DELETE ON " + ARDbContract.PointsColumns.TABLE_NAME + " BEGIN"
+            + " DELETE FROM " + ARDbContract.PointsSearchColumns.TABLE_NAME + " WHERE " + ARDbContract.PointsSearchColumns.COLUMN_DOCID + " = old." + ARDbContract.PointsColumns._ID + "; END";
+    private static final String SQL_CREATE_TRIGGER_POINTS_SEARCH_UPDATE = "CREATE TRIGGER " + ARDbContract.PointsSearchColumns.TRIGGER_UPDATE
+            + " AFTER UPDATE OF " + ARDbContract.PointsColumns.COLUMN_NAME + " ON " + ARDbContract.PointsColumns.TABLE_NAME + " BEGIN"
+            + " UPDATE " + ARDbContract.PointsSearchColumns.TABLE_NAME + " SET " + ARDbContract.PointsSearchColumns.COLUMN_NAME + " = new." + ARDbContract.PointsColumns.COLUMN_NAME
+            + " WHERE " + ARDbContract.PointsSearchColumns.COLUMN_DOCID + " = old." + ARDbContract.PointsColumns._ID + "; END";
+    // Selects the points whose name matches a full-text search query
+    private static final String SQL_SELECTION_POINTS_SEARCH = ARDbContract.PointsColumns._ID + " IN (SELECT " + ARDbContract.PointsSearchColumns.COLUMN_DOCID
+            + " FROM " + ARDbContract.PointsSearchColumns.TABLE_NAME + " WHERE " + ARDbContract.PointsSearchColumns.TABLE_NAME + " MATCH ?)";
+
+    // Columns read to fill a Point: all of them but the tile
+    private static final String[] POINT_PROJECTION = new String[] {
+            ARDbContract.PointsColumns._ID,
+            ARDbContract.PointsColumns.COLUMN_NAME,
+            ARDbContract.PointsColumns.COLUMN_DESCRIPTION,
+            ARDbContract.PointsColumns.COLUMN_LATITUDE,
+            ARDbContract.PointsColumns.COLUMN_LONGITUDE,
+            ARDbContract.PointsColumns.COLUMN_ALTITUDE};
+    // Columns read to list the points: descriptions are never displayed
+    private static final String[] POINTS_LIST_PROJECTION = new String[] {
+            ARDbContract.PointsColumns._ID,
+            ARDbContract.PointsColumns.COLUMN_NAME,
+            ARDbContract.PointsColumns.COLUMN_LATITUDE,
+            ARDbContract.PointsColumns.COLUMN_LONGITUDE,
+            ARDbContract.PointsColumns.COLUMN_ALTITUDE};
+    // Columns read to fill a PointStore: names are loaded lazily
+    private static final String[] POINT_STORE_PROJECTION = new String[] {
+            ARDbContract.PointsColumns._ID,
+            ARDbContract.PointsColumns.COLUMN_LATITUDE,
+            ARDbContract.PointsColumns.COLUMN_LONGITUDE,
+            ARDbContract.PointsColumns.COLUMN_ALTITUDE};
+    // Columns read to fill a PointStore per tile: names are read along, as the cached tiles are read once and displayed many times
+    private static final String[] TILED_POINT_STORE_PROJECTION = new String[] {
+            ARDbContract.PointsColumns._ID,
+            ARDbContract.PointsColumns.COLUMN_NAME,
+            ARDbContract.PointsColumns.COLUMN_LATITUDE,
+            ARDbContract.PointsColumns.COLUMN_LONGITUDE,
+            ARDbContract.PointsColumns.COLUMN_ALTITUDE,
+            ARDbContract.PointsColumns.COLUMN_TILE};
+    // Columns read to write a points file
+    private static final String[] POINTS_FILE_PROJECTION = new String[] {
+            ARDbContract.PointsColumns.COLUMN_LATITUDE,
+            ARDbContract.PointsColumns.COLUMN_LONGITUDE,
+            ARDbContract.PointsColumns.COLUMN_ALTITUDE,
+            ARDbContract.PointsColumns.COLUMN_NAME};
+
+    private static final String SQL_SELECT_POINT_NAME = "SELECT " + ARDbContract.PointsColumns.COLUMN_NAME + " FROM " + ARDbContract.PointsColumns.TABLE_NAME
+            + " WHERE " + ARDbContract.PointsColumns._ID + " = ?";
+
+    // Compiled statement reading a point name, called for each displayed point: compiled once and reused
+    private final Object mPointNameStatementLock = new Object();
+    private SQLiteStatement mPointNameStatement;
+
+    // Loads the names of the points held by the PointStores returned by this helper
+    private final PointStore.NameLoader mPointNameLoader = new PointStore.NameLoader() {
+        @Override
+        public String loadName(long id) {
+            return getPointName(id);
+        }
+    };
 
     /**
      * Constructs a new instance of {@link ARDbHelper}.<br>
@@ -60,7 +142,18 @@ public class ARDbHelper extends SQLiteOpenHelper {
      * @param applicationContext the {@link Context} to use to open or create the database.
      */
     private ARDbHelper(Context applicationContext) {
-        super(applicationContext, DATABASE_NAME, null, DATABASE_VERSION);
+        this(applicationContext, DATABASE_NAME);
+    }
+
+    /**
+     * Constructs a new instance of {@link ARDbHelper} working on the given database.
+     * @param applicationContext the {@link Context} to use to open or create the database.
+     * @param databaseName the database file name, or <b>null</b> for an in-memory database.
+     */
+    private ARDbHelper(Context applicationContext, String databaseName) {
+        super(applicationContext, databaseName, null, DATABASE_VERSION);
+        // Readers do not wait for the writer, and the writer does not wait for the readers
+        setWriteAheadLoggingEnabled(true);
     }
 
     /**
@@ -75,14 +168,73 @@ public class ARDbHelper extends SQLiteOpenHelper {
         return sInstance;
     }
 
+    /**
+     * Returns a new instance of {@link ARDbHelper}, distinct from the singleton instance, working on the given database.<br>
+     * Only meant for tests and benchmarks, that must not alter the application database.
+     * @param applicationContext the application context to avoid leaking an activity context.
+     * @param databaseName the database file name, or <b>null</b> for an in-memory database.
+     * @return the new instance of {@link ARDbHelper}.
+     */
+    @VisibleForTesting
+    public static ARDbHelper newTestInstance(Context applicationContext, String databaseName) {
+        return new ARDbHelper(applicationContext, databaseName);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // The rows replaced on conflict must fire the delete trigger of the full-text search table
+        db.execSQL("PRAGMA recursive_triggers = ON");
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(SQL_CREATE_TABLE_POINTS);
+        db.execSQL(SQL_CREATE_INDEX_TILE);
+        createPointsSearchTable(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Nothing to do for the moment
+        if (oldVersion < 2) {
+            // Version 2: spatial index on the tile key
+            db.execSQL("ALTER TABLE " + ARDbContract.PointsColumns.TABLE_NAME + " ADD COLUMN " + ARDbContract.PointsColumns.COLUMN_TILE + " INTEGER");
+            db.execSQL("UPDATE " + ARDbContract.PointsColumns.TABLE_NAME + " SET " + ARDbContract.PointsColumns.COLUMN_TILE + " = "
+                    + PointService.getSqlTileKey(ARDbContract.PointsColumns.COLUMN_LATITUDE, ARDbContract.PointsColumns.COLUMN_LONGITUDE));
+            db.execSQL(SQL_CREATE_INDEX_TILE);
+        }
+        if (oldVersion < 3) {
+            // Version 3: full-text search on the points names
+            createPointsSearchTable(db);
+            db.execSQL(SQL_FILL_TABLE_POINTS_SEARCH);
+        }
+    }
+
+    // Create the full-text search table of the points names, empty, and the triggers keeping it in sync with the points table
+    private static void createPointsSearchTable(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_TABLE_POINTS_SEARCH);
+        db.execSQL(SQL_CREATE_TRIGGER_POINTS_SEARCH_INSERT);
+        db.execSQL(SQL_CREATE_TRIGGER_POINTS_SEARCH_DELETE);
+        db.execSQL(SQL_CREATE_TRIGGER_POINTS_SEARCH_UPDATE);
+    }
+
+    // Drop the full-text search table of the points names and its triggers
+    private static void dropPointsSearchTable(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS " + ARDbContract.PointsSearchColumns.TRIGGER_INSERT);
+        db.execSQL("DROP TRIGGER IF EXISTS " + ARDbContract.PointsSearchColumns.TRIGGER_DELETE);
+        db.execSQL("DROP TRIGGER IF EXISTS " + ARDbContract.PointsSearchColumns.TRIGGER_UPDATE);
+        db.execSQL("DROP TABLE IF EXISTS " + ARDbContract.PointsSearchColumns.TABLE_NAME);
+    }
+
+    @Override
+    public synchronized void close() {
+        synchronized (mPointNameStatementLock) {
+            if (mPointNameStatement != null) {
+                mPointNameStatement.close();
+                mPointNameStatement = null;
+            }
+        }
+        super.close();
     }
 
     /**
@@ -99,8 +251,37 @@ public class ARDbHelper extends SQLiteOpenHelper {
      */
     public void clearTable(String tableName) {
         final SQLiteDatabase db = getWritableDatabase();
-        db.execSQL("DELETE FROM " + tableName);
-        db.close();
+        if (ARDbContract.PointsColumns.TABLE_NAME.equals(tableName)) {
+            // Without the triggers, the points table is truncated at once instead of row by row: the full-text search table is recreated empty
+            db.beginTransaction();
+            try {
+                dropPointsSearchTable(db);
+                db.execSQL("DELETE FROM " + tableName);
+                createPointsSearchTable(db);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } else {
+            db.execSQL("DELETE FROM " + tableName);
+        }
+        onPointsChanged();
+    }
+
+    /**
+     * Returns the version of the points in the {@link SQLiteDatabase}, which changes each time points are added or removed.<br>
+     * Points read while the version was different may be outdated.
+     * @return the version of the points.
+     */
+    public long getPointsVersion() {
+        return mPointsVersion.get();
+    }
+
+    /**
+     * Marks the points read so far from the {@link SQLiteDatabase} as outdated (see {@link #getPointsVersion()}).
+     */
+    void onPointsChanged() {
+        mPointsVersion.incrementAndGet();
     }
 
     /**
@@ -109,59 +290,218 @@ public class ARDbHelper extends SQLiteOpenHelper {
      */
     public List<Point> getAllPoints() {
         final SQLiteDatabase db = getReadableDatabase();
-        final Cursor cursor = db.query(ARDbContract.PointsColumns.TABLE_NAME, null, null, null, null, null, null);
-        final List<Point> points = new ArrayList<>();
-        while (cursor.moveToNext()) {
-            points.add(new Point(cursor));
+        final Cursor cursor = db.query(ARDbContract.PointsColumns.TABLE_NAME, POINT_PROJECTION, null, null, null, null, null);
+        try {
+            return new PointCursorMapper(cursor).readPoints();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns a page of points from the {@link SQLiteDatabase} to be listed, sorted by id, with their names but without their descriptions.<br>
+     * The pages are delimited by keys rather than by offsets: the page is read straight from the primary key, whatever its position in the table.
+     * @param afterId the id after which the page starts: the id of the last point of the previous page, or a negative value for the first page.
+     * @param pageSize the maximum number of points of the page.
+     * @return the {@link PointStore} of the points of the page. It holds less than {@param pageSize} points if it is the last page.
+     */
+    public PointStore getPointsPage(long afterId, int pageSize) {
+        final SQLiteDatabase db = getReadableDatabase();
+        final Cursor cursor = db.query(ARDbContract.PointsColumns.TABLE_NAME, POINTS_LIST_PROJECTION, ARDbContract.PointsColumns._ID + " > ?", new String[] {String.valueOf(afterId)},
+                null, null, ARDbContract.PointsColumns._ID, String.valueOf(pageSize));
+        try {
+            return new PointCursorMapper(cursor).readPointStore(null);
+        } finally {
+            cursor.close();
         }
-        cursor.close();
-        db.close();
-        return points;
+    }
+
+    /**
+     * Writes all points from the {@link SQLiteDatabase} to a binary points file, to be read by {@link PointsFile}.
+     * @param file the points file to write, replaced if it exists.
+     * @return the number of points written.
+     * @throws IOException if the file cannot be written.
+     */
+    public int writePointsFile(File file) throws IOException {
+        final PointsFileWriter writer = new PointsFileWriter();
+        final SQLiteDatabase db = getReadableDatabase();
+        final Cursor cursor = db.query(ARDbContract.PointsColumns.TABLE_NAME, POINTS_FILE_PROJECTION, null, null, null, null, null);
+        try {
+            new PointCursorMapper(cursor).readPoints(writer);
+        } finally {
+            cursor.close();
+        }
+        writer.write(file);
+        return writer.size();
     }
 
     /**
      * Returns all points from the {@link SQLiteDatabase} around the given {@link Point}.<br>
-     * Actually, the points are located in a square of size 2x{@param distance} and centered on the given {@param point}.
+     * Actually, the points are located in the minimal bounding box of the circle of radius {@param distance} centered on the given {@param location} (see {@link PointService#getBoundingBoxes(double, double, int)}).<br>
+     * The points are looked up through the spatial index on the tile key: only the tiles overlapping the bounding box are read.<br>
+     * The points names are not read here: they are loaded lazily by the returned {@link PointStore}.
+     * @param location the {@link Location} around which the points have to be located.
+     * @param distance the radius of the circle around the {@link Location} where the points have to be located.
+     * @return the {@link PointStore} of all points located around the given {@link Location}.
+     */
+    public PointStore getPointsAround(Location location, int distance) {
+        return getPointsAround(location, distance, null);
+    }
+
+    /**
+     * Returns all points from the {@link SQLiteDatabase} around the given {@link Point}, as {@link #getPointsAround(Location, int)}.<br>
+     * The query can be cancelled while it is running from another thread, through the given {@link CancellationSignal}.
      * @param location the {@link Location} around which the points have to be located.
-     * @param distance the half-size of the square around the {@link Point} where the points have to be located.
-     * @return the {@link List<Point>} of all points located around the given {@link Point}.
-     */
-    public List<Point> getPointsAround(Location location, int distance) {
-        // Delimit the square within which to find points
-        final String latMin = String.valueOf((location.getLatitude() - PointService.metersToDegrees(distance)) % 90);
-        final String latMax = String.valueOf((location.getLatitude() + PointService.metersToDegrees(distance)) % 90);
-        final String lonMin = String.valueOf((location.getLongitude() - PointService.metersToDegrees(distance)) % 180);
-        final String lonMax = String.valueOf((location.getLongitude() + PointService.metersToDegrees(distance)) % 180);
+     * @param distance the radius of the circle around the {@link Location} where the points have to be located.
+     * @param cancellationSignal the {@link CancellationSignal} to cancel the query with, or <b>null</b>.
+     * @return the {@link PointStore} of all points located around the given {@link Location}.
+     * @throws OperationCanceledException if the query has been cancelled.
+     */
+    public PointStore getPointsAround(Location location, int distance, CancellationSignal cancellationSignal) {
+        final StringBuilder selection = new StringBuilder();
+        final List<String> selectionArgs = new ArrayList<>();
+        for (BoundingBox boundingBox : PointService.getBoundingBoxes(location.getLatitude(), location.getLongitude(), distance)) {
+            if (selection.length() > 0) {
+                selection.append(" OR ");
+            }
+            appendBoundingBoxSelection(boundingBox, selection, selectionArgs);
+        }
         // Read database
         final SQLiteDatabase db = getReadableDatabase();
-        final Cursor cursor = db.query(ARDbContract.PointsColumns.TABLE_NAME, null,
-                ARDbContract.PointsColumns.COLUMN_LATITUDE + " >= ? AND " + ARDbContract.PointsColumns.COLUMN_LATITUDE + " <= ? AND " + ARDbContract.PointsColumns.COLUMN_LONGITUDE + " >= ? AND " + ARDbContract.PointsColumns.COLUMN_LONGITUDE + " <= ?",
-                new String[] {latMin, latMax, lonMin, lonMax}, null, null, null);
-        final List<Point> points = new ArrayList<>();
-        while (cursor.moveToNext()) {
-            points.add(new Point(cursor));
+        Cursor cursor = null;
+        try {
+            cursor = db.query(false, ARDbContract.PointsColumns.TABLE_NAME, POINT_STORE_PROJECTION,
+                    selection.toString(), selectionArgs.toArray(new String[selectionArgs.size()]), null, null, null, null, cancellationSignal);
+            return new PointCursorMapper(cursor).readPointStore(mPointNameLoader);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Returns all points from the {@link SQLiteDatabase} located in the given ranges of tiles, grouped by tile (see {@link PointService#getTileKey(double, double)}).<br>
+     * The points names are read along with the points, so that the returned {@link PointStore}s never query the {@link SQLiteDatabase} again.
+     * @param tileKeyRanges the ranges of tile keys to read, as pairs of first and last tile keys, both included.
+     * @param rangesNumber the number of ranges to read in {@param tileKeyRanges}.
+     * @param cancellationSignal the {@link CancellationSignal} to cancel the query with, or <b>null</b>.
+     * @return the {@link PointStore} of the points of each tile, by tile key. The tiles without any point are not included.
+     * @throws OperationCanceledException if the query has been cancelled.
+     */
+    public Map<Integer, PointStore> getPointsInTiles(int[] tileKeyRanges, int rangesNumber, CancellationSignal cancellationSignal) {
+        final StringBuilder selection = new StringBuilder();
+        final String[] selectionArgs = new String[2 * rangesNumber];
+        for (int i = 0; i < rangesNumber; i++) {
+            if (i > 0) {
+                selection.append(" OR ");
+            }
+            selection.append(ARDbContract.PointsColumns.COLUMN_TILE).append(" BETWEEN ? AND ?");
+            selectionArgs[2 * i] = String.valueOf(tileKeyRanges[2 * i]);
+            selectionArgs[2 * i + 1] = String.valueOf(tileKeyRanges[2 * i + 1]);
+        }
+        // Read database
+        final SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = null;
+        try {
+            cursor = db.query(false, ARDbContract.PointsColumns.TABLE_NAME, TILED_POINT_STORE_PROJECTION,
+                    selection.toString(), selectionArgs, null, null, ARDbContract.PointsColumns.COLUMN_TILE, null, cancellationSignal);
+            return new PointCursorMapper(cursor).readPointStoresByTile(null);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Appends to an SQL selection the condition for a point to be located inside the given {@link BoundingBox}, using the spatial index on the tile key.
+     * @param boundingBox the {@link BoundingBox}. Must not cross the antimeridian.
+     * @param selection the SQL selection to append the condition to.
+     * @param selectionArgs the SQL selection arguments to append the condition arguments to.
+     */
+    private static void appendBoundingBoxSelection(BoundingBox boundingBox, StringBuilder selection, List<String> selectionArgs) {
+        // Select the tiles overlapping the bounding box: one range of tile keys per row of tiles
+        selection.append("((");
+        final int columnMin = PointService.getTileColumn(boundingBox.getLongitudeMin());
+        final int columnMax = PointService.getTileColumn(boundingBox.getLongitudeMax());
+        final int rowMin = PointService.getTileRow(boundingBox.getLatitudeMin());
+        final int rowMax = PointService.getTileRow(boundingBox.getLatitudeMax());
+        for (int row = rowMin; row <= rowMax; row++) {
+            if (row > rowMin) {
+                selection.append(" OR ");
+            }
+            selection.append(ARDbContract.PointsColumns.COLUMN_TILE).append(" BETWEEN ? AND ?");
+            selectionArgs.add(String.valueOf(row * PointService.TILES_PER_ROW + columnMin));
+            selectionArgs.add(String.valueOf(row * PointService.TILES_PER_ROW + columnMax));
         }
-        cursor.close();
-        db.close();
-        return points;
+        // Then keep the points inside the bounding box only
+        selection.append(") AND ").append(ARDbContract.PointsColumns.COLUMN_LATITUDE).append(" >= ? AND ").append(ARDbContract.PointsColumns.COLUMN_LATITUDE).append(" <= ? AND ")
+                .append(ARDbContract.PointsColumns.COLUMN_LONGITUDE).append(" >= ? AND ").append(ARDbContract.PointsColumns.COLUMN_LONGITUDE).append(" <= ?)");
+        selectionArgs.add(String.valueOf(boundingBox.getLatitudeMin()));
+        selectionArgs.add(String.valueOf(boundingBox.getLatitudeMax()));
+        selectionArgs.add(String.valueOf(boundingBox.getLongitudeMin()));
+        selectionArgs.add(String.valueOf(boundingBox.getLongitudeMax()));
     }
 
     /**
-     * Returns the points from the {@link SQLiteDatabase} whose name contains the given name.
+     * Returns the name of the point with the given id from the {@link SQLiteDatabase}.
+     * @param id the point id.
+     * @return the name, or <b>null</b> if no point has this id.
+     */
+    public String getPointName(long id) {
+        synchronized (mPointNameStatementLock) {
+            if (mPointNameStatement == null) {
+                mPointNameStatement = getReadableDatabase().compileStatement(SQL_SELECT_POINT_NAME);
+            }
+            mPointNameStatement.bindLong(1, id);
+            try {
+                return mPointNameStatement.simpleQueryForString();
+            } catch (SQLiteDoneException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns the points from the {@link SQLiteDatabase} whose name contains words starting with each of the words of the given name, regardless of case and accents.<br>
+     * For instance, "dent bl" finds "Dent Blanche" and "Blümlisalp - Dent". The points are looked up through the full-text search table of the names.
      * @param name the name to search for.
-     * @return the {@link List<Point>}.
+     * @return the {@link List<Point>}, empty if the name has no word.
      */
     public List<Point> findPointsByName(String name) {
+        final String searchQuery = getSearchQuery(name);
+        if (searchQuery == null) {
+            return new ArrayList<>();
+        }
         // Read database
         final SQLiteDatabase db = getReadableDatabase();
-        final Cursor cursor = db.query(ARDbContract.PointsColumns.TABLE_NAME, null, ARDbContract.PointsColumns.COLUMN_NAME + " LIKE '%" + name + "%'", null, null, null, null);
-        final List<Point> points = new ArrayList<>();
-        while (cursor.moveToNext()) {
-            points.add(new Point(cursor));
+        final Cursor cursor = db.query(ARDbContract.PointsColumns.TABLE_NAME, POINT_PROJECTION, SQL_SELECTION_POINTS_SEARCH, new String[] {searchQuery}, null, null, null);
+        try {
+            return new PointCursorMapper(cursor).readPoints();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the full-text search query matching the names containing words starting with each of the words of the given name.<br>
+     * The words are made of letters, digits and combining marks only, and lowercased, so that they can never be read as query operators.
+     * @param name the name to search for.
+     * @return the full-text search query, or <b>null</b> if the name has no word.
+     */
+    @VisibleForTesting
+    public static String getSearchQuery(String name) {
+        final StringBuilder searchQuery = new StringBuilder();
+        for (String word : Normalizer.normalize(name, Normalizer.Form.NFC).toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}\\p{M}]+")) {
+            if (!word.isEmpty()) {
+                if (searchQuery.length() > 0) {
+                    searchQuery.append(' ');
+                }
+                searchQuery.append(word).append('*');
+            }
         }
-        cursor.close();
-        db.close();
-        return points;
+        return searchQuery.length() > 0 ? searchQuery.toString() : null;
     }
 
     /**
@@ -172,32 +512,40 @@ public class ARDbHelper extends SQLiteOpenHelper {
     public long addPoint(Point point) {
         final SQLiteDatabase db = getWritableDatabase();
         final long result = insertPoint(point, db);
-        db.close();
+        onPointsChanged();
         return result;
     }
 
     /**
-     * Adds the given {@link List<Point>} to the {@link SQLiteDatabase}.
+     * Adds the given {@link List<Point>} to the {@link SQLiteDatabase}, using a {@link PointsBulkInserter}.
      * @param points the {@link List<Point>} to insert.
      * @return the number of successfully inserted rows, or -1 if an error occurred on one or many rows.
      */
     public long addPoints(List<Point> points) {
-        final SQLiteDatabase db = getWritableDatabase();
-        long result = 0;
-        for (Point point : points) {
-            if (insertPoint(point, db) != -1 && result != -1) {
-                result++;
-            } else {
-                result = -1;
+        final PointsBulkInserter bulkInserter = beginBulkInsert();
+        long result;
+        try {
+            for (Point point : points) {
+                bulkInserter.insert(point);
             }
+        } finally {
+            // Even if an insertion has thrown: the transaction and the statement must not be left open
+            result = bulkInserter.finish();
         }
-        db.close();
         return result;
     }
 
     /**
-     * Inserts a {@link Point} in the given {@link SQLiteDatabase}.<br>
-     * The {@link SQLiteDatabase} must be closed after calling this function.
+     * Starts inserting a large number of {@link Point}s into the {@link SQLiteDatabase}.<br>
+     * {@link PointsBulkInserter#finish()} must be called once all the {@link Point}s have been inserted.
+     * @return the {@link PointsBulkInserter} to insert the {@link Point}s with.
+     */
+    public PointsBulkInserter beginBulkInsert() {
+        return new PointsBulkInserter(this);
+    }
+
+    /**
+     * Inserts a {@link Point} in the given {@link SQLiteDatabase}.
      * @param point the {@link List<Point>} to insert.
      * @param db the {@link SQLiteDatabase} to insert the point into.
      * @return the row id of the newly inserted row, or -1 if an error occurred.
@@ -209,47 +557,11 @@ public class ARDbHelper extends SQLiteOpenHelper {
         values.put(ARDbContract.PointsColumns.COLUMN_LATITUDE, point.getLatitude());
         values.put(ARDbContract.PointsColumns.COLUMN_LONGITUDE, point.getLongitude());
         values.put(ARDbContract.PointsColumns.COLUMN_ALTITUDE, point.getAltitude());
+        values.put(ARDbContract.PointsColumns.COLUMN_TILE, PointService.getTileKey(point.getLatitude(), point.getLongitude()));
         final long result = db.insert(ARDbContract.PointsColumns.TABLE_NAME, null, values);
         if (result == -1) {
             if (BuildConfig.DEBUG) Log.d(TAG, "Error inserting the point: \"" + point.getName() + "\" into the database");
         }
         return result;
     }
-
-    /**
-     * Adds the given {@link List<Point>} to the {@link SQLiteDatabase} asynchronously.
-     * @param points the {@link List<Point>} to insert.
-     * @param listener the {@link ARDbHelperListener} to notify when the operation completes.
-     * @return the number of successfully inserted rows, or -1 if an error occurred on one or many rows.
-     */
-    public void addPointsAsynchronously(List<Point> points, ARDbHelperListener listener) {
-        InsertPointsAsynchronously insertPoints = new InsertPointsAsynchronously(points, listener);
-        insertPoints.execute();
-    }
-
-    /**
-     * Insert {@link Point}s asynchronously.
-     */
-    private class InsertPointsAsynchronously extends AsyncTask<Void, Void, Void> {
-
-        private List<Point> mPoints;
-        private ARDbHelperListener mListener;
-        private long mInsertedPointsNumber;
-
-        public InsertPointsAsynchronously (List<Point> points, ARDbHelperListener listener) {
-            mPoints = points;
-            mListener = listener;
-        }
-
-        @Override
-        protected Void doInBackground(Void... params) {
-            mInsertedPointsNumber = addPoints(mPoints);
-            return null;
-        }
-
-        @Override
-        protected void onPostExecute(Void aVoid) {
-            mListener.onPointsInserted(mInsertedPointsNumber);
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,127 @@
+package com.louisnard.mountainsfinderar.model.database;
+
+import android.database.Cursor;
+
+import com.louisnard.mountainsfinderar.model.objects.Point;
+import com.louisnard.mountainsfinderar.model.objects.PointStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class that maps the rows of a {@link Cursor} over the points table to points structures, in bulk.<br>
+ *
+ * The column indexes are resolved once, when the {@link PointCursorMapper} is created, instead of once per row and per column.<br>
+ * Only the columns of the {@link Cursor} projection are read: the others keep their default values (<b>null</b> or 0).<br>
+ *
+ * A {@link PointCursorMapper} is bound to a single {@link Cursor}: each read method consumes its remaining rows, but does not close it.
+ *
+ * @author Alexandre Louisnard
+ */
+
+class PointCursorMapper {
+
+    // Cursor
+    private final Cursor mCursor;
+
+    // Column indexes, or -1 if the column is not in the projection
+    private final int mIdIndex;
+    private final int mNameIndex;
+    private final int mDescriptionIndex;
+    private final int mLatitudeIndex;
+    private final int mLongitudeIndex;
+    private final int mAltitudeIndex;
+    private final int mTileIndex;
+
+    /**
+     * Constructs a new instance of {@link PointCursorMapper}, resolving the column indexes of the given {@link Cursor}.
+     * @param cursor the {@link Cursor} over the points table.
+     */
+    PointCursorMapper(Cursor cursor) {
+        mCursor = cursor;
+        mIdIndex = cursor.getColumnIndex(ARDbContract.PointsColumns._ID);
+        mNameIndex = cursor.getColumnIndex(ARDbContract.PointsColumns.COLUMN_NAME);
+        mDescriptionIndex = cursor.getColumnIndex(ARDbContract.PointsColumns.COLUMN_DESCRIPTION);
+        mLatitudeIndex = cursor.getColumnIndex(ARDbContract.PointsColumns.COLUMN_LATITUDE);
+        mLongitudeIndex = cursor.getColumnIndex(ARDbContract.PointsColumns.COLUMN_LONGITUDE);
+        mAltitudeIndex = cursor.getColumnIndex(ARDbContract.PointsColumns.COLUMN_ALTITUDE);
+        mTileIndex = cursor.getColumnIndex(ARDbContract.PointsColumns.COLUMN_TILE);
+    }
+
+    /**
+     * Reads the remaining rows as {@link Point}s.
+     * @return the {@link List<Point>}.
+     */
+    List<Point> readPoints() {
+        final List<Point> points = new ArrayList<>(Math.max(mCursor.getCount(), 0));
+        while (mCursor.moveToNext()) {
+            points.add(new Point(getLong(mIdIndex), getString(mNameIndex), getString(mDescriptionIndex), getDouble(mLatitudeIndex), getDouble(mLongitudeIndex), getInt(mAltitudeIndex)));
+        }
+        return points;
+    }
+
+    /**
+     * Reads the remaining rows into a {@link PointStore}.<br>
+     * If the projection does not include the name, the names are left to the given {@link PointStore.NameLoader}.
+     * @param nameLoader the {@link PointStore.NameLoader} of the returned {@link PointStore}, or <b>null</b>.
+     * @return the {@link PointStore}.
+     */
+    PointStore readPointStore(PointStore.NameLoader nameLoader) {
+        final PointStore points = new PointStore(mCursor.getCount(), nameLoader);
+        while (mCursor.moveToNext()) {
+            points.add(getLong(mIdIndex), getDouble(mLatitudeIndex), getDouble(mLongitudeIndex), getInt(mAltitudeIndex), getString(mNameIndex));
+        }
+        return points;
+    }
+
+    /**
+     * Reads the remaining rows into one {@link PointStore} per tile.<br>
+     * The rows must be sorted by tile, which must be in the projection.
+     * @param nameLoader the {@link PointStore.NameLoader} of the returned {@link PointStore}s, or <b>null</b>.
+     * @return the {@link PointStore} of the points of each tile, by tile key.
+     */
+    Map<Integer, PointStore> readPointStoresByTile(PointStore.NameLoader nameLoader) {
+        final Map<Integer, PointStore> tiles = new HashMap<>();
+        int currentTileKey = 0;
+        PointStore currentTile = null;
+        while (mCursor.moveToNext()) {
+            final int tileKey = mCursor.getInt(mTileIndex);
+            if (currentTile == null || tileKey != currentTileKey) {
+                currentTileKey = tileKey;
+                currentTile = new PointStore(0, nameLoader);
+                tiles.put(tileKey, currentTile);
+            }
+            currentTile.add(getLong(mIdIndex), getDouble(mLatitudeIndex), getDouble(mLongitudeIndex), getInt(mAltitudeIndex), getString(mNameIndex));
+        }
+        return tiles;
+    }
+
+    /**
+     * Reads the remaining rows into a {@link PointsFileWriter}.
+     * @param writer the {@link PointsFileWriter} to add the points to.
+     */
+    void readPoints(PointsFileWriter writer) {
+        while (mCursor.moveToNext()) {
+            writer.add(getDouble(mLatitudeIndex), getDouble(mLongitudeIndex), getInt(mAltitudeIndex), getString(mNameIndex));
+        }
+    }
+
+    // Typed getters of the current row, returning the default value if the column is not in the projection
+    private long getLong(int index) {
+        return index >= 0 ? mCursor.getLong(index) : 0;
+    }
+
+    private int getInt(int index) {
+        return index >= 0 ? mCursor.getInt(index) : 0;
+    }
+
+    private double getDouble(int index) {
+        return index >= 0 ? mCursor.getDouble(index) : 0;
+    }
+
+    private String getString(int index) {
+        return index >= 0 ? mCursor.getString(index) : null;
+    }
+}
@@ -0,0 +1,41 @@
+package com.louisnard.mountainsfinderar.model.database;
+
+import android.location.Location;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import com.louisnard.mountainsfinderar.model.objects.PointStore;
+import com.louisnard.mountainsfinderar.model.services.PointService;
+
+/**
+ * Interface definition for a source of points around the user location.<br>
+ *
+ * Implemented by {@link PointsTileCache}, which reads the points from the {@link ARDbHelper} SQLite database, and by {@link PointsFile}, which reads them from a memory-mapped binary points file.<br>
+ * Implementations are not required to be thread-safe: a {@link PointRepository} must always be used from the same thread.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public interface PointRepository {
+
+    /**
+     * Returns all points around the given {@link Location}.<br>
+     * Actually, the points are located in the minimal bounding box of the circle of radius {@param distance} centered on the given {@param location} (see {@link PointService#getBoundingBoxes(double, double, int)}).<br>
+     * The points names may be loaded lazily by the returned {@link PointStore}.
+     * @param location the {@link Location} around which the points have to be located.
+     * @param distance the radius of the circle around the {@link Location} where the points have to be located.
+     * @param cancellationSignal the {@link CancellationSignal} to cancel the reading with, or <b>null</b>.
+     * @return the {@link PointStore} of all points located around the given {@link Location}.
+     * @throws OperationCanceledException if the reading has been cancelled.
+     */
+    PointStore getPointsAround(Location location, int distance, CancellationSignal cancellationSignal);
+
+    /**
+     * Prepares the points around the location where the user is heading, according to the bearing and speed of the given {@link Location}, so that the next calls to {@link #getPointsAround(Location, int, CancellationSignal)} are faster.
+     * @param location the current user {@link Location}.
+     * @param distance the radius of the circle around the future user location where the points will have to be located.
+     * @param cancellationSignal the {@link CancellationSignal} to cancel the reading with, or <b>null</b>.
+     * @throws OperationCanceledException if the reading has been cancelled.
+     */
+    void prefetchPointsAhead(Location location, int distance, CancellationSignal cancellationSignal);
+}
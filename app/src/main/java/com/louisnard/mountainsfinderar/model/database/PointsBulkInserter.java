@@ -0,0 +1,141 @@
+package com.louisnard.mountainsfinderar.model.database;
+
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.louisnard.mountainsfinderar.BuildConfig;
+import com.louisnard.mountainsfinderar.model.objects.Point;
+import com.louisnard.mountainsfinderar.model.services.PointService;
+
+/**
+ * Helper class inserting a large number of {@link Point}s into the {@link SQLiteDatabase}.<br>
+ *
+ * Compared to {@link SQLiteDatabase#insert(String, String, android.content.ContentValues)} row by row, it:<br>
+ * - Reuses a single compiled {@link SQLiteStatement} with bound parameters.<br>
+ * - Groups the rows in transactions of {@link #TRANSACTION_SIZE} rows instead of committing each row: with the write-ahead log, a commit does not flush the disk.<br>
+ * - Uses non-exclusive transactions, so that the points can still be read through the write-ahead log while importing.<br>
+ *
+ * Rows are only committed by chunks: {@link #finish()} must always be called, even when the import is cancelled, to commit the pending rows.<br>
+ * Obtained from {@link ARDbHelper#beginBulkInsert()}.
+ *
+ * @author Alexandre Louisnard
+ */
+public class PointsBulkInserter {
+
+    // Tag
+    private static final String TAG = PointsBulkInserter.class.getSimpleName();
+
+    // Constants
+    // The number of rows committed in each transaction
+    public static final int TRANSACTION_SIZE = 1000;
+
+    // SQL requests
+    private static final String SQL_INSERT_POINT = "INSERT INTO " + ARDbContract.PointsColumns.TABLE_NAME + " ("
+            + ARDbContract.PointsColumns.COLUMN_NAME + ","
+            + ARDbContract.PointsColumns.COLUMN_DESCRIPTION + ","
+            + ARDbContract.PointsColumns.COLUMN_LATITUDE + ","
+            + ARDbContract.PointsColumns.COLUMN_LONGITUDE + ","
+            + ARDbContract.PointsColumns.COLUMN_ALTITUDE + ","
+            + ARDbContract.PointsColumns.COLUMN_TILE + ") VALUES (?,?,?,?,?,?)";
+
+    // Database
+    private final ARDbHelper mDbHelper;
+    private final SQLiteDatabase mDb;
+    private final SQLiteStatement mInsertStatement;
+
+    // Progress
+    private boolean mInTransaction;
+    private int mRowsInTransaction;
+    private long mInsertedPointsNumber;
+    private boolean mHasFailed;
+
+    /**
+     * Constructs a new instance of {@link PointsBulkInserter} and compiles its insert statement.
+     * @param dbHelper the {@link ARDbHelper} of the {@link SQLiteDatabase}.
+     */
+    PointsBulkInserter(ARDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+        mDb = dbHelper.getWritableDatabase();
+        mInsertStatement = mDb.compileStatement(SQL_INSERT_POINT);
+    }
+
+    /**
+     * Inserts the given {@link Point}. The row is committed with the current chunk of {@link #TRANSACTION_SIZE} rows.
+     * @param point the {@link Point} to insert.
+     * @return <b>true</b> if the {@link Point} has been inserted. <b>false</b> if an error occurred.
+     */
+    public boolean insert(Point point) {
+        if (!mInTransaction) {
+            mDb.beginTransactionNonExclusive();
+            mInTransaction = true;
+        }
+        bindStringOrNull(1, point.getName());
+        bindStringOrNull(2, point.getDescription());
+        mInsertStatement.bindDouble(3, point.getLatitude());
+        mInsertStatement.bindDouble(4, point.getLongitude());
+        mInsertStatement.bindLong(5, point.getAltitude());
+        mInsertStatement.bindLong(6, PointService.getTileKey(point.getLatitude(), point.getLongitude()));
+        boolean inserted;
+        try {
+            inserted = mInsertStatement.executeInsert() != -1;
+        } catch (SQLException e) {
+            inserted = false;
+        }
+        if (inserted) {
+            mInsertedPointsNumber++;
+        } else {
+            mHasFailed = true;
+            if (BuildConfig.DEBUG) Log.d(TAG, "Error inserting the point: \"" + point.getName() + "\" into the database");
+        }
+        if (++mRowsInTransaction == TRANSACTION_SIZE) {
+            commit();
+        }
+        return inserted;
+    }
+
+    // SQLiteStatement.bindString() does not accept null values
+    private void bindStringOrNull(int index, String value) {
+        if (value == null) {
+            mInsertStatement.bindNull(index);
+        } else {
+            mInsertStatement.bindString(index, value);
+        }
+    }
+
+    // Commits the current chunk of rows
+    private void commit() {
+        if (mInTransaction) {
+            mInTransaction = false;
+            mRowsInTransaction = 0;
+            mDb.setTransactionSuccessful();
+            mDb.endTransaction();
+            mDbHelper.onPointsChanged();
+        }
+    }
+
+    /**
+     * Commits the pending rows and releases the compiled statement.<br>
+     * The {@link SQLiteDatabase} itself stays open: it is shared by the whole application.<br>
+     * Must be called from a <code>finally</code> block, so that an exception thrown by {@link #insert(Point)} does not leave the transaction open.<br>
+     * This {@link PointsBulkInserter} must not be used afterwards.
+     * @return the number of successfully inserted rows, or -1 if an error occurred on one or many rows.
+     */
+    public long finish() {
+        try {
+            commit();
+        } finally {
+            mInsertStatement.close();
+        }
+        return mHasFailed ? -1 : mInsertedPointsNumber;
+    }
+
+    /**
+     * Returns the number of {@link Point}s successfully inserted so far, committed or not.
+     * @return the number of successfully inserted rows.
+     */
+    public long getInsertedPointsNumber() {
+        return mInsertedPointsNumber;
+    }
+}
@@ -0,0 +1,226 @@
+package com.louisnard.mountainsfinderar.model.database;
+
+import android.location.Location;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.util.Log;
+
+import com.louisnard.mountainsfinderar.BuildConfig;
+import com.louisnard.mountainsfinderar.model.objects.BoundingBox;
+import com.louisnard.mountainsfinderar.model.objects.PointStore;
+import com.louisnard.mountainsfinderar.model.services.PointService;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * {@link PointRepository} reading the points from a binary points file, written by {@link PointsFileWriter}.<br>
+ *
+ * The file is made of, in big-endian order:
+ * <ul>
+ *     <li>a header of {@link #HEADER_SIZE} bytes: the magic number {@link #MAGIC}, the format version {@link #VERSION}, the number of points and the size of the string pool in bytes, as 32-bit integers.</li>
+ *     <li>the points records, of {@link #RECORD_SIZE} bytes each, sorted by spatial index tile (see {@link PointService#getTileKey(double, double)}): the tile key, the latitude and the longitude in 10<sup>-7</sup> degrees, the altitude in meters and the offset of the name in the string pool (or {@link #NO_NAME}), as 32-bit integers.</li>
+ *     <li>the string pool: the points names, each one as its length in bytes as a 32-bit integer followed by its UTF-8 bytes.</li>
+ * </ul>
+ * The file is memory-mapped: the points around a location are read directly from the records of the tiles overlapping it, found by binary search, and only the pages of these records are loaded by the system.<br>
+ * The id of a point is its record index in the file. Its name is only decoded from the string pool when it is needed, through the {@link PointStore.NameLoader} of the returned {@link PointStore}s.<br>
+ *
+ * The file is read-only once opened: a {@link PointsFile} can be read from many threads at a time.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class PointsFile implements PointRepository {
+
+    // Tag
+    private static final String TAG = PointsFile.class.getSimpleName();
+
+    // Constants
+    // The magic number at the beginning of a points file: "MFPT"
+    static final int MAGIC = 0x4D465054;
+    // The version of the points file format
+    static final int VERSION = 1;
+    // The size of the header, in bytes
+    static final int HEADER_SIZE = 4 * 4;
+    // The size of a point record, in bytes
+    static final int RECORD_SIZE = 5 * 4;
+    // The scale of the latitudes and longitudes stored as integers: 1 cm accuracy
+    static final double COORDINATE_SCALE = 1e7;
+    // The name offset of the points without a name
+    static final int NO_NAME = -1;
+    // The offsets of the fields within a point record
+    private static final int RECORD_TILE_KEY = 0;
+    private static final int RECORD_LATITUDE = 4;
+    private static final int RECORD_LONGITUDE = 8;
+    private static final int RECORD_ALTITUDE = 12;
+    private static final int RECORD_NAME_OFFSET = 16;
+
+    // File content
+    private final ByteBuffer mBuffer;
+    private final int mPointsNumber;
+    private final int mStringPoolPosition;
+
+    // Decodes the points names from the string pool, for the PointStores returned by this file
+    private final PointStore.NameLoader mNameLoader = new PointStore.NameLoader() {
+        @Override
+        public String loadName(long id) {
+            return getName((int) id);
+        }
+    };
+
+    /**
+     * Opens a points file.
+     * @param file the points file, written by {@link PointsFileWriter}.
+     * @throws IOException if the file cannot be read or is not a valid points file.
+     */
+    public PointsFile(File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final long length = randomAccessFile.length();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Invalid points file size: " + file);
+            }
+            // The mapping stays valid once the file is closed
+            mBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length).order(ByteOrder.BIG_ENDIAN);
+        } finally {
+            randomAccessFile.close();
+        }
+        if (mBuffer.getInt(0) != MAGIC || mBuffer.getInt(4) != VERSION) {
+            throw new IOException("Invalid points file header: " + file);
+        }
+        mPointsNumber = mBuffer.getInt(8);
+        final long stringPoolPosition = HEADER_SIZE + (long) mPointsNumber * RECORD_SIZE;
+        if (mPointsNumber < 0 || stringPoolPosition + mBuffer.getInt(12) != mBuffer.capacity()) {
+            throw new IOException("Invalid points file size: " + file);
+        }
+        mStringPoolPosition = (int) stringPoolPosition;
+        if (BuildConfig.DEBUG) Log.d(TAG, "Points file opened: " + mPointsNumber + " points");
+    }
+
+    /**
+     * Gets the number of points in this {@link PointsFile}.
+     * @return the number of points.
+     */
+    public int size() {
+        return mPointsNumber;
+    }
+
+    /**
+     * Returns all points of the file around the given {@link Location} (see {@link PointRepository#getPointsAround(Location, int, CancellationSignal)}).
+     * @param location the {@link Location} around which the points have to be located.
+     * @param distance the radius of the circle around the {@link Location} where the points have to be located.
+     * @param cancellationSignal the {@link CancellationSignal} to cancel the reading with, or <b>null</b>.
+     * @return the {@link PointStore} of all points located around the given {@link Location}.
+     * @throws OperationCanceledException if the reading has been cancelled.
+     */
+    @Override
+    public PointStore getPointsAround(Location location, int distance, CancellationSignal cancellationSignal) {
+        return getPointsAround(location.getLatitude(), location.getLongitude(), distance, cancellationSignal);
+    }
+
+    /**
+     * Returns all points of the file around the given coordinates, as {@link #getPointsAround(Location, int, CancellationSignal)}.
+     * @param latitude the latitude of the center in degrees.
+     * @param longitude the longitude of the center in degrees.
+     * @param distance the radius of the circle around the center where the points have to be located.
+     * @param cancellationSignal the {@link CancellationSignal} to cancel the reading with, or <b>null</b>.
+     * @return the {@link PointStore} of all points located around the given coordinates.
+     * @throws OperationCanceledException if the reading has been cancelled.
+     */
+    public PointStore getPointsAround(double latitude, double longitude, int distance, CancellationSignal cancellationSignal) {
+        final List<BoundingBox> boundingBoxes = PointService.getBoundingBoxes(latitude, longitude, distance);
+        final int[] tileKeys = PointService.getTileKeys(boundingBoxes);
+
+        // Find the records of the ranges of consecutive tile keys
+        final int[] recordRanges = new int[2 * tileKeys.length];
+        int rangesNumber = 0;
+        int recordsNumber = 0;
+        for (int i = 0; i < tileKeys.length; ) {
+            int j = i;
+            while (j + 1 < tileKeys.length && tileKeys[j + 1] == tileKeys[j] + 1) {
+                j++;
+            }
+            final int firstRecord = findFirstRecord(tileKeys[i]);
+            final int endRecord = findFirstRecord(tileKeys[j] + 1);
+            if (endRecord > firstRecord) {
+                recordRanges[2 * rangesNumber] = firstRecord;
+                recordRanges[2 * rangesNumber + 1] = endRecord;
+                recordsNumber += endRecord - firstRecord;
+                rangesNumber++;
+            }
+            i = j + 1;
+        }
+
+        // Keep the points of the records located inside the bounding boxes
+        final PointStore points = new PointStore(recordsNumber, mNameLoader);
+        for (int range = 0; range < rangesNumber; range++) {
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            for (int record = recordRanges[2 * range]; record < recordRanges[2 * range + 1]; record++) {
+                final int position = HEADER_SIZE + record * RECORD_SIZE;
+                final double pointLatitude = mBuffer.getInt(position + RECORD_LATITUDE) / COORDINATE_SCALE;
+                final double pointLongitude = mBuffer.getInt(position + RECORD_LONGITUDE) / COORDINATE_SCALE;
+                for (BoundingBox boundingBox : boundingBoxes) {
+                    if (boundingBox.contains(pointLatitude, pointLongitude)) {
+                        points.add(record, pointLatitude, pointLongitude, mBuffer.getInt(position + RECORD_ALTITUDE));
+                        break;
+                    }
+                }
+            }
+        }
+        if (BuildConfig.DEBUG) Log.d(TAG, recordsNumber + " records read in " + rangesNumber + " ranges of tiles, " + points.size() + " points found");
+        return points;
+    }
+
+    /**
+     * Does nothing: the pages of the file are loaded by the system when they are first read, which is not slower than prefetching them.
+     * @param location the current user {@link Location}.
+     * @param distance the radius of the circle around the future user location where the points will have to be located.
+     * @param cancellationSignal the {@link CancellationSignal} to cancel the reading with, or <b>null</b>.
+     */
+    @Override
+    public void prefetchPointsAhead(Location location, int distance, CancellationSignal cancellationSignal) {
+        // Nothing to do
+    }
+
+    /**
+     * Returns the name of the point with the given record index.
+     * @param index the record index of the point, which is also its id.
+     * @return the name, or <b>null</b> if the point has no name.
+     */
+    public String getName(int index) {
+        final int nameOffset = mBuffer.getInt(HEADER_SIZE + index * RECORD_SIZE + RECORD_NAME_OFFSET);
+        if (nameOffset == NO_NAME) {
+            return null;
+        }
+        final int position = mStringPoolPosition + nameOffset;
+        final byte[] bytes = new byte[mBuffer.getInt(position)];
+        // Read through a duplicate: the position of the shared buffer is never modified, so that it can be read from many threads at a time
+        final ByteBuffer buffer = mBuffer.duplicate();
+        buffer.position(position + 4);
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Returns the index of the first record whose tile key is greater than or equal to the given one, or the number of points if there is none
+    private int findFirstRecord(int tileKey) {
+        int low = 0;
+        int high = mPointsNumber;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (mBuffer.getInt(HEADER_SIZE + middle * RECORD_SIZE + RECORD_TILE_KEY) < tileKey) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
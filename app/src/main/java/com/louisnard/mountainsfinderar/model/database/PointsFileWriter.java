@@ -0,0 +1,119 @@
+package com.louisnard.mountainsfinderar.model.database;
+
+import android.util.Log;
+
+import com.louisnard.mountainsfinderar.BuildConfig;
+import com.louisnard.mountainsfinderar.model.objects.PointStore;
+import com.louisnard.mountainsfinderar.model.services.PointService;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Class that writes a binary points file, read by {@link PointsFile} (see {@link PointsFile} for the file format).<br>
+ *
+ * The points are gathered in memory by {@link #add(double, double, int, String)}, then sorted by spatial index tile and written at once by {@link #write(File)}.<br>
+ * The points of the {@link ARDbHelper} database are converted by {@link ARDbHelper#writePointsFile(File)}, and the points of a GPX file by {@link PointService#writePointsFile(java.io.InputStream, File)}.<br>
+ *
+ * Not thread-safe.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class PointsFileWriter {
+
+    // Tag
+    private static final String TAG = PointsFileWriter.class.getSimpleName();
+
+    // Points
+    private final PointStore mPoints = new PointStore();
+
+    /**
+     * Adds a point to write.
+     * @param latitude the latitude in degrees.
+     * @param longitude the longitude in degrees.
+     * @param altitude the altitude in meters.
+     * @param name the name, or <b>null</b>.
+     */
+    public void add(double latitude, double longitude, int altitude, String name) {
+        mPoints.add(mPoints.size(), latitude, longitude, altitude, name);
+    }
+
+    /**
+     * Gets the number of points added so far.
+     * @return the number of points.
+     */
+    public int size() {
+        return mPoints.size();
+    }
+
+    /**
+     * Writes the points added so far to the given file, replacing it if it exists.<br>
+     * The file is first written next to the target and then renamed, so that a {@link PointsFile} already reading the target is not disturbed.
+     * @param file the points file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(File file) throws IOException {
+        // Sort the points by tile key
+        final int pointsNumber = mPoints.size();
+        final int[] tileKeys = new int[pointsNumber];
+        final Integer[] order = new Integer[pointsNumber];
+        for (int i = 0; i < pointsNumber; i++) {
+            tileKeys[i] = PointService.getTileKey(mPoints.getLatitude(i), mPoints.getLongitude(i));
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer index1, Integer index2) {
+                return Integer.compare(tileKeys[index1], tileKeys[index2]);
+            }
+        });
+
+        // Build the records and the string pool
+        final ByteArrayOutputStream records = new ByteArrayOutputStream(pointsNumber * PointsFile.RECORD_SIZE);
+        final DataOutputStream recordsOutput = new DataOutputStream(records);
+        final ByteArrayOutputStream stringPool = new ByteArrayOutputStream();
+        final DataOutputStream stringPoolOutput = new DataOutputStream(stringPool);
+        for (int index : order) {
+            recordsOutput.writeInt(tileKeys[index]);
+            recordsOutput.writeInt((int) Math.round(mPoints.getLatitude(index) * PointsFile.COORDINATE_SCALE));
+            recordsOutput.writeInt((int) Math.round(mPoints.getLongitude(index) * PointsFile.COORDINATE_SCALE));
+            recordsOutput.writeInt(mPoints.getAltitude(index));
+            final String name = mPoints.getName(index);
+            if (name != null) {
+                final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                recordsOutput.writeInt(stringPoolOutput.size());
+                stringPoolOutput.writeInt(bytes.length);
+                stringPoolOutput.write(bytes);
+            } else {
+                recordsOutput.writeInt(PointsFile.NO_NAME);
+            }
+        }
+
+        // Write the file
+        final File temporaryFile = new File(file.getPath() + ".tmp");
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+        try {
+            output.writeInt(PointsFile.MAGIC);
+            output.writeInt(PointsFile.VERSION);
+            output.writeInt(pointsNumber);
+            output.writeInt(stringPool.size());
+            records.writeTo(output);
+            stringPool.writeTo(output);
+        } finally {
+            output.close();
+        }
+        if (!temporaryFile.renameTo(file)) {
+            temporaryFile.delete();
+            throw new IOException("Cannot write the points file: " + file);
+        }
+        if (BuildConfig.DEBUG) Log.d(TAG, pointsNumber + " points written to " + file);
+    }
+}
@@ -0,0 +1,181 @@
+package com.louisnard.mountainsfinderar.model.database;
+
+import android.location.Location;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.louisnard.mountainsfinderar.BuildConfig;
+import com.louisnard.mountainsfinderar.model.objects.BoundingBox;
+import com.louisnard.mountainsfinderar.model.objects.PointStore;
+import com.louisnard.mountainsfinderar.model.services.PointService;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link PointRepository} reading the points from the {@link ARDbHelper} database, through an in-memory cache, by spatial index tile (see {@link PointService#getTileKey(double, double)}).<br>
+ *
+ * The points around a location are assembled from the cached tiles: only the tiles that are not cached yet are read from the database, in a single query.<br>
+ * The points names are cached along with the points, so that the returned {@link PointStore}s never query the database.<br>
+ * The tiles ahead of the user, according to their bearing and speed, can be prefetched so that they are already cached when they get there.<br>
+ * The least recently used tiles are evicted when the memory used by the cached points exceeds {@link #MAX_CACHE_SIZE} bytes.<br>
+ * The whole cache is invalidated whenever points are added to or removed from the database (see {@link ARDbHelper#getPointsVersion()}).<br>
+ *
+ * Not thread-safe: must always be used from the same thread.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class PointsTileCache implements PointRepository {
+
+    // Tag
+    private static final String TAG = PointsTileCache.class.getSimpleName();
+
+    // Constants
+    // The maximum memory used by the cached points, in bytes
+    private static final int MAX_CACHE_SIZE = 2 * 1024 * 1024;
+    // The approximate memory used by a cached point, in bytes: id, latitude, longitude, altitude, name reference and a name of about 20 characters
+    private static final int POINT_SIZE = 8 + 8 + 8 + 4 + 4 + 80;
+    // The approximate memory used by a cached tile itself, in bytes
+    private static final int TILE_SIZE = 128;
+    // The tiles are prefetched where the user will be in this time at their current speed, in seconds
+    private static final int PREFETCH_TIME = 60;
+    // The minimum speed of the user for the tiles ahead of them to be prefetched, in meters per second
+    private static final float PREFETCH_MIN_SPEED = 1;
+    // The maximum number of ranges of tiles read in a single query, to stay below the SQLite limit of 999 arguments
+    private static final int MAX_TILE_RANGES_PER_QUERY = 400;
+
+    // Database
+    private final ARDbHelper mDbHelper;
+    private long mPointsVersion;
+
+    // Cached tiles by tile key: the tiles without any point are cached too, as empty PointStores
+    private final LruCache<Integer, PointStore> mTiles = new LruCache<Integer, PointStore>(MAX_CACHE_SIZE) {
+        @Override
+        protected int sizeOf(Integer tileKey, PointStore tile) {
+            return TILE_SIZE + tile.size() * POINT_SIZE;
+        }
+    };
+
+    /**
+     * Constructs a new instance of {@link PointsTileCache}.
+     * @param dbHelper the {@link ARDbHelper} to read the points from.
+     */
+    public PointsTileCache(ARDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+        mPointsVersion = dbHelper.getPointsVersion();
+    }
+
+    /**
+     * Returns all points around the given {@link Location}, as {@link ARDbHelper#getPointsAround(Location, int, CancellationSignal)}.<br>
+     * Only the tiles that are not cached yet are read from the database.
+     * @param location the {@link Location} around which the points have to be located.
+     * @param distance the radius of the circle around the {@link Location} where the points have to be located.
+     * @param cancellationSignal the {@link CancellationSignal} to cancel the database query with, or <b>null</b>.
+     * @return the {@link PointStore} of all points located around the given {@link Location}.
+     * @throws OperationCanceledException if the database query has been cancelled.
+     */
+    @Override
+    public PointStore getPointsAround(Location location, int distance, CancellationSignal cancellationSignal) {
+        final List<BoundingBox> boundingBoxes = PointService.getBoundingBoxes(location.getLatitude(), location.getLongitude(), distance);
+        final PointStore[] tiles = getTiles(PointService.getTileKeys(boundingBoxes), cancellationSignal);
+
+        // Keep the points of the tiles located inside the bounding boxes
+        int pointsNumber = 0;
+        for (PointStore tile : tiles) {
+            pointsNumber += tile.size();
+        }
+        final PointStore points = new PointStore(pointsNumber, null);
+        for (PointStore tile : tiles) {
+            for (int i = 0; i < tile.size(); i++) {
+                final double latitude = tile.getLatitude(i);
+                final double longitude = tile.getLongitude(i);
+                for (BoundingBox boundingBox : boundingBoxes) {
+                    if (boundingBox.contains(latitude, longitude)) {
+                        points.add(tile.getId(i), latitude, longitude, tile.getAltitude(i), tile.getName(i));
+                        break;
+                    }
+                }
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Loads into the cache the tiles around the location where the user will be in {@link #PREFETCH_TIME} seconds, according to the bearing and speed of the given {@link Location}.<br>
+     * Does nothing if the {@link Location} has no bearing, or no speed or a speed lower than {@link #PREFETCH_MIN_SPEED}.
+     * @param location the current user {@link Location}.
+     * @param distance the radius of the circle around the future user location where the points will have to be located.
+     * @param cancellationSignal the {@link CancellationSignal} to cancel the database query with, or <b>null</b>.
+     * @throws OperationCanceledException if the database query has been cancelled.
+     */
+    @Override
+    public void prefetchPointsAhead(Location location, int distance, CancellationSignal cancellationSignal) {
+        if (!location.hasBearing() || !location.hasSpeed() || location.getSpeed() < PREFETCH_MIN_SPEED) {
+            return;
+        }
+        final double[] destination = PointService.getDestination(location.getLatitude(), location.getLongitude(), location.getBearing(), location.getSpeed() * PREFETCH_TIME);
+        getTiles(PointService.getTileKeys(PointService.getBoundingBoxes(destination[0], destination[1], distance)), cancellationSignal);
+    }
+
+    /**
+     * Evicts all the cached tiles.
+     */
+    public void clear() {
+        mTiles.evictAll();
+    }
+
+    // Returns the tiles with the given keys, from the cache or from the database
+    private PointStore[] getTiles(int[] tileKeys, CancellationSignal cancellationSignal) {
+        // The cached tiles are outdated if points have been added or removed since they were read
+        final long pointsVersion = mDbHelper.getPointsVersion();
+        if (pointsVersion != mPointsVersion) {
+            if (BuildConfig.DEBUG) Log.d(TAG, "Points changed in the database: tiles cache cleared");
+            mTiles.evictAll();
+            mPointsVersion = pointsVersion;
+        }
+
+        // Get the cached tiles, and gather the missing ones in ranges of consecutive tile keys
+        final PointStore[] tiles = new PointStore[tileKeys.length];
+        final int[] missingTileKeyRanges = new int[2 * tileKeys.length];
+        int rangesNumber = 0;
+        for (int i = 0; i < tileKeys.length; i++) {
+            tiles[i] = mTiles.get(tileKeys[i]);
+            if (tiles[i] == null) {
+                if (rangesNumber > 0 && missingTileKeyRanges[2 * rangesNumber - 1] == tileKeys[i] - 1) {
+                    missingTileKeyRanges[2 * rangesNumber - 1] = tileKeys[i];
+                } else {
+                    missingTileKeyRanges[2 * rangesNumber] = tileKeys[i];
+                    missingTileKeyRanges[2 * rangesNumber + 1] = tileKeys[i];
+                    rangesNumber++;
+                }
+            }
+        }
+        if (rangesNumber == 0) {
+            return tiles;
+        }
+
+        // Read the missing tiles from the database
+        int readTilesNumber = 0;
+        for (int firstRange = 0; firstRange < rangesNumber; firstRange += MAX_TILE_RANGES_PER_QUERY) {
+            final int queryRangesNumber = Math.min(MAX_TILE_RANGES_PER_QUERY, rangesNumber - firstRange);
+            final int[] queryTileKeyRanges = new int[2 * queryRangesNumber];
+            System.arraycopy(missingTileKeyRanges, 2 * firstRange, queryTileKeyRanges, 0, 2 * queryRangesNumber);
+            final Map<Integer, PointStore> readTiles = mDbHelper.getPointsInTiles(queryTileKeyRanges, queryRangesNumber, cancellationSignal);
+            for (int i = 0; i < tileKeys.length; i++) {
+                if (tiles[i] == null && tileKeys[i] >= queryTileKeyRanges[0] && tileKeys[i] <= queryTileKeyRanges[2 * queryRangesNumber - 1]) {
+                    tiles[i] = readTiles.get(tileKeys[i]);
+                    if (tiles[i] == null) {
+                        tiles[i] = new PointStore(0, null);
+                    }
+                    mTiles.put(tileKeys[i], tiles[i]);
+                    readTilesNumber++;
+                }
+            }
+        }
+        if (BuildConfig.DEBUG) Log.d(TAG, readTilesNumber + " tiles read from the database, " + (tileKeys.length - readTilesNumber) + " tiles found in the cache");
+        return tiles;
+    }
+}
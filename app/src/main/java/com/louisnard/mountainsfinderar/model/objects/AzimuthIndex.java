@@ -0,0 +1,100 @@
+package com.louisnard.mountainsfinderar.model.objects;
+
+import java.util.Arrays;
+
+/**
+ * Class that holds the indexes of the points of a {@link PointStore} sorted by ascending azimuth, as seen from a given point.<br>
+ * Points with the same azimuth are all kept, ordered by ascending point index.<br>
+ *
+ * Each point has a position in this index, from 0 to {@link #size()} - 1, associated with its azimuth and its index in the {@link PointStore}.<br>
+ * Azimuth ranges are queried by binary search with {@link #getFirstPosition(float)}, then iterated by position:
+ * <pre>
+ * for (int position = index.getFirstPosition(from); position &lt; index.getFirstPosition(to); position++) {
+ *     final int pointIndex = index.getPointIndex(position);
+ * }
+ * </pre>
+ * Immutable: it can be shared between threads.
+ *
+ * @author Alexandre Louisnard
+ */
+public class AzimuthIndex {
+
+    // Attributes
+    private final float[] mAzimuths;
+    private final int[] mPointIndexes;
+
+    /**
+     * Constructs a new instance of {@link AzimuthIndex}, sorting the given azimuths in O(n log n) without boxing them.
+     * @param azimuths the azimuth of each point, by point index, in degrees from 0° to 360°. Not modified.
+     * @param size the number of points, lower than or equal to the length of {@param azimuths}.
+     */
+    public AzimuthIndex(float[] azimuths, int size) {
+        // For positive floats, the order of the raw bits is the order of the values: sort (azimuth bits, point index) pairs packed in longs
+        final long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            // Adding 0 turns -0 into +0, whose bits are sorted with the positive values
+            keys[i] = ((long) Float.floatToIntBits(azimuths[i] + 0f) << 32) | i;
+        }
+        Arrays.sort(keys);
+        mAzimuths = new float[size];
+        mPointIndexes = new int[size];
+        for (int position = 0; position < size; position++) {
+            mAzimuths[position] = Float.intBitsToFloat((int) (keys[position] >>> 32));
+            mPointIndexes[position] = (int) keys[position];
+        }
+    }
+
+    /**
+     * Gets the number of points in this {@link AzimuthIndex}.
+     * @return the number of points.
+     */
+    public int size() {
+        return mAzimuths.length;
+    }
+
+    /**
+     * Indicates whether this {@link AzimuthIndex} is empty or not.
+     * @return <b>true</b> if the index does not contain any point. <b>false</b> otherwise.
+     */
+    public boolean isEmpty() {
+        return mAzimuths.length == 0;
+    }
+
+    /**
+     * Gets the azimuth of the point at the given position.
+     * @param position the position in this {@link AzimuthIndex}.
+     * @return the azimuth in degrees, from 0° to 360°.
+     */
+    public float getAzimuth(int position) {
+        return mAzimuths[position];
+    }
+
+    /**
+     * Gets the {@link PointStore} index of the point at the given position.
+     * @param position the position in this {@link AzimuthIndex}.
+     * @return the point index in the {@link PointStore}.
+     */
+    public int getPointIndex(int position) {
+        return mPointIndexes[position];
+    }
+
+    /**
+     * Returns the position of the first point whose azimuth is greater than or equal to {@param azimuth}, by binary search.<br>
+     * The points whose azimuth is in [from, to[ are at the positions from getFirstPosition(from) included to getFirstPosition(to) excluded.
+     * @param azimuth the azimuth in degrees.
+     * @return the position, from 0 to {@link #size()}. {@link #size()} if all points have a lower azimuth.
+     */
+    public int getFirstPosition(float azimuth) {
+        int low = 0;
+        int high = mAzimuths.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (mAzimuths[middle] < azimuth) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,78 @@
+package com.louisnard.mountainsfinderar.model.objects;
+
+/**
+ * Class that holds a latitude / longitude bounding box.<br>
+ * A bounding box never crosses the antimeridian: its minimum longitude is always lower than or equal to its maximum longitude.
+ *
+ * @author Alexandre Louisnard
+ */
+public class BoundingBox {
+
+    // Attributes
+    private final double mLatitudeMin;
+    private final double mLatitudeMax;
+    private final double mLongitudeMin;
+    private final double mLongitudeMax;
+
+    /**
+     * Constructs a new instance of {@link BoundingBox}.
+     * @param latitudeMin the minimum latitude in degrees, comprised between -90° and 90°.
+     * @param latitudeMax the maximum latitude in degrees, comprised between -90° and 90°.
+     * @param longitudeMin the minimum longitude in degrees, comprised between -180° and 180°.
+     * @param longitudeMax the maximum longitude in degrees, comprised between -180° and 180°.
+     */
+    public BoundingBox(double latitudeMin, double latitudeMax, double longitudeMin, double longitudeMax) {
+        mLatitudeMin = latitudeMin;
+        mLatitudeMax = latitudeMax;
+        mLongitudeMin = longitudeMin;
+        mLongitudeMax = longitudeMax;
+    }
+
+    // Getters
+    /**
+     * Gets the minimum latitude of this {@link BoundingBox}.
+     * @return the minimum latitude in degrees.
+     */
+    public double getLatitudeMin() {
+        return mLatitudeMin;
+    }
+
+    /**
+     * Gets the maximum latitude of this {@link BoundingBox}.
+     * @return the maximum latitude in degrees.
+     */
+    public double getLatitudeMax() {
+        return mLatitudeMax;
+    }
+
+    /**
+     * Gets the minimum longitude of this {@link BoundingBox}.
+     * @return the minimum longitude in degrees.
+     */
+    public double getLongitudeMin() {
+        return mLongitudeMin;
+    }
+
+    /**
+     * Gets the maximum longitude of this {@link BoundingBox}.
+     * @return the maximum longitude in degrees.
+     */
+    public double getLongitudeMax() {
+        return mLongitudeMax;
+    }
+
+    /**
+     * Indicates whether the given coordinates are inside this {@link BoundingBox} or not.
+     * @param latitude the latitude in degrees.
+     * @param longitude the longitude in degrees.
+     * @return <b>true</b> if the coordinates are inside this {@link BoundingBox}, borders included. <b>false</b> otherwise.
+     */
+    public boolean contains(double latitude, double longitude) {
+        return latitude >= mLatitudeMin && latitude <= mLatitudeMax && longitude >= mLongitudeMin && longitude <= mLongitudeMax;
+    }
+
+    @Override
+    public String toString() {
+        return "BoundingBox[" + mLatitudeMin + ", " + mLatitudeMax + "] x [" + mLongitudeMin + ", " + mLongitudeMax + "]";
+    }
+}
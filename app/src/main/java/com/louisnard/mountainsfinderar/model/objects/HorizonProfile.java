@@ -0,0 +1,73 @@
+package com.louisnard.mountainsfinderar.model.objects;
+
+/**
+ * Class that holds the terrain horizon around a location: for each azimuth bin, the highest vertical angle of the terrain up to each distance from the location.<br>
+ *
+ * A point is occluded when some closer terrain in its azimuth bin is seen higher than it: this is answered in constant time by {@link #isVisible(float, int, float)}.<br>
+ * Immutable once built.
+ *
+ * @author Alexandre Louisnard
+ */
+public class HorizonProfile {
+
+    // Constants
+    // The number of terrain samples just in front of a point that are ignored, since the point and the elevation model do not exactly match
+    private static final int IGNORED_SAMPLES_NUMBER = 2;
+
+    // Attributes
+    private final int mAzimuthBinsNumber;
+    private final int mSamplesNumber;
+    private final float mSampleDistance;
+    private final float[] mMaxVerticalAngles;
+    private final float mObserverAltitude;
+
+    /**
+     * Constructs a new instance of {@link HorizonProfile}.<br>
+     * The given array must not be modified afterwards.
+     * @param azimuthBinsNumber the number of azimuth bins, evenly spread from 0° to 360°.
+     * @param samplesNumber the number of terrain samples along each azimuth bin.
+     * @param sampleDistance the distance between two consecutive terrain samples, in meters. The first sample is at this distance from the location.
+     * @param maxVerticalAngles the highest vertical angle of the terrain up to each sample, in degrees, by sample index within each azimuth bin.
+     * @param observerAltitude the altitude the terrain has been seen from, in meters.
+     */
+    public HorizonProfile(int azimuthBinsNumber, int samplesNumber, float sampleDistance, float[] maxVerticalAngles, float observerAltitude) {
+        mAzimuthBinsNumber = azimuthBinsNumber;
+        mSamplesNumber = samplesNumber;
+        mSampleDistance = sampleDistance;
+        mMaxVerticalAngles = maxVerticalAngles;
+        mObserverAltitude = observerAltitude;
+    }
+
+    /**
+     * Returns the altitude the terrain has been seen from.<br>
+     * The vertical angles of the points given to {@link #isVisible(float, int, float)} must be calculated from this same altitude.
+     * @return the observer altitude, in meters.
+     */
+    public float getObserverAltitude() {
+        return mObserverAltitude;
+    }
+
+    /**
+     * Returns the index of the azimuth bin containing the given azimuth.
+     * @param azimuth the azimuth in degrees, from 0° to 360°.
+     * @return the azimuth bin index.
+     */
+    public int getAzimuthBin(float azimuth) {
+        return Math.min((int) (azimuth * mAzimuthBinsNumber / 360), mAzimuthBinsNumber - 1);
+    }
+
+    /**
+     * Returns whether a point is visible from the location, or hidden behind closer terrain.
+     * @param azimuth the azimuth of the point, in degrees from 0° to 360°.
+     * @param distance the distance of the point, in meters.
+     * @param verticalAngle the vertical angle of the point, in degrees.
+     * @return <b>true</b> if no closer terrain is seen higher than the point.
+     */
+    public boolean isVisible(float azimuth, int distance, float verticalAngle) {
+        final int sample = Math.min((int) (distance / mSampleDistance) - IGNORED_SAMPLES_NUMBER, mSamplesNumber) - 1;
+        if (sample < 0) {
+            return true;
+        }
+        return verticalAngle >= mMaxVerticalAngles[getAzimuthBin(azimuth) * mSamplesNumber + sample];
+    }
+}
@@ -1,9 +1,8 @@
 package com.louisnard.mountainsfinderar.model.objects;
 
-import android.database.Cursor;
 import android.location.Location;
 
-import com.louisnard.mountainsfinderar.model.database.ARDbContract;
+import com.louisnard.mountainsfinderar.model.services.GeoMath;
 import com.louisnard.mountainsfinderar.model.services.PointService;
 
 /**
@@ -75,19 +74,17 @@ public class Point {
     }
 
     /**
-     * Constructs a new instance of {@link Point} from a {@link Cursor}.
-     * @param cursor the {@link Cursor} to read the data from.
+     * Constructs a new instance of {@link Point} from the values of a database row (see {@link com.louisnard.mountainsfinderar.model.database.ARDbHelper}).
+     * @param id the id.
+     * @param name the name.
+     * @param description the description.
+     * @param latitude the latitude in degrees.
+     * @param longitude the longitude in degrees.
+     * @param altitude the altitude in meters.
      */
-    public Point(Cursor cursor) {
-        if (cursor != null) {
-            mId = cursor.getLong((cursor.getColumnIndex(ARDbContract.PointsColumns._ID)));
-            mName = cursor.getString(cursor.getColumnIndex(ARDbContract.PointsColumns.COLUMN_NAME));
-            mDescription = cursor.getString(cursor.getColumnIndex(ARDbContract.PointsColumns.COLUMN_DESCRIPTION));
-            mLocation = new Location("");
-            mLocation.setLatitude(cursor.getDouble(cursor.getColumnIndex(ARDbContract.PointsColumns.COLUMN_LATITUDE)));
-            mLocation.setLongitude(cursor.getDouble(cursor.getColumnIndex(ARDbContract.PointsColumns.COLUMN_LONGITUDE)));
-            mLocation.setAltitude(cursor.getInt(cursor.getColumnIndex(ARDbContract.PointsColumns.COLUMN_ALTITUDE)));
-        }
+    public Point(long id, String name, String description, double latitude, double longitude, int altitude) {
+        this(name, description, latitude, longitude, altitude);
+        mId = id;
     }
 
     // Getters
@@ -221,7 +218,7 @@ public class Point {
     // Calculations
     /**
      * Returns the approximate distance in meters between this {@link Point} and the given {@link Point}.<br>
-     * Distance is defined using the WGS84 ellipsoid.
+     * Distance is defined using a spherical Earth (see {@link GeoMath#getHaversineDistance(double, double, double, double)}).
      * @param point the destination {@link Point}.
      * @return the distance (in meters).
      */
@@ -229,12 +226,12 @@ public class Point {
         if (mLocation == null || point.getLocation() == null) {
             return 0;
         }
-        return (int) mLocation.distanceTo(point.getLocation());
+        return (int) GeoMath.getHaversineDistance(getLatitude(), getLongitude(), point.getLatitude(), point.getLongitude());
     }
 
     /**
      * Returns the approximate distance in meters between this {@link Point} and the given {@link Location}.<br>
-     * Distance is defined using the WGS84 ellipsoid.
+     * Distance is defined using a spherical Earth (see {@link GeoMath#getHaversineDistance(double, double, double, double)}).
      * @param location the destination {@link Location}.
      * @return the distance (in meters).
      */
@@ -242,12 +239,12 @@ public class Point {
         if (mLocation == null || location == null) {
             return 0;
         }
-        return (int) mLocation.distanceTo(location);
+        return (int) GeoMath.getHaversineDistance(getLatitude(), getLongitude(), location.getLatitude(), location.getLongitude());
     }
 
     /**
      * Returns the approximate azimuth in degrees East of true North when traveling along the shortest path from this {@link Point} to the given {@link Point}.<br>
-     * The shortest path is defined using the WGS84 ellipsoid. Locations that are (nearly) antipodal may produce meaningless results.
+     * The shortest path is defined using a spherical Earth (see {@link GeoMath#getHaversineBearing(double, double, double, double)}). Locations that are (nearly) antipodal may produce meaningless results.
      * @param point the destination {@link Point}.
      * @return the azimuth to this point (in degrees), taken clockwise from north, from 0° to 360°.
      */
@@ -255,18 +252,16 @@ public class Point {
         if (mLocation == null || point.getLocation() == null) {
             return 0;
         }
-        float azimuth = getLocation().bearingTo(point.getLocation());
-        if (azimuth < 0 && azimuth >= -180) {
-            azimuth += 360;
-        }
-        return azimuth;
+        final float azimuth = (float) GeoMath.getHaversineBearing(getLatitude(), getLongitude(), point.getLatitude(), point.getLongitude());
+        // Azimuths just below 360° may be rounded up to 360° as floats
+        return azimuth < 360 ? azimuth : 0;
     }
 
     /**
-     * Returns the approximate vertical angle in degrees from this {@link Point} to the given {@link Point}.<br>
-     * If the destination point has the same altitude than this point, the angle will be 0°.<br>
-     * If the destination point is higher than this point, the angle will be positive: 0° < angle < 90°.<br>
-     * If the destination point is lower than this point, the angle will be negative: -90° < angle < 0°.<br>
+     * Returns the approximate apparent vertical angle in degrees from this {@link Point} to the given {@link Point}.<br>
+     * The Earth curvature and the standard atmospheric refraction are taken into account (see {@link PointService#getApparentVerticalAngle(float, float, float)}): distant points look lower than on a flat Earth.<br>
+     * If the destination point looks higher than this point, the angle will be positive: 0° < angle < 90°.<br>
+     * If the destination point looks lower than this point, the angle will be negative: -90° < angle < 0°.<br>
      * If the destination point has the same horizontal location (latitude and longitude) than this point, the angle will be 90° or -90°.
      * @param point the destination {@link Point}.
      * @return the vertical angle to this point (in degrees), from -90° to 90°.
@@ -277,14 +272,6 @@ public class Point {
         }
         final float distance = distanceTo(point);
         final float heightDifference = (float) (point.getLocation().getAltitude() - getLocation().getAltitude());
-        float angle;
-        if (distance == 0) {
-            angle = heightDifference >= 0 ? 90f : -90f;
-        } else {
-            angle = (float) Math.toDegrees(
-                    Math.atan(heightDifference / distance)
-            );
-        }
-        return angle;
+        return PointService.getApparentVerticalAngle(heightDifference, distance, PointService.REFRACTION_COEFFICIENT);
     }
 }
@@ -0,0 +1,172 @@
+package com.louisnard.mountainsfinderar.model.objects;
+
+import java.util.Arrays;
+
+/**
+ * Class that holds a set of points as parallel primitive arrays (struct-of-arrays layout) instead of a {@link java.util.List} of {@link Point} objects.<br>
+ * Each point is identified by its index in the store, from 0 to {@link #size()} - 1.<br>
+ * Names are not loaded with the coordinates: they are loaded lazily by index through a {@link NameLoader}, so that only the displayed points pay for their name.
+ *
+ * @author Alexandre Louisnard
+ */
+public class PointStore {
+
+    // Constants
+    // The default initial capacity of the store
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Attributes
+    private long[] mIds;
+    private double[] mLatitudes;
+    private double[] mLongitudes;
+    private int[] mAltitudes;
+    private String[] mNames;
+    private int mSize;
+
+    // Name loader
+    private final NameLoader mNameLoader;
+
+    /**
+     * Interface definition for loading the name of a point on demand.
+     */
+    public interface NameLoader {
+        /**
+         * Loads the name of the point with the given id.
+         * @param id the point id.
+         * @return the point name, or <b>null</b> if not found.
+         */
+        String loadName(long id);
+    }
+
+    // Constructors
+    /**
+     * Constructs a new instance of {@link PointStore}, empty, without any {@link NameLoader}.
+     */
+    public PointStore() {
+        this(DEFAULT_CAPACITY, null);
+    }
+
+    /**
+     * Constructs a new instance of {@link PointStore}, empty.
+     * @param capacity the initial capacity of the store. The store grows automatically if needed.
+     * @param nameLoader the {@link NameLoader} used to load the points names on demand, or <b>null</b> if all names are added along with the points.
+     */
+    public PointStore(int capacity, NameLoader nameLoader) {
+        capacity = Math.max(capacity, 1);
+        mIds = new long[capacity];
+        mLatitudes = new double[capacity];
+        mLongitudes = new double[capacity];
+        mAltitudes = new int[capacity];
+        mNames = new String[capacity];
+        mNameLoader = nameLoader;
+    }
+
+    /**
+     * Adds a point to this {@link PointStore}. Its name will be loaded lazily through the {@link NameLoader}.
+     * @param id the point id.
+     * @param latitude the latitude in degrees.
+     * @param longitude the longitude in degrees.
+     * @param altitude the altitude in meters.
+     * @return the index of the added point.
+     */
+    public int add(long id, double latitude, double longitude, int altitude) {
+        return add(id, latitude, longitude, altitude, null);
+    }
+
+    /**
+     * Adds a point to this {@link PointStore}.
+     * @param id the point id.
+     * @param latitude the latitude in degrees.
+     * @param longitude the longitude in degrees.
+     * @param altitude the altitude in meters.
+     * @param name the name, or <b>null</b> to load it lazily through the {@link NameLoader}.
+     * @return the index of the added point.
+     */
+    public int add(long id, double latitude, double longitude, int altitude, String name) {
+        if (mSize == mIds.length) {
+            grow();
+        }
+        mIds[mSize] = id;
+        mLatitudes[mSize] = latitude;
+        mLongitudes[mSize] = longitude;
+        mAltitudes[mSize] = altitude;
+        mNames[mSize] = name;
+        return mSize++;
+    }
+
+    // Double the capacity of the arrays
+    private void grow() {
+        final int capacity = mIds.length * 2;
+        mIds = Arrays.copyOf(mIds, capacity);
+        mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+        mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+        mAltitudes = Arrays.copyOf(mAltitudes, capacity);
+        mNames = Arrays.copyOf(mNames, capacity);
+    }
+
+    // Getters
+    /**
+     * Gets the number of points in this {@link PointStore}.
+     * @return the number of points.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Indicates whether this {@link PointStore} is empty or not.
+     * @return <b>true</b> if the store does not contain any point. <b>false</b> otherwise.
+     */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Gets the id of the point at the given index.
+     * @param index the point index.
+     * @return the id.
+     */
+    public long getId(int index) {
+        return mIds[index];
+    }
+
+    /**
+     * Gets the latitude of the point at the given index.
+     * @param index the point index.
+     * @return the latitude in degrees, comprised between -90° and 90°.
+     */
+    public double getLatitude(int index) {
+        return mLatitudes[index];
+    }
+
+    /**
+     * Gets the longitude of the point at the given index.
+     * @param index the point index.
+     * @return the longitude in degrees, comprised between -180° and 180°.
+     */
+    public double getLongitude(int index) {
+        return mLongitudes[index];
+    }
+
+    /**
+     * Gets the altitude of the point at the given index.
+     * @param index the point index.
+     * @return the altitude in meters.
+     */
+    public int getAltitude(int index) {
+        return mAltitudes[index];
+    }
+
+    /**
+     * Gets the name of the point at the given index, loading it through the {@link NameLoader} on first access.<br>
+     * The loading may query the database and writes the store: it must be done from the thread that owns the store, never while drawing (see {@link PointsSnapshot#getName(int)}).
+     * @param index the point index.
+     * @return the name, or <b>null</b> if it is unknown.
+     */
+    public String getName(int index) {
+        if (mNames[index] == null && mNameLoader != null) {
+            mNames[index] = mNameLoader.loadName(mIds[index]);
+        }
+        return mNames[index];
+    }
+}
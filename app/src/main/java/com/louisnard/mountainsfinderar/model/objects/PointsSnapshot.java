@@ -0,0 +1,122 @@
+package com.louisnard.mountainsfinderar.model.objects;
+
+/**
+ * Class that holds the points around a user location, with everything needed to display them, calculated for this location:<br>
+ * - The {@link PointStore} of the points.<br>
+ * - The {@link AzimuthIndex} of the points, as seen from the user location.<br>
+ * - The distance and vertical angle of each point from the user location, by point index.<br>
+ * - Whether each point is visible from the user location or hidden by the terrain, by point index.<br>
+ * - The name of each visible point, by point index: loaded on the background thread, so that drawing never loads a name through the {@link PointStore.NameLoader}.<br>
+ *
+ * Immutable once built: it is calculated on a background thread and published as a whole to the UI thread, which never sees a partially updated set of points.
+ *
+ * @author Alexandre Louisnard
+ */
+public class PointsSnapshot {
+
+    // Attributes
+    private final Point mUserPoint;
+    private final PointStore mPoints;
+    private final AzimuthIndex mPointsByAzimuth;
+    private final int[] mDistances;
+    private final float[] mVerticalAngles;
+    private final boolean[] mVisibilities;
+    private final String[] mNames;
+
+    /**
+     * Constructs a new instance of {@link PointsSnapshot}.<br>
+     * The given objects must not be modified afterwards.
+     * @param userPoint the user location {@link Point}.
+     * @param points the {@link PointStore} holding the points.
+     * @param pointsByAzimuth the {@link AzimuthIndex} of the indexes in {@param points} sorted by relative azimuth, as seen from {@param userPoint}.
+     * @param distances the distance (in meters) of each point from {@param userPoint}, by point index.
+     * @param verticalAngles the vertical angle (in degrees) of each point from {@param userPoint}, by point index.
+     * @param names the name of each point, by point index, already loaded.
+     */
+    public PointsSnapshot(Point userPoint, PointStore points, AzimuthIndex pointsByAzimuth, int[] distances, float[] verticalAngles, String[] names) {
+        this(userPoint, points, pointsByAzimuth, distances, verticalAngles, null, names);
+    }
+
+    /**
+     * Constructs a new instance of {@link PointsSnapshot}, with the visibility of the points.<br>
+     * The given objects must not be modified afterwards.
+     * @param userPoint the user location {@link Point}.
+     * @param points the {@link PointStore} holding the points.
+     * @param pointsByAzimuth the {@link AzimuthIndex} of the indexes in {@param points} sorted by relative azimuth, as seen from {@param userPoint}.
+     * @param distances the distance (in meters) of each point from {@param userPoint}, by point index.
+     * @param verticalAngles the vertical angle (in degrees) of each point from {@param userPoint}, by point index.
+     * @param visibilities whether each point is visible from {@param userPoint}, by point index, or <b>null</b> if all points are visible.
+     * @param names the name of each visible point, by point index, already loaded. The names of the hidden points may be <b>null</b>.
+     */
+    public PointsSnapshot(Point userPoint, PointStore points, AzimuthIndex pointsByAzimuth, int[] distances, float[] verticalAngles, boolean[] visibilities, String[] names) {
+        mUserPoint = userPoint;
+        mPoints = points;
+        mPointsByAzimuth = pointsByAzimuth;
+        mDistances = distances;
+        mVerticalAngles = verticalAngles;
+        mVisibilities = visibilities;
+        mNames = names;
+    }
+
+    // Getters
+    /**
+     * Gets the user location {@link Point} from which the points are seen.
+     * @return the user location {@link Point}.
+     */
+    public Point getUserPoint() {
+        return mUserPoint;
+    }
+
+    /**
+     * Gets the {@link PointStore} holding the points.
+     * @return the {@link PointStore}.
+     */
+    public PointStore getPoints() {
+        return mPoints;
+    }
+
+    /**
+     * Gets the {@link AzimuthIndex} of the points, as seen from the user location.
+     * @return the {@link AzimuthIndex}.
+     */
+    public AzimuthIndex getPointsByAzimuth() {
+        return mPointsByAzimuth;
+    }
+
+    /**
+     * Gets the distance of the point at the given index from the user location.
+     * @param index the point index in the {@link PointStore}.
+     * @return the distance in meters.
+     */
+    public int getDistance(int index) {
+        return mDistances[index];
+    }
+
+    /**
+     * Gets the vertical angle of the point at the given index from the user location.
+     * @param index the point index in the {@link PointStore}.
+     * @return the vertical angle in degrees, from -90° to 90°.
+     */
+    public float getVerticalAngle(int index) {
+        return mVerticalAngles[index];
+    }
+
+    /**
+     * Gets whether the point at the given index is visible from the user location, or hidden by the terrain.
+     * @param index the point index in the {@link PointStore}.
+     * @return <b>true</b> if the point is visible.
+     */
+    public boolean isVisible(int index) {
+        return mVisibilities == null || mVisibilities[index];
+    }
+
+    /**
+     * Gets the name of the point at the given index, loaded when the snapshot has been built.<br>
+     * Unlike {@link PointStore#getName(int)}, never loads the name: it can be called from any thread, while drawing.
+     * @param index the point index in the {@link PointStore}.
+     * @return the name, or <b>null</b> if it is unknown or if the point is hidden by the terrain.
+     */
+    public String getName(int index) {
+        return mNames[index];
+    }
+}
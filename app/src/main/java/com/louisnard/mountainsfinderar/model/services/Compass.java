@@ -6,12 +6,22 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.hardware.display.DisplayManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 import android.support.compat.BuildConfig;
 import android.util.Log;
-import android.view.Surface;
+import android.view.Choreographer;
+import android.view.Display;
 import android.view.WindowManager;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
 import static android.content.Context.SENSOR_SERVICE;
 
 
@@ -24,7 +34,18 @@ import static android.content.Context.SENSOR_SERVICE;
  *
  * This implementation takes into account the orientation (portrait / landscape) of the device and corrects the values accordingly.<br>
  *
- * Uses magnetic and accelerometer device sensors.<br>
+ * Uses the rotation vector device sensor, or else the magnetic, accelerometer and, if available, gyroscope device sensors fused by an {@link OrientationFilter}: see {@link #setOrientationFilter(OrientationFilter)}.<br>
+ *
+ * The calculations are delegated to an {@link OrientationCalculator}, which does not allocate any object per sensor event.<br>
+ *
+ * Two delivery modes are available:<br>
+ * - {@link #start(float, float, float)}: the {@link CompassListener} is notified from the sensor events, whenever the orientation has changed by more than the given sensibility.<br>
+ * - {@link #startFramePaced()}: the sensors are sampled at a higher rate on a background thread, and the {@link CompassListener} is notified exactly once per {@link Choreographer} frame
+ * with the orientation extrapolated to the expected display time of this frame by an {@link OrientationPredictor}, using the gyroscope if available, so as to cancel the sensor-to-photon latency.
+ * The prediction is enabled by default: {@link #setPredictionMaxHorizon(long)} with 0 disables it, and the average of the samples received since the previous frame is then delivered instead.
+ * In this mode, the sensor-to-photon latency before prediction is measured: see {@link #getSensorToPhotonLatencyNanos()}.<br>
+ *
+ * In both modes, the raw sensor events can be recorded to a sensor trace file, to be replayed off-device by a {@link SensorTraceReplayer}: see {@link #startRecording(File)}.<br>
  *
  * @author Alexandre Louisnard
  */
@@ -35,29 +56,48 @@ public class Compass implements SensorEventListener {
     private static final String TAG = Compass.class.getSimpleName();
 
     // Constants
-    private static final float ROTATION_VECTOR_SMOOTHING_FACTOR = 0.5f;
-    private static final float GEOMAGNETIC_SMOOTHING_FACTOR = 0.4f;
-    private static final float GRAVITY_SMOOTHING_FACTOR = 0.1f;
+    // The sensors sampling period in the frame-paced mode, in microseconds: several samples per frame at 60 frames per second
+    private static final int FRAME_PACED_SAMPLING_PERIOD_US = 5000;
+    // The maximum number of samples accumulated between two frames in the frame-paced mode: the oldest ones are dropped when frames are skipped
+    private static final int FRAME_PACED_BUFFER_CAPACITY = 32;
+    // The smoothing factor of the measured sensor-to-photon latency
+    private static final float LATENCY_SMOOTHING_FACTOR = 0.1f;
+    // The default maximum time the orientation is extrapolated by in the frame-paced mode, in nanoseconds
+    private static final long DEFAULT_PREDICTION_MAX_HORIZON_NANOS = 50000000;
 
-    // Context
-    private final Context mContext;
+    // Display
+    private final DisplayManager mDisplayManager;
+    private final Display mDisplay;
 
     // Sensors
     private final SensorManager mSensorManager;
     private final Sensor mRotationVectorSensor;
     private final Sensor mMagnetometerSensor;
     private final Sensor mAccelerometerSensor;
-    // RotationVectorSensor is more precise than Magnetic+Accelerometer, but on some devices it is not working
-    private boolean mUseRotationVectorSensor = false;
+    // Gyroscope, optional: used to predict the orientation in the frame-paced mode, and fused with the magnetic and accelerometer sensors when there is no rotation vector sensor
+    private final Sensor mGyroscopeSensor;
 
     // Orientation
     @SuppressWarnings("FieldCanBeLocal")
     private float mAzimuthDegrees;
     private float mPitchDegrees;
     private float mRollDegrees;
-    private float[] mRotationVector = new float[5];
-    private float[] mGeomagnetic = new float[3];
-    private float[] mGravity = new float[3];
+    private final OrientationCalculator mOrientationCalculator = new OrientationCalculator();
+
+    // Frame-paced mode: samples accumulated by the sensors thread, and consumed once per frame on the UI thread
+    private boolean mFramePaced;
+    private HandlerThread mSensorsThread;
+    private final OrientationRingBuffer mOrientationSamples = new OrientationRingBuffer(FRAME_PACED_BUFFER_CAPACITY);
+    private final float[] mFrameOrientation = new float[3];
+    // Prediction of the orientation at the display time of the frame
+    private final OrientationPredictor mOrientationPredictor = new OrientationPredictor(DEFAULT_PREDICTION_MAX_HORIZON_NANOS);
+    private final float[] mSensorRotationMatrix = new float[9];
+    private final float[] mFrameRotationMatrix = new float[9];
+    // The measured sensor-to-photon latency, smoothed, in nanoseconds
+    private long mSensorToPhotonLatencyNanos;
+
+    // Record mode: the raw sensor events are written to a sensor trace, or null when not recording
+    private SensorTraceWriter mSensorTraceWriter;
 
     // Listener
     private final CompassListener mCompassListener;
@@ -93,12 +133,19 @@ public class Compass implements SensorEventListener {
 
     // Private constructor
     private Compass(Context context, CompassListener compassListener) {
-        mContext = context;
+        // Display
+        mDisplayManager = (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+        mDisplay = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
+
         // Sensors
         mSensorManager = (SensorManager) context.getSystemService(SENSOR_SERVICE);
         mMagnetometerSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
         mAccelerometerSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
         mRotationVectorSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
+        mGyroscopeSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+        if (mGyroscopeSensor != null) {
+            mOrientationCalculator.setOrientationFilter(new KalmanOrientationFilter());
+        }
 
         // Listener
         mCompassListener = compassListener;
@@ -145,6 +192,12 @@ public class Compass implements SensorEventListener {
         mAzimuthSensibility = azimuthSensibility;
         mPitchSensibility = pitchSensibility;
         mRollSensibility = rollSensibility;
+        synchronized (this) {
+            mFramePaced = false;
+        }
+        // The screen rotation only changes with the device configuration: cache it instead of querying it for each sensor event
+        updateScreenRotation();
+        mDisplayManager.registerDisplayListener(mDisplayListener, null);
         if (mRotationVectorSensor != null) {
             mSensorManager.registerListener(this, mRotationVectorSensor, SensorManager.SENSOR_DELAY_NORMAL);
         }
@@ -154,6 +207,118 @@ public class Compass implements SensorEventListener {
         if (mAccelerometerSensor != null) {
             mSensorManager.registerListener(this, mAccelerometerSensor, SensorManager.SENSOR_DELAY_NORMAL);
         }
+        // The gyroscope fusion filters only integrate gyroscope intervals shorter than 100 ms: SENSOR_DELAY_NORMAL samples every 200 ms
+        if (mRotationVectorSensor == null && mGyroscopeSensor != null) {
+            mSensorManager.registerListener(this, mGyroscopeSensor, SensorManager.SENSOR_DELAY_GAME);
+        }
+    }
+
+    /**
+     * Starts the {@link Compass} in frame-paced mode: the sensors are sampled every {@link #FRAME_PACED_SAMPLING_PERIOD_US} on a background thread,
+     * and the {@link CompassListener} is notified on the UI thread exactly once per {@link Choreographer} frame in which samples have been received.<br>
+     * It is notified with the last orientation extrapolated to the expected display time of the frame, or with the average of the samples if the prediction is disabled by {@link #setPredictionMaxHorizon(long)} with 0.<br>
+     * Must be called in {@link Activity#onResume()}, from the UI thread. Does nothing if the {@link Compass} is already started in frame-paced mode.
+     */
+    public void startFramePaced() {
+        // Already started: a second sensors thread would never be quit
+        if (mSensorsThread != null) {
+            return;
+        }
+        mSensorToPhotonLatencyNanos = 0;
+        synchronized (this) {
+            mFramePaced = true;
+            mOrientationSamples.clear();
+            mOrientationPredictor.reset();
+        }
+        updateScreenRotation();
+        mDisplayManager.registerDisplayListener(mDisplayListener, null);
+        mSensorsThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_DISPLAY);
+        mSensorsThread.start();
+        final Handler sensorsHandler = new Handler(mSensorsThread.getLooper());
+        if (mRotationVectorSensor != null) {
+            mSensorManager.registerListener(this, mRotationVectorSensor, FRAME_PACED_SAMPLING_PERIOD_US, sensorsHandler);
+        }
+        if (mMagnetometerSensor != null) {
+            mSensorManager.registerListener(this, mMagnetometerSensor, FRAME_PACED_SAMPLING_PERIOD_US, sensorsHandler);
+        }
+        if (mAccelerometerSensor != null) {
+            mSensorManager.registerListener(this, mAccelerometerSensor, FRAME_PACED_SAMPLING_PERIOD_US, sensorsHandler);
+        }
+        if (mGyroscopeSensor != null) {
+            mSensorManager.registerListener(this, mGyroscopeSensor, FRAME_PACED_SAMPLING_PERIOD_US, sensorsHandler);
+        }
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    /**
+     * Sets the filter fusing the magnetic, accelerometer and gyroscope sensors values, used when the device has no rotation vector sensor.<br>
+     * Defaults to a {@link KalmanOrientationFilter} if the device has a gyroscope, or else to a {@link LowPassOrientationFilter}.
+     * @param orientationFilter the {@link OrientationFilter}.
+     */
+    public void setOrientationFilter(OrientationFilter orientationFilter) {
+        synchronized (this) {
+            mOrientationCalculator.setOrientationFilter(orientationFilter);
+        }
+    }
+
+    /**
+     * Sets the maximum time the orientation is extrapolated by in the frame-paced mode, to cancel the sensor-to-photon latency.<br>
+     * The orientation is extrapolated to the expected display time of each frame, but not further than this horizon: the longer it is, the more the orientation overshoots when the device stops moving.
+     * @param maxHorizonNanos the maximum horizon in nanoseconds. 0 disables the prediction: the average of the samples of each frame is delivered.
+     */
+    public void setPredictionMaxHorizon(long maxHorizonNanos) {
+        synchronized (this) {
+            mOrientationPredictor.setMaxHorizonNanos(maxHorizonNanos);
+        }
+    }
+
+    /**
+     * Gets the sensor-to-photon latency measured in frame-paced mode: the delay between the mean timestamp of the sensor samples received for a frame and the display of this frame, smoothed over the frames.<br>
+     * This is the latency before prediction: see {@link #setPredictionMaxHorizon(long)}.<br>
+     * Must be called from the UI thread.
+     * @return the latency in nanoseconds, or 0 if it has not been measured yet.
+     */
+    public long getSensorToPhotonLatencyNanos() {
+        return mSensorToPhotonLatencyNanos;
+    }
+
+    /**
+     * Starts recording the raw sensor events to a sensor trace file, read by {@link SensorTraceReader}, replacing it if it exists.<br>
+     * The events are recorded while the {@link Compass} is started, in both delivery modes, until {@link #stopRecording()} or {@link #stop()} is called.
+     * Recording is meant for debugging: the events are buffered, but the file is still written from the thread receiving the sensor events.
+     * @param file the sensor trace file to write.
+     * @throws IOException if the file cannot be created.
+     */
+    public void startRecording(File file) throws IOException {
+        final SensorTraceWriter sensorTraceWriter = new SensorTraceWriter(new FileOutputStream(file));
+        synchronized (this) {
+            closeSensorTrace();
+            mSensorTraceWriter = sensorTraceWriter;
+        }
+        if (BuildConfig.DEBUG) Log.d(TAG, "Recording the sensor events to " + file);
+    }
+
+    /**
+     * Stops recording the raw sensor events, and closes the sensor trace file. Does nothing if not recording.
+     */
+    public void stopRecording() {
+        synchronized (this) {
+            closeSensorTrace();
+        }
+    }
+
+    // Close the sensor trace, if recording. Must be called from a synchronized block
+    private void closeSensorTrace() {
+        if (mSensorTraceWriter == null) {
+            return;
+        }
+        if (BuildConfig.DEBUG) Log.d(TAG, "Sensor trace recorded: " + mSensorTraceWriter.size() + " bytes");
+        try {
+            mSensorTraceWriter.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        mSensorTraceWriter = null;
     }
 
     /**
@@ -173,79 +338,107 @@ public class Compass implements SensorEventListener {
         mPitchSensibility = 0;
         mRollSensibility = 0;
         mSensorManager.unregisterListener(this);
+        mDisplayManager.unregisterDisplayListener(mDisplayListener);
+        stopRecording();
+        // Frame-paced mode: the sensor events still queued on the sensors thread are only accumulated, and dropped on the next start
+        if (mSensorsThread != null) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mSensorsThread.quit();
+            mSensorsThread = null;
+        }
     }
 
+    // Frame callback of the frame-paced mode, called on the UI thread at the start of each frame
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            Choreographer.getInstance().postFrameCallback(this);
+            // The frame time is in the System.nanoTime() time base, the sensor events timestamps in the SystemClock.elapsedRealtimeNanos() one
+            // The frame drawn now is displayed at the next vsync
+            final long photonTimeNanos = frameTimeNanos + (SystemClock.elapsedRealtimeNanos() - System.nanoTime()) + (long) (1e9 / mDisplay.getRefreshRate());
+            final boolean hasSamples;
+            final long samplesTimestampNanos;
+            synchronized (Compass.this) {
+                hasSamples = mOrientationSamples.consume(mFrameOrientation);
+                samplesTimestampNanos = mOrientationSamples.getLastConsumedTimestampNanos();
+                // Replace the average of the samples by the last orientation extrapolated to the display time
+                if (hasSamples && mOrientationPredictor.getMaxHorizonNanos() > 0 && mOrientationPredictor.predict(photonTimeNanos, mFrameRotationMatrix)) {
+                    mOrientationCalculator.getOrientationDegrees(mFrameRotationMatrix, mFrameOrientation);
+                }
+            }
+            if (!hasSamples) {
+                return;
+            }
+            final long latencyNanos = photonTimeNanos - samplesTimestampNanos;
+            mSensorToPhotonLatencyNanos = mSensorToPhotonLatencyNanos == 0 ? latencyNanos : mSensorToPhotonLatencyNanos + (long) (LATENCY_SMOOTHING_FACTOR * (latencyNanos - mSensorToPhotonLatencyNanos));
+            mCompassListener.onOrientationChanged(mFrameOrientation[0], mFrameOrientation[1], mFrameOrientation[2]);
+        }
+    };
+
+    // Update the cached screen rotation
+    private void updateScreenRotation() {
+        synchronized (this) {
+            mOrientationCalculator.setScreenRotation(mDisplay.getRotation());
+        }
+    }
+
+    // DisplayListener notified when the screen rotation changes
+    private final DisplayManager.DisplayListener mDisplayListener = new DisplayManager.DisplayListener() {
+        @Override
+        public void onDisplayAdded(int displayId) {
+            // Nothing to do
+        }
+
+        @Override
+        public void onDisplayRemoved(int displayId) {
+            // Nothing to do
+        }
+
+        @Override
+        public void onDisplayChanged(int displayId) {
+            if (displayId == mDisplay.getDisplayId()) {
+                updateScreenRotation();
+            }
+        }
+    };
+
     // SensorEventListener
     @Override
     public void onSensorChanged(SensorEvent event) {
         synchronized (this) {
-            // Get the orientation array with Sensor.TYPE_ROTATION_VECTOR if possible (more precise), otherwise with Sensor.TYPE_MAGNETIC_FIELD and Sensor.TYPE_ACCELEROMETER combined
-            float orientation[] = new float[3];
-            if (event.sensor.getType() == Sensor.TYPE_ROTATION_VECTOR) {
-                // Only use rotation vector sensor if it is working on this device
-                if (!mUseRotationVectorSensor) {
-                    if (BuildConfig.DEBUG) Log.d(TAG, "Using Sensor.TYPE_ROTATION_VECTOR (more precise compass data)");
-                    mUseRotationVectorSensor = true;
+            final int sensorType = event.sensor.getType();
+            // Record mode
+            if (mSensorTraceWriter != null) {
+                try {
+                    mSensorTraceWriter.write(sensorType, event.timestamp, event.values);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    closeSensorTrace();
                 }
-                // Smooth values
-                mRotationVector = exponentialSmoothing(event.values, mRotationVector, ROTATION_VECTOR_SMOOTHING_FACTOR);
-                // Calculate the rotation matrix
-                float[] rotationMatrix = new float[9];
-                SensorManager.getRotationMatrixFromVector(rotationMatrix, event.values);
-                // Calculate the orientation
-                SensorManager.getOrientation(rotationMatrix, orientation);
-            } else if (!mUseRotationVectorSensor &&
-                    (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD || event.sensor.getType() == Sensor.TYPE_ACCELEROMETER)) {
-                if (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD) {
-                    mGeomagnetic = exponentialSmoothing(event.values, mGeomagnetic, GEOMAGNETIC_SMOOTHING_FACTOR);
-                }
-                if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-                    mGravity = exponentialSmoothing(event.values, mGravity, GRAVITY_SMOOTHING_FACTOR);
-                }
-                // Calculate the rotation and inclination matrix
-                float rotationMatrix[] = new float[9];
-                float inclinationMatrix[] = new float[9];
-                SensorManager.getRotationMatrix(rotationMatrix, inclinationMatrix, mGravity, mGeomagnetic);
-                // Calculate the orientation
-                SensorManager.getOrientation(rotationMatrix, orientation);
-            } else {
+            }
+            // The gyroscope also predicts the orientation, even when the rotation vector sensor is used
+            if (sensorType == Sensor.TYPE_GYROSCOPE) {
+                mOrientationPredictor.updateGyroscope(event.timestamp, event.values);
+            }
+            // Update the orientation with Sensor.TYPE_ROTATION_VECTOR if possible (more precise, but on some devices it is not working), otherwise with Sensor.TYPE_MAGNETIC_FIELD, Sensor.TYPE_ACCELEROMETER and Sensor.TYPE_GYROSCOPE fused by the OrientationFilter
+            if (BuildConfig.DEBUG && sensorType == Sensor.TYPE_ROTATION_VECTOR && !mOrientationCalculator.isUsingRotationVector()) {
+                Log.d(TAG, "Using Sensor.TYPE_ROTATION_VECTOR (more precise compass data)");
+            }
+            if (!mOrientationCalculator.updateSensor(sensorType, event.timestamp, event.values)) {
                 return;
             }
+            mAzimuthDegrees = mOrientationCalculator.getAzimuthDegrees();
+            mPitchDegrees = mOrientationCalculator.getPitchDegrees();
+            mRollDegrees = mOrientationCalculator.getRollDegrees();
 
-            // Calculate azimuth, pitch and roll values from the orientation[] array
-            // Correct values depending on the screen rotation
-            final int screenRotation = (((WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay()).getRotation();
-            mAzimuthDegrees = (float) Math.toDegrees(orientation[0]);
-            if (screenRotation == Surface.ROTATION_0) {
-                mPitchDegrees = (float) Math.toDegrees(orientation[1]);
-                mRollDegrees = (float) Math.toDegrees(orientation[2]);
-                if (mRollDegrees >= 90 || mRollDegrees <= -90) {
-                    mAzimuthDegrees += 180;
-                    mPitchDegrees = mPitchDegrees > 0 ? 180 - mPitchDegrees : -180 - mPitchDegrees;
-                    mRollDegrees = mRollDegrees > 0 ? 180 - mRollDegrees : -180 - mRollDegrees;
-                }
-            } else if (screenRotation == Surface.ROTATION_90) {
-                mAzimuthDegrees += 90;
-                mPitchDegrees = (float) Math.toDegrees(orientation[2]);
-                mRollDegrees = (float) -Math.toDegrees(orientation[1]);
-            } else if (screenRotation == Surface.ROTATION_180) {
-                mAzimuthDegrees += 180;
-                mPitchDegrees = (float) -Math.toDegrees(orientation[1]);
-                mRollDegrees = (float) -Math.toDegrees(orientation[2]);
-                if (mRollDegrees >= 90 || mRollDegrees <= -90) {
-                    mAzimuthDegrees += 180;
-                    mPitchDegrees = mPitchDegrees > 0 ? 180 - mPitchDegrees : -180 - mPitchDegrees;
-                    mRollDegrees = mRollDegrees > 0 ? 180 - mRollDegrees : -180 - mRollDegrees;
-                }
-            } else if (screenRotation == Surface.ROTATION_270) {
-                mAzimuthDegrees += 270;
-                mPitchDegrees = (float) -Math.toDegrees(orientation[2]);
-                mRollDegrees = (float) Math.toDegrees(orientation[1]);
+            // Frame-paced mode: the compass listener is notified from the frame callback
+            if (mFramePaced) {
+                mOrientationSamples.add(event.timestamp, mAzimuthDegrees, mPitchDegrees, mRollDegrees);
+                mOrientationCalculator.copyRotationMatrix(mSensorRotationMatrix);
+                mOrientationPredictor.updateRotation(event.timestamp, mSensorRotationMatrix);
+                return;
             }
 
-            // Force azimuth value between 0° and 360°.
-            mAzimuthDegrees = (mAzimuthDegrees + 360) % 360;
-
             // Notify the compass listener if needed
             if (Math.abs(mAzimuthDegrees - mLastAzimuthDegrees) >= mAzimuthSensibility
                     || Math.abs(mPitchDegrees - mLastPitchDegrees) >= mPitchSensibility
@@ -263,23 +456,4 @@ public class Compass implements SensorEventListener {
     @Override
     public void onAccuracyChanged(Sensor sensor, int accuracy) {
         // Nothing to do
-    }
-
-    /**
-     * Exponential smoothing of data series, acting as a low-pass filter in order to remove high-frequency noise.
-     * @param newValue the new data set.
-     * @param lastValue the last data set.
-     * @param alpha the smoothing factor. 0 < alpha < 1. If alpha = 0, the data will never change (lastValue = newValue). If alpha = 1, no smoothing at all will be applied (lastValue = newValue).
-     * @return output the new data entry, smoothened.
-     */
-    private float[] exponentialSmoothing(float[] newValue, float[] lastValue, float alpha) {
-        float[] output = new float[newValue.length];
-        if (lastValue == null) {
-            return newValue;
-        }
-        for (int i=0; i<newValue.length; i++) {
-            output[i] = lastValue[i] + alpha * (newValue[i] - lastValue[i]);
-        }
-        return output;
-    }
-}
+    }}
@@ -0,0 +1,25 @@
+package com.louisnard.mountainsfinderar.model.services;
+
+/**
+ * {@link OrientationFilter} integrating the gyroscope, and correcting its drift towards the gravity and geomagnetic rotation with a fixed time constant.<br>
+ *
+ * The gyroscope follows the fast movements without lag, the accelerometer and the magnetometer only contribute to the slow ones: their noise is filtered out.<br>
+ * The correction gain depends on the time between two corrections, not on the number of sensor events: the filter behaves the same whatever the sensors rate.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class ComplementaryOrientationFilter extends GyroscopeFusionFilter {
+
+    // Constants
+    // The time constant of the correction towards the measured rotation when the gyroscope is active, in nanoseconds
+    private static final long GYROSCOPE_TIME_CONSTANT_NANOS = 1000000000;
+    // The time constant of the correction towards the measured rotation without gyroscope, in nanoseconds: the filter only smooths the measured rotation
+    private static final long NO_GYROSCOPE_TIME_CONSTANT_NANOS = 100000000;
+
+    @Override
+    float getCorrectionGain(long intervalNanos, boolean gyroscopeActive) {
+        final long timeConstantNanos = gyroscopeActive ? GYROSCOPE_TIME_CONSTANT_NANOS : NO_GYROSCOPE_TIME_CONSTANT_NANOS;
+        return (float) intervalNanos / (timeConstantNanos + intervalNanos);
+    }
+}
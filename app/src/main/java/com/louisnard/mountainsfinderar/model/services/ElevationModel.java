@@ -0,0 +1,176 @@
+package com.louisnard.mountainsfinderar.model.services;
+
+import android.util.Log;
+
+import com.louisnard.mountainsfinderar.BuildConfig;
+import com.louisnard.mountainsfinderar.model.objects.BoundingBox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Class that gives the terrain elevation at any location, from the SRTM digital elevation model tiles (.hgt files) found in a directory.<br>
+ *
+ * Each tile covers 1° of latitude and longitude, and is named after its south-west corner, for instance N45E005.hgt.<br>
+ * It holds big-endian signed 16-bit elevations in meters, on a square grid of 1201 (3 arc-seconds) or 3601 (1 arc-second) samples per side, from the north-west corner row by row.<br>
+ * The tiles are memory-mapped instead of being read into the heap: only the pages of the samples actually read are loaded by the system.<br>
+ *
+ * The tiles are loaded by {@link #loadTilesAround(double, double, int)}, which must not be called concurrently with {@link #getElevation(double, double)}.<br>
+ * Once loaded, {@link #getElevation(double, double)} can be called from many threads at a time.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class ElevationModel {
+
+    // Tag
+    private static final String TAG = ElevationModel.class.getSimpleName();
+
+    // Constants
+    // The elevation of the samples without data in SRTM tiles
+    private static final short VOID_ELEVATION = -32768;
+
+    // The directory containing the .hgt files
+    private final File mDirectory;
+
+    // Loaded tiles by tile key: the missing tiles are held as null values, so that they are only looked up once
+    private Map<Integer, Tile> mTiles = new HashMap<>();
+
+    /**
+     * A memory-mapped tile of elevation samples.
+     */
+    private static class Tile {
+        private final ShortBuffer mSamples;
+        private final int mSamplesPerSide;
+
+        private Tile(ShortBuffer samples, int samplesPerSide) {
+            mSamples = samples;
+            mSamplesPerSide = samplesPerSide;
+        }
+    }
+
+    /**
+     * Constructs a new instance of {@link ElevationModel}.
+     * @param directory the directory containing the SRTM .hgt files.
+     */
+    public ElevationModel(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Loads the tiles covering the circle of radius {@param distance} centered on the given coordinates, and unloads the other ones.
+     * @param latitude the latitude of the center in degrees.
+     * @param longitude the longitude of the center in degrees.
+     * @param distance the radius of the area (in meters).
+     */
+    public void loadTilesAround(double latitude, double longitude, int distance) {
+        final Map<Integer, Tile> tiles = new HashMap<>();
+        for (BoundingBox boundingBox : PointService.getBoundingBoxes(latitude, longitude, distance)) {
+            final int longitudeMax = Math.min((int) Math.floor(boundingBox.getLongitudeMax()), 179);
+            final int latitudeMax = Math.min((int) Math.floor(boundingBox.getLatitudeMax()), 89);
+            for (int tileLatitude = (int) Math.floor(boundingBox.getLatitudeMin()); tileLatitude <= latitudeMax; tileLatitude++) {
+                for (int tileLongitude = (int) Math.floor(boundingBox.getLongitudeMin()); tileLongitude <= longitudeMax; tileLongitude++) {
+                    final int tileKey = getTileKey(tileLatitude, tileLongitude);
+                    if (mTiles.containsKey(tileKey)) {
+                        tiles.put(tileKey, mTiles.get(tileKey));
+                    } else if (!tiles.containsKey(tileKey)) {
+                        tiles.put(tileKey, loadTile(tileLatitude, tileLongitude));
+                    }
+                }
+            }
+        }
+        mTiles = tiles;
+    }
+
+    /**
+     * Returns whether at least one of the loaded tiles is available.
+     * @return <b>true</b> if elevations are available around the last location given to {@link #loadTilesAround(double, double, int)}.
+     */
+    public boolean hasTiles() {
+        for (Tile tile : mTiles.values()) {
+            if (tile != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the terrain elevation at the given coordinates, interpolated between the 4 surrounding samples.
+     * @param latitude the latitude in degrees.
+     * @param longitude the longitude in degrees.
+     * @return the elevation in meters, or {@link Float#NaN} if the tile is not loaded or has no data at these coordinates.
+     */
+    public float getElevation(double latitude, double longitude) {
+        final int tileLatitude = (int) Math.floor(latitude);
+        final int tileLongitude = (int) Math.floor(longitude);
+        final Tile tile = mTiles.get(getTileKey(tileLatitude, tileLongitude));
+        if (tile == null) {
+            return Float.NaN;
+        }
+        // Position in the grid, from the north-west corner
+        final int intervals = tile.mSamplesPerSide - 1;
+        final double row = (tileLatitude + 1 - latitude) * intervals;
+        final double column = (longitude - tileLongitude) * intervals;
+        final int row0 = Math.min((int) row, intervals - 1);
+        final int column0 = Math.min((int) column, intervals - 1);
+        final int index = row0 * tile.mSamplesPerSide + column0;
+        final short northWest = tile.mSamples.get(index);
+        final short northEast = tile.mSamples.get(index + 1);
+        final short southWest = tile.mSamples.get(index + tile.mSamplesPerSide);
+        final short southEast = tile.mSamples.get(index + tile.mSamplesPerSide + 1);
+        if (northWest == VOID_ELEVATION || northEast == VOID_ELEVATION || southWest == VOID_ELEVATION || southEast == VOID_ELEVATION) {
+            return Float.NaN;
+        }
+        final float rowFraction = (float) (row - row0);
+        final float columnFraction = (float) (column - column0);
+        final float north = northWest + (northEast - northWest) * columnFraction;
+        final float south = southWest + (southEast - southWest) * columnFraction;
+        return north + (south - north) * rowFraction;
+    }
+
+    // Returns the key of the tile whose south-west corner is at the given integer coordinates
+    private static int getTileKey(int tileLatitude, int tileLongitude) {
+        return (tileLatitude + 90) * 360 + tileLongitude + 180;
+    }
+
+    // Memory-maps the tile whose south-west corner is at the given integer coordinates, or returns null if it is not available
+    private Tile loadTile(int tileLatitude, int tileLongitude) {
+        final String fileName = String.format(Locale.US, "%s%02d%s%03d.hgt", tileLatitude >= 0 ? "N" : "S", Math.abs(tileLatitude), tileLongitude >= 0 ? "E" : "W", Math.abs(tileLongitude));
+        final File file = new File(mDirectory, fileName);
+        if (!file.isFile()) {
+            return null;
+        }
+        final int samplesPerSide = (int) Math.round(Math.sqrt(file.length() / 2));
+        if (samplesPerSide < 2 || (long) samplesPerSide * samplesPerSide * 2 != file.length()) {
+            if (BuildConfig.DEBUG) Log.d(TAG, "Invalid elevation tile size: " + fileName);
+            return null;
+        }
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            // The mapping stays valid once the file is closed
+            final ShortBuffer samples = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length()).order(ByteOrder.BIG_ENDIAN).asShortBuffer();
+            if (BuildConfig.DEBUG) Log.d(TAG, "Elevation tile loaded: " + fileName);
+            return new Tile(samples, samplesPerSide);
+        } catch (IOException e) {
+            if (BuildConfig.DEBUG) Log.d(TAG, "Error loading the elevation tile: " + fileName, e);
+            return null;
+        } finally {
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    // Nothing to do
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.louisnard.mountainsfinderar.model.services;
+
+/**
+ * Base {@link OrientationFilter} fusing the gyroscope with the accelerometer and the magnetometer.<br>
+ *
+ * The rotation is held as a unit quaternion (see {@link Quaternions}):<br>
+ * - Each gyroscope event rotates it by the angular velocity integrated since the previous event: fast and smooth, but drifting.<br>
+ * - Each accelerometer or magnetometer event pulls it towards the rotation measured from the gravity and geomagnetic vectors, by a spherical interpolation: absolute, but noisy.<br>
+ * The subclasses choose the gain of this correction.<br>
+ *
+ * Without gyroscope events, the correction alone acts as a low-pass filter on the measured rotation.
+ *
+ * @author Alexandre Louisnard
+ */
+
+abstract class GyroscopeFusionFilter implements OrientationFilter {
+
+    // Constants
+    // Above this interval between two gyroscope events, in nanoseconds, the rotation is not integrated over it: the sensor has been paused
+    private static final long MAX_GYROSCOPE_INTERVAL_NANOS = 100000000;
+    // The maximum age of the last gyroscope event for the rotation to be considered as integrated from the gyroscope, in nanoseconds
+    private static final long GYROSCOPE_TIMEOUT_NANOS = 100000000;
+
+    // Raw sensors values
+    final float[] mGravity = new float[3];
+    final float[] mGeomagnetic = new float[3];
+    private boolean mHasGravity;
+    private boolean mHasGeomagnetic;
+
+    // Rotation
+    private final float[] mRotation = new float[4];
+    private boolean mHasRotation;
+    private long mCorrectionTimestampNanos;
+    private long mGyroscopeTimestampNanos;
+    private boolean mHasGyroscope;
+
+    // Scratch buffers
+    private final float[] mMeasuredRotationMatrix = new float[9];
+    private final float[] mMeasuredRotation = new float[4];
+    private final float[] mDeltaRotation = new float[4];
+
+    /**
+     * Returns the gain of the correction of the rotation towards the measured rotation, and updates the filter state accordingly.
+     * @param intervalNanos the time since the previous correction, in nanoseconds.
+     * @param gyroscopeActive <b>true</b> if the rotation has been integrated from the gyroscope since the previous correction.
+     * @return the gain, from 0 (the measure is ignored) to 1 (the rotation is replaced by the measure).
+     */
+    abstract float getCorrectionGain(long intervalNanos, boolean gyroscopeActive);
+
+    /**
+     * Called when the rotation has been integrated from the gyroscope.
+     * @param intervalNanos the integration time, in nanoseconds.
+     */
+    void onGyroscopeIntegrated(long intervalNanos) {
+        // Nothing to do by default
+    }
+
+    /**
+     * Called when the filter is reset, to reset the subclass state.
+     */
+    void onReset() {
+        // Nothing to do by default
+    }
+
+    @Override
+    public final void reset() {
+        mHasGravity = false;
+        mHasGeomagnetic = false;
+        mHasRotation = false;
+        mHasGyroscope = false;
+        onReset();
+    }
+
+    @Override
+    public void updateGyroscope(long timestampNanos, float[] values) {
+        final long intervalNanos = timestampNanos - mGyroscopeTimestampNanos;
+        if (mHasRotation && mHasGyroscope && intervalNanos > 0 && intervalNanos <= MAX_GYROSCOPE_INTERVAL_NANOS) {
+            Quaternions.integrate(mRotation, values, intervalNanos * 1e-9, mRotation, mDeltaRotation);
+            onGyroscopeIntegrated(intervalNanos);
+        }
+        mGyroscopeTimestampNanos = timestampNanos;
+        mHasGyroscope = true;
+    }
+
+    @Override
+    public void updateGravity(long timestampNanos, float[] values) {
+        System.arraycopy(values, 0, mGravity, 0, 3);
+        mHasGravity = true;
+        correct(timestampNanos);
+    }
+
+    @Override
+    public void updateGeomagnetic(long timestampNanos, float[] values) {
+        System.arraycopy(values, 0, mGeomagnetic, 0, 3);
+        mHasGeomagnetic = true;
+        correct(timestampNanos);
+    }
+
+    @Override
+    public boolean getRotationMatrix(float[] r) {
+        if (mHasRotation) {
+            OrientationCalculator.getRotationMatrixFromVector(r, mRotation);
+        }
+        return mHasRotation;
+    }
+
+    // Pull the rotation towards the rotation measured from the last gravity and geomagnetic vectors
+    private void correct(long timestampNanos) {
+        if (!mHasGravity || !mHasGeomagnetic || !OrientationCalculator.getRotationMatrix(mMeasuredRotationMatrix, mGravity, mGeomagnetic)) {
+            return;
+        }
+        Quaternions.fromRotationMatrix(mMeasuredRotationMatrix, mMeasuredRotation);
+        if (!mHasRotation) {
+            System.arraycopy(mMeasuredRotation, 0, mRotation, 0, 4);
+            mHasRotation = true;
+            mCorrectionTimestampNanos = timestampNanos;
+            return;
+        }
+        final long intervalNanos = Math.max(0, timestampNanos - mCorrectionTimestampNanos);
+        mCorrectionTimestampNanos = timestampNanos;
+        final boolean gyroscopeActive = mHasGyroscope && timestampNanos - mGyroscopeTimestampNanos < GYROSCOPE_TIMEOUT_NANOS;
+        Quaternions.slerp(mRotation, mMeasuredRotation, getCorrectionGain(intervalNanos, gyroscopeActive), mRotation);
+    }
+}
@@ -0,0 +1,164 @@
+package com.louisnard.mountainsfinderar.model.services;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.louisnard.mountainsfinderar.BuildConfig;
+import com.louisnard.mountainsfinderar.model.objects.HorizonProfile;
+import com.louisnard.mountainsfinderar.model.objects.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Class that calculates the {@link HorizonProfile} around the user location from an {@link ElevationModel}.<br>
+ *
+ * The terrain is sampled along one line of sight per azimuth bin, every {@link #SAMPLE_DISTANCE} meters, and its apparent vertical angles are calculated as for the points (see {@link PointService#getApparentVerticalAngle(float, float, float)}).<br>
+ * The azimuth bins are independent from each other: they are spread over a pool of background threads.<br>
+ *
+ * {@link #calculateHorizonProfile(Point, int)} must always be called from the same thread, and {@link #shutdown()} once the {@link HorizonCalculator} is not needed anymore.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class HorizonCalculator {
+
+    // Tag
+    private static final String TAG = HorizonCalculator.class.getSimpleName();
+
+    // Constants
+    // The number of azimuth bins of the horizon profile: 0.5° each
+    public static final int AZIMUTH_BINS_NUMBER = 720;
+    // The distance between two consecutive terrain samples, in meters: the resolution of the 3 arc-seconds SRTM tiles
+    private static final float SAMPLE_DISTANCE = 90;
+    // The height of the user eyes above the ground, in meters
+    private static final float EYE_HEIGHT = 1.7f;
+    // The number of tasks per thread the azimuth bins are split into, so that the threads finish at around the same time
+    private static final int TASKS_PER_THREAD = 4;
+
+    // Elevation model
+    private final ElevationModel mElevationModel;
+
+    // Threads
+    private final int mThreadsNumber;
+    private final ExecutorService mExecutor;
+
+    /**
+     * Constructs a new instance of {@link HorizonCalculator}, with one background thread per available processor.
+     * @param elevationModel the {@link ElevationModel} to read the terrain elevations from.
+     */
+    public HorizonCalculator(ElevationModel elevationModel) {
+        mElevationModel = elevationModel;
+        mThreadsNumber = Runtime.getRuntime().availableProcessors();
+        mExecutor = Executors.newFixedThreadPool(mThreadsNumber, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Calculates the {@link HorizonProfile} around the given user location, up to the given distance.<br>
+     * Blocks until the calculation is complete.
+     * @param userPoint the user location {@link Point}.
+     * @param distance the distance up to which the terrain is sampled, in meters.
+     * @return the {@link HorizonProfile}, or <b>null</b> if no terrain elevation is available around the user location.
+     * @throws InterruptedException if the calling thread has been interrupted while waiting for the calculation.
+     */
+    public HorizonProfile calculateHorizonProfile(Point userPoint, int distance) throws InterruptedException {
+        return calculateHorizonProfile(userPoint.getLatitude(), userPoint.getLongitude(), userPoint.getAltitude(), distance);
+    }
+
+    /**
+     * Calculates the {@link HorizonProfile} around the given user coordinates, up to the given distance.<br>
+     * Blocks until the calculation is complete.
+     * @param latitude the user latitude in degrees.
+     * @param longitude the user longitude in degrees.
+     * @param altitude the user altitude in meters, only used if the terrain elevation is not available at the user location.
+     * @param distance the distance up to which the terrain is sampled, in meters.
+     * @return the {@link HorizonProfile}, seen from the ground elevation plus the eye height if available, otherwise from the given altitude (see {@link HorizonProfile#getObserverAltitude()}),
+     * or <b>null</b> if no terrain elevation is available around the user location.
+     * @throws InterruptedException if the calling thread has been interrupted while waiting for the calculation.
+     */
+    public HorizonProfile calculateHorizonProfile(final double latitude, final double longitude, float altitude, int distance) throws InterruptedException {
+        mElevationModel.loadTilesAround(latitude, longitude, distance);
+        if (!mElevationModel.hasTiles()) {
+            if (BuildConfig.DEBUG) Log.d(TAG, "No elevation tile around the user location");
+            return null;
+        }
+
+        // The user is standing on the ground when possible: the altitude given by the location provider is much less accurate
+        final float groundElevation = mElevationModel.getElevation(latitude, longitude);
+        final float userAltitude = Float.isNaN(groundElevation) ? altitude : groundElevation + EYE_HEIGHT;
+
+        // Calculate the azimuth bins in parallel
+        final int samplesNumber = (int) (distance / SAMPLE_DISTANCE);
+        final float[] maxVerticalAngles = new float[AZIMUTH_BINS_NUMBER * samplesNumber];
+        final int tasksNumber = mThreadsNumber * TASKS_PER_THREAD;
+        final List<Callable<Void>> tasks = new ArrayList<>(tasksNumber);
+        for (int task = 0; task < tasksNumber; task++) {
+            final int binFrom = task * AZIMUTH_BINS_NUMBER / tasksNumber;
+            final int binTo = (task + 1) * AZIMUTH_BINS_NUMBER / tasksNumber;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    calculateAzimuthBins(latitude, longitude, userAltitude, samplesNumber, binFrom, binTo, maxVerticalAngles);
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> future : mExecutor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        return new HorizonProfile(AZIMUTH_BINS_NUMBER, samplesNumber, SAMPLE_DISTANCE, maxVerticalAngles, userAltitude);
+    }
+
+    /**
+     * Stops the background threads.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    // Samples the terrain along the azimuth bins from binFrom (included) to binTo (excluded), and writes the highest vertical angle up to each sample
+    private void calculateAzimuthBins(double latitude, double longitude, float userAltitude, int samplesNumber, int binFrom, int binTo, float[] maxVerticalAngles) {
+        final double metersPerDegreeOfLatitude = PointService.degreesToMeters(1);
+        final double metersPerDegreeOfLongitude = metersPerDegreeOfLatitude * Math.cos(Math.toRadians(latitude));
+        final double earthCurvature = PointService.getApparentEarthCurvature(PointService.REFRACTION_COEFFICIENT);
+        for (int bin = binFrom; bin < binTo; bin++) {
+            // Line of sight at the center of the bin
+            final double azimuth = Math.toRadians((bin + 0.5) * 360 / AZIMUTH_BINS_NUMBER);
+            final double latitudeStep = SAMPLE_DISTANCE * Math.cos(azimuth) / metersPerDegreeOfLatitude;
+            final double longitudeStep = SAMPLE_DISTANCE * Math.sin(azimuth) / metersPerDegreeOfLongitude;
+            float maxVerticalAngle = -90;
+            for (int sample = 0; sample < samplesNumber; sample++) {
+                final double sampleLatitude = latitude + (sample + 1) * latitudeStep;
+                final double sampleLongitude = PointService.getValidLongitude(longitude + (sample + 1) * longitudeStep);
+                final float elevation = mElevationModel.getElevation(sampleLatitude, sampleLongitude);
+                if (!Float.isNaN(elevation)) {
+                    maxVerticalAngle = Math.max(maxVerticalAngle, PointService.getApparentVerticalAngle(elevation - userAltitude, (sample + 1) * SAMPLE_DISTANCE, earthCurvature));
+                }
+                maxVerticalAngles[bin * samplesNumber + sample] = maxVerticalAngle;
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.louisnard.mountainsfinderar.model.services;
+
+import android.hardware.SensorManager;
+
+/**
+ * {@link OrientationFilter} integrating the gyroscope, and correcting it towards the gravity and geomagnetic rotation with the gain of a lightweight Kalman filter.<br>
+ *
+ * The uncertainty of the rotation is modelled as a single variance, in rad², the same around all axes:<br>
+ * - It grows with time: slowly when the rotation is integrated from the gyroscope, faster without it since the movements are then unknown.<br>
+ * - The measured rotation has its own variance, increased when the accelerometer measures more than the gravity (the device is shaken)
+ * or when the magnetic field norm deviates from its average (a magnetic disturbance): such measures are then mostly ignored.<br>
+ * - Each correction uses the Kalman gain K = P / (P + R), and reduces the rotation variance P accordingly.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class KalmanOrientationFilter extends GyroscopeFusionFilter {
+
+    // Constants
+    // The growth rate of the rotation variance when it is integrated from the gyroscope, in rad²/s
+    private static final double GYROSCOPE_PROCESS_NOISE = 1e-4;
+    // The growth rate of the rotation variance without gyroscope, in rad²/s
+    private static final double NO_GYROSCOPE_PROCESS_NOISE = 1e-2;
+    // The variance of the rotation measured from the gravity and geomagnetic vectors, in rad²: about 2° of standard deviation
+    private static final double MEASUREMENT_NOISE = 1.2e-3;
+    // The deviation of the acceleration norm from the gravity, in m/s², and of the magnetic field norm from its average, in µT, that doubles the measurement variance
+    private static final float ACCELERATION_TOLERANCE = 0.5f;
+    private static final float MAGNETIC_DISTURBANCE_TOLERANCE = 5f;
+    // The smoothing factor of the magnetic field norm average
+    private static final float MAGNETIC_NORM_SMOOTHING_FACTOR = 0.01f;
+
+    // Variance of the rotation, in rad²
+    private double mVariance = MEASUREMENT_NOISE;
+    // Average of the magnetic field norm, in µT, or 0 if not known yet
+    private float mMagneticNorm;
+
+    @Override
+    void onReset() {
+        mVariance = MEASUREMENT_NOISE;
+        mMagneticNorm = 0;
+    }
+
+    @Override
+    void onGyroscopeIntegrated(long intervalNanos) {
+        mVariance += GYROSCOPE_PROCESS_NOISE * intervalNanos * 1e-9;
+    }
+
+    @Override
+    float getCorrectionGain(long intervalNanos, boolean gyroscopeActive) {
+        // Prediction: without gyroscope, the rotation may have changed in any way since the last correction
+        if (!gyroscopeActive) {
+            mVariance += NO_GYROSCOPE_PROCESS_NOISE * intervalNanos * 1e-9;
+        }
+
+        // Measurement variance
+        final float accelerationDeviation = (getNorm(mGravity) - SensorManager.GRAVITY_EARTH) / ACCELERATION_TOLERANCE;
+        final float magneticNorm = getNorm(mGeomagnetic);
+        mMagneticNorm = mMagneticNorm == 0 ? magneticNorm : mMagneticNorm + MAGNETIC_NORM_SMOOTHING_FACTOR * (magneticNorm - mMagneticNorm);
+        final float magneticDeviation = (magneticNorm - mMagneticNorm) / MAGNETIC_DISTURBANCE_TOLERANCE;
+        final double measurementVariance = MEASUREMENT_NOISE * (1 + accelerationDeviation * accelerationDeviation) * (1 + magneticDeviation * magneticDeviation);
+
+        // Update
+        final double gain = mVariance / (mVariance + measurementVariance);
+        mVariance *= 1 - gain;
+        return (float) gain;
+    }
+
+    // Returns the norm of a 3 dimensions vector
+    private static float getNorm(float[] v) {
+        return (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+    }
+}
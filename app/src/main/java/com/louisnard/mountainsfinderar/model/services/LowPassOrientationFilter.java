@@ -0,0 +1,80 @@
+package com.louisnard.mountainsfinderar.model.services;
+
+/**
+ * {@link OrientationFilter} smoothing the gravity and geomagnetic vectors with an exponential smoothing, acting as a low-pass filter in order to remove high-frequency noise.<br>
+ *
+ * The gyroscope is not used: the smoothing factors are fixed, and applied per sensor event, so the lag depends on the sensors rate.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class LowPassOrientationFilter implements OrientationFilter {
+
+    // Constants
+    private static final float GEOMAGNETIC_SMOOTHING_FACTOR = 0.4f;
+    private static final float GRAVITY_SMOOTHING_FACTOR = 0.1f;
+
+    // Smoothed sensors values
+    private final float[] mGeomagnetic = new float[3];
+    private final float[] mGravity = new float[3];
+
+    // Rotation calculated from the smoothed values
+    private final float[] mRotationMatrix = new float[9];
+    private boolean mHasRotation;
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < 3; i++) {
+            mGeomagnetic[i] = 0;
+            mGravity[i] = 0;
+        }
+        mHasRotation = false;
+    }
+
+    @Override
+    public void updateGyroscope(long timestampNanos, float[] values) {
+        // Not used
+    }
+
+    @Override
+    public void updateGravity(long timestampNanos, float[] values) {
+        exponentialSmoothing(values, mGravity, GRAVITY_SMOOTHING_FACTOR);
+        updateRotation();
+    }
+
+    @Override
+    public void updateGeomagnetic(long timestampNanos, float[] values) {
+        exponentialSmoothing(values, mGeomagnetic, GEOMAGNETIC_SMOOTHING_FACTOR);
+        updateRotation();
+    }
+
+    @Override
+    public boolean getRotationMatrix(float[] r) {
+        if (mHasRotation) {
+            System.arraycopy(mRotationMatrix, 0, r, 0, 9);
+        }
+        return mHasRotation;
+    }
+
+    // Calculate the rotation matrix from the smoothed gravity and geomagnetic values
+    private void updateRotation() {
+        // When the rotation matrix cannot be calculated, the last one is kept
+        if (OrientationCalculator.getRotationMatrix(mRotationMatrix, mGravity, mGeomagnetic)) {
+            mHasRotation = true;
+        }
+    }
+
+    /**
+     * Exponential smoothing of data series, acting as a low-pass filter in order to remove high-frequency noise.<br>
+     * The smoothed values are updated in place.
+     * @param newValue the new data set.
+     * @param lastValue the last data set, updated with the new data entry, smoothened.
+     * @param alpha the smoothing factor. 0 < alpha < 1. If alpha = 0, the data will never change (lastValue = newValue). If alpha = 1, no smoothing at all will be applied (lastValue = newValue).
+     */
+    private static void exponentialSmoothing(float[] newValue, float[] lastValue, float alpha) {
+        final int length = Math.min(newValue.length, lastValue.length);
+        for (int i = 0; i < length; i++) {
+            lastValue[i] += alpha * (newValue[i] - lastValue[i]);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package com.louisnard.mountainsfinderar.model.services;
+
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.view.Surface;
+
+/**
+ * Class that calculates the device azimuth, pitch and roll, in degrees, from the raw values of the {@link Compass} sensors.<br>
+ *
+ * The {@link android.hardware.Sensor#TYPE_ROTATION_VECTOR} is already fused by the system, and used as is.
+ * The {@link android.hardware.Sensor#TYPE_ACCELEROMETER}, {@link android.hardware.Sensor#TYPE_MAGNETIC_FIELD} and {@link android.hardware.Sensor#TYPE_GYROSCOPE} values are fused by an {@link OrientationFilter}, a {@link LowPassOrientationFilter} by default.<br>
+ *
+ * It is called at the sensors rate, so it never allocates: the rotation matrix and the orientation are held in arrays allocated once, and updated in place.<br>
+ * The rotation matrix and orientation calculations are the same as {@link SensorManager#getRotationMatrixFromVector(float[], float[])}, {@link SensorManager#getRotationMatrix(float[], float[], float[], float[])} and {@link SensorManager#getOrientation(float[], float[])}, restricted to 3x3 matrices, so that they can also run in local unit tests.<br>
+ *
+ * Not thread-safe: the {@link Compass} calls it from a synchronized block.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class OrientationCalculator {
+
+    // Constants
+    // Below 10% of the standard gravity, the device is considered in free fall and the gravity direction is unknown
+    private static final float FREE_FALL_GRAVITY_SQUARED = 0.01f * SensorManager.GRAVITY_EARTH * SensorManager.GRAVITY_EARTH;
+    // Below this norm, the device is close to the magnetic poles (or in a magnetic shield) and the magnetic North is unknown
+    private static final float MIN_HORIZONTAL_MAGNETIC_NORM = 0.1f;
+
+    // Filter of the accelerometer, magnetometer and gyroscope values
+    private OrientationFilter mOrientationFilter = new LowPassOrientationFilter();
+    // The rotation vector sensor is more precise than the other sensors, but on some devices it is not working: it is only used once it has sent values
+    private boolean mUseRotationVector;
+
+    // Scratch buffers
+    private final float[] mRotationMatrix = new float[9];
+    private final float[] mOrientation = new float[3];
+    private final float[] mOrientationDegrees = new float[3];
+
+    // Screen rotation
+    private int mScreenRotation = Surface.ROTATION_0;
+
+    // Orientation
+    private float mAzimuthDegrees;
+    private float mPitchDegrees;
+    private float mRollDegrees;
+
+    /**
+     * Sets the screen rotation used to correct the orientation values.<br>
+     * The screen rotation only changes with the device configuration, so it is cached here instead of being queried for each sensor event.
+     * @param screenRotation the screen rotation: {@link Surface#ROTATION_0}, {@link Surface#ROTATION_90}, {@link Surface#ROTATION_180} or {@link Surface#ROTATION_270}.
+     */
+    public void setScreenRotation(int screenRotation) {
+        mScreenRotation = screenRotation;
+    }
+
+    /**
+     * Sets the filter of the accelerometer, magnetometer and gyroscope values. It is reset.
+     * @param orientationFilter the {@link OrientationFilter}.
+     */
+    public void setOrientationFilter(OrientationFilter orientationFilter) {
+        mOrientationFilter = orientationFilter;
+        mOrientationFilter.reset();
+    }
+
+    /**
+     * Gets the filter of the accelerometer, magnetometer and gyroscope values.
+     * @return the {@link OrientationFilter}.
+     */
+    public OrientationFilter getOrientationFilter() {
+        return mOrientationFilter;
+    }
+
+    /**
+     * Updates the orientation with new sensor values, dispatched by sensor type to the update methods below.<br>
+     * The {@link Sensor#TYPE_ROTATION_VECTOR} is preferred: once it has sent values, the values of the other sensors are ignored.<br>
+     * This is the entry point of both the {@link Compass} sensor events and the {@link SensorTraceReplayer} recorded events.
+     * @param sensorType the sensor type: {@link Sensor#TYPE_ROTATION_VECTOR}, {@link Sensor#TYPE_MAGNETIC_FIELD}, {@link Sensor#TYPE_ACCELEROMETER} or {@link Sensor#TYPE_GYROSCOPE}. The other types are ignored.
+     * @param timestampNanos the sensor event timestamp, in nanoseconds.
+     * @param values the sensor event values.
+     * @return <b>true</b> if the values have been used to update the orientation, <b>false</b> if they have been ignored.
+     */
+    public boolean updateSensor(int sensorType, long timestampNanos, float[] values) {
+        if (sensorType == Sensor.TYPE_ROTATION_VECTOR) {
+            mUseRotationVector = true;
+            updateRotationVector(values);
+        } else if (mUseRotationVector) {
+            return false;
+        } else if (sensorType == Sensor.TYPE_MAGNETIC_FIELD) {
+            updateGeomagnetic(timestampNanos, values);
+        } else if (sensorType == Sensor.TYPE_ACCELEROMETER) {
+            updateGravity(timestampNanos, values);
+        } else if (sensorType == Sensor.TYPE_GYROSCOPE) {
+            updateGyroscope(timestampNanos, values);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the {@link Sensor#TYPE_ROTATION_VECTOR} values are used, see {@link #updateSensor(int, long, float[])}.
+     * @return <b>true</b> if the rotation vector sensor has sent values.
+     */
+    public boolean isUsingRotationVector() {
+        return mUseRotationVector;
+    }
+
+    /**
+     * Updates the orientation with new {@link android.hardware.Sensor#TYPE_ROTATION_VECTOR} values.<br>
+     * The rotation vector is already fused by the system: it is not filtered.
+     * @param values the rotation vector sensor event values, with 3 to 5 elements.
+     */
+    public void updateRotationVector(float[] values) {
+        // Calculate the rotation matrix
+        getRotationMatrixFromVector(mRotationMatrix, values);
+        updateOrientation();
+    }
+
+    /**
+     * Updates the orientation with new {@link android.hardware.Sensor#TYPE_MAGNETIC_FIELD} values, through the {@link OrientationFilter}.
+     * @param timestampNanos the sensor event timestamp, in nanoseconds.
+     * @param values the magnetic field sensor event values.
+     */
+    public void updateGeomagnetic(long timestampNanos, float[] values) {
+        mOrientationFilter.updateGeomagnetic(timestampNanos, values);
+        updateFromOrientationFilter();
+    }
+
+    /**
+     * Updates the orientation with new {@link android.hardware.Sensor#TYPE_ACCELEROMETER} values, through the {@link OrientationFilter}.
+     * @param timestampNanos the sensor event timestamp, in nanoseconds.
+     * @param values the accelerometer sensor event values.
+     */
+    public void updateGravity(long timestampNanos, float[] values) {
+        mOrientationFilter.updateGravity(timestampNanos, values);
+        updateFromOrientationFilter();
+    }
+
+    /**
+     * Updates the orientation with new {@link android.hardware.Sensor#TYPE_GYROSCOPE} values, through the {@link OrientationFilter}.
+     * @param timestampNanos the sensor event timestamp, in nanoseconds.
+     * @param values the gyroscope sensor event values.
+     */
+    public void updateGyroscope(long timestampNanos, float[] values) {
+        mOrientationFilter.updateGyroscope(timestampNanos, values);
+        updateFromOrientationFilter();
+    }
+
+    // Get the rotation matrix from the filter, and update the orientation
+    private void updateFromOrientationFilter() {
+        // When the rotation is not known yet, the last one is kept
+        if (mOrientationFilter.getRotationMatrix(mRotationMatrix)) {
+            updateOrientation();
+        }
+    }
+
+    // Calculate azimuth, pitch and roll values from the rotation matrix
+    private void updateOrientation() {
+        getOrientationDegrees(mRotationMatrix, mOrientationDegrees);
+        mAzimuthDegrees = mOrientationDegrees[0];
+        mPitchDegrees = mOrientationDegrees[1];
+        mRollDegrees = mOrientationDegrees[2];
+    }
+
+    /**
+     * Copies the rotation matrix of the last orientation update.
+     * @param r the 3x3 rotation matrix, filled by this method.
+     */
+    public void copyRotationMatrix(float[] r) {
+        System.arraycopy(mRotationMatrix, 0, r, 0, 9);
+    }
+
+    /**
+     * Calculates the azimuth, pitch and roll of the device from any 3x3 rotation matrix, such as a predicted one, correcting the values depending on the screen rotation.<br>
+     * The orientation of the last update is left unchanged.
+     * @param r the 3x3 rotation matrix.
+     * @param orientationDegrees the azimuth, pitch and roll in degrees, filled by this method. Same ranges as {@link #getAzimuthDegrees()}, {@link #getPitchDegrees()} and {@link #getRollDegrees()}.
+     */
+    public void getOrientationDegrees(float[] r, float[] orientationDegrees) {
+        getOrientation(r, mOrientation);
+        float azimuthDegrees = (float) Math.toDegrees(mOrientation[0]);
+        float pitchDegrees = 0;
+        float rollDegrees = 0;
+        if (mScreenRotation == Surface.ROTATION_0) {
+            pitchDegrees = (float) Math.toDegrees(mOrientation[1]);
+            rollDegrees = (float) Math.toDegrees(mOrientation[2]);
+            if (rollDegrees >= 90 || rollDegrees <= -90) {
+                azimuthDegrees += 180;
+                pitchDegrees = pitchDegrees > 0 ? 180 - pitchDegrees : -180 - pitchDegrees;
+                rollDegrees = rollDegrees > 0 ? 180 - rollDegrees : -180 - rollDegrees;
+            }
+        } else if (mScreenRotation == Surface.ROTATION_90) {
+            azimuthDegrees += 90;
+            pitchDegrees = (float) Math.toDegrees(mOrientation[2]);
+            rollDegrees = (float) -Math.toDegrees(mOrientation[1]);
+        } else if (mScreenRotation == Surface.ROTATION_180) {
+            azimuthDegrees += 180;
+            pitchDegrees = (float) -Math.toDegrees(mOrientation[1]);
+            rollDegrees = (float) -Math.toDegrees(mOrientation[2]);
+            if (rollDegrees >= 90 || rollDegrees <= -90) {
+                azimuthDegrees += 180;
+                pitchDegrees = pitchDegrees > 0 ? 180 - pitchDegrees : -180 - pitchDegrees;
+                rollDegrees = rollDegrees > 0 ? 180 - rollDegrees : -180 - rollDegrees;
+            }
+        } else if (mScreenRotation == Surface.ROTATION_270) {
+            azimuthDegrees += 270;
+            pitchDegrees = (float) -Math.toDegrees(mOrientation[2]);
+            rollDegrees = (float) Math.toDegrees(mOrientation[1]);
+        }
+
+        // Force azimuth value between 0° and 360°.
+        orientationDegrees[0] = (azimuthDegrees + 360) % 360;
+        orientationDegrees[1] = pitchDegrees;
+        orientationDegrees[2] = rollDegrees;
+    }
+
+    // Getters
+    /**
+     * Gets the azimuth of the device.
+     * @return the azimuth in degrees, from 0° to 360°.
+     */
+    public float getAzimuthDegrees() {
+        return mAzimuthDegrees;
+    }
+
+    /**
+     * Gets the pitch (vertical inclination) of the device.
+     * @return the pitch in degrees, from -180° to 180°.
+     */
+    public float getPitchDegrees() {
+        return mPitchDegrees;
+    }
+
+    /**
+     * Gets the roll (horizontal inclination) of the device.
+     * @return the roll in degrees, from -90° to 90°.
+     */
+    public float getRollDegrees() {
+        return mRollDegrees;
+    }
+
+    /**
+     * Calculates the 3x3 rotation matrix from a rotation vector, as {@link SensorManager#getRotationMatrixFromVector(float[], float[])}.
+     * @param r the 3x3 rotation matrix, filled by this method.
+     * @param rotationVector the rotation vector, with 3 to 5 elements.
+     */
+    static void getRotationMatrixFromVector(float[] r, float[] rotationVector) {
+        final float q1 = rotationVector[0];
+        final float q2 = rotationVector[1];
+        final float q3 = rotationVector[2];
+        float q0;
+        if (rotationVector.length >= 4) {
+            q0 = rotationVector[3];
+        } else {
+            q0 = 1 - q1 * q1 - q2 * q2 - q3 * q3;
+            q0 = (q0 > 0) ? (float) Math.sqrt(q0) : 0;
+        }
+
+        final float sqQ1 = 2 * q1 * q1;
+        final float sqQ2 = 2 * q2 * q2;
+        final float sqQ3 = 2 * q3 * q3;
+        final float q1Q2 = 2 * q1 * q2;
+        final float q3Q0 = 2 * q3 * q0;
+        final float q1Q3 = 2 * q1 * q3;
+        final float q2Q0 = 2 * q2 * q0;
+        final float q2Q3 = 2 * q2 * q3;
+        final float q1Q0 = 2 * q1 * q0;
+
+        r[0] = 1 - sqQ2 - sqQ3;
+        r[1] = q1Q2 - q3Q0;
+        r[2] = q1Q3 + q2Q0;
+        r[3] = q1Q2 + q3Q0;
+        r[4] = 1 - sqQ1 - sqQ3;
+        r[5] = q2Q3 - q1Q0;
+        r[6] = q1Q3 - q2Q0;
+        r[7] = q2Q3 + q1Q0;
+        r[8] = 1 - sqQ1 - sqQ2;
+    }
+
+    /**
+     * Calculates the 3x3 rotation matrix from the gravity and geomagnetic vectors, as {@link SensorManager#getRotationMatrix(float[], float[], float[], float[])} without the inclination matrix.
+     * @param r the 3x3 rotation matrix, filled by this method. Left unchanged in case of failure.
+     * @param gravity the gravity vector, from the {@link android.hardware.Sensor#TYPE_ACCELEROMETER}.
+     * @param geomagnetic the geomagnetic vector, from the {@link android.hardware.Sensor#TYPE_MAGNETIC_FIELD}.
+     * @return <b>true</b> on success. <b>false</b> if the device is in free fall or close to the magnetic poles.
+     */
+    static boolean getRotationMatrix(float[] r, float[] gravity, float[] geomagnetic) {
+        float ax = gravity[0];
+        float ay = gravity[1];
+        float az = gravity[2];
+        final float normSqA = ax * ax + ay * ay + az * az;
+        if (normSqA < FREE_FALL_GRAVITY_SQUARED) {
+            return false;
+        }
+        final float ex = geomagnetic[0];
+        final float ey = geomagnetic[1];
+        final float ez = geomagnetic[2];
+        float hx = ey * az - ez * ay;
+        float hy = ez * ax - ex * az;
+        float hz = ex * ay - ey * ax;
+        final float normH = (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+        if (normH < MIN_HORIZONTAL_MAGNETIC_NORM) {
+            return false;
+        }
+        final float invH = 1.0f / normH;
+        hx *= invH;
+        hy *= invH;
+        hz *= invH;
+        final float invA = 1.0f / (float) Math.sqrt(normSqA);
+        ax *= invA;
+        ay *= invA;
+        az *= invA;
+        final float mx = ay * hz - az * hy;
+        final float my = az * hx - ax * hz;
+        final float mz = ax * hy - ay * hx;
+
+        r[0] = hx;
+        r[1] = hy;
+        r[2] = hz;
+        r[3] = mx;
+        r[4] = my;
+        r[5] = mz;
+        r[6] = ax;
+        r[7] = ay;
+        r[8] = az;
+        return true;
+    }
+
+    /**
+     * Calculates the device orientation from a 3x3 rotation matrix, as {@link SensorManager#getOrientation(float[], float[])}.
+     * @param r the 3x3 rotation matrix.
+     * @param values the azimuth, pitch and roll in radians, filled by this method.
+     */
+    static void getOrientation(float[] r, float[] values) {
+        values[0] = (float) Math.atan2(r[1], r[4]);
+        values[1] = (float) Math.asin(-r[7]);
+        values[2] = (float) Math.atan2(-r[6], r[8]);
+    }
+}
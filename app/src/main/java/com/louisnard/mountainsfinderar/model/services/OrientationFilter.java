@@ -0,0 +1,52 @@
+package com.louisnard.mountainsfinderar.model.services;
+
+/**
+ * Strategy of the {@link OrientationCalculator} to fuse the raw values of the {@link android.hardware.Sensor#TYPE_ACCELEROMETER}, {@link android.hardware.Sensor#TYPE_MAGNETIC_FIELD}
+ * and, optionally, {@link android.hardware.Sensor#TYPE_GYROSCOPE} sensors into the device rotation.<br>
+ *
+ * Implementations trade the jitter of the rotation for its latency:<br>
+ * - {@link LowPassOrientationFilter}: exponential smoothing of the gravity and geomagnetic vectors, without gyroscope.<br>
+ * - {@link ComplementaryOrientationFilter}: gyroscope integration, slowly corrected towards the gravity and geomagnetic rotation.<br>
+ * - {@link KalmanOrientationFilter}: gyroscope integration, corrected with a gain adapted to the estimated uncertainty of the rotation and of the measures.<br>
+ *
+ * The filters are called at the sensors rate, so they never allocate: their state is held in float arrays allocated once.<br>
+ * Not thread-safe: the {@link Compass} calls them from a synchronized block.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public interface OrientationFilter {
+
+    /**
+     * Forgets the sensors values and the rotation.
+     */
+    void reset();
+
+    /**
+     * Updates the filter with new {@link android.hardware.Sensor#TYPE_GYROSCOPE} values.
+     * @param timestampNanos the sensor event timestamp, in nanoseconds.
+     * @param values the angular velocity around the device x, y and z axes, in radians per second.
+     */
+    void updateGyroscope(long timestampNanos, float[] values);
+
+    /**
+     * Updates the filter with new {@link android.hardware.Sensor#TYPE_ACCELEROMETER} values.
+     * @param timestampNanos the sensor event timestamp, in nanoseconds.
+     * @param values the acceleration along the device x, y and z axes, in m/s².
+     */
+    void updateGravity(long timestampNanos, float[] values);
+
+    /**
+     * Updates the filter with new {@link android.hardware.Sensor#TYPE_MAGNETIC_FIELD} values.
+     * @param timestampNanos the sensor event timestamp, in nanoseconds.
+     * @param values the magnetic field along the device x, y and z axes, in µT.
+     */
+    void updateGeomagnetic(long timestampNanos, float[] values);
+
+    /**
+     * Gets the filtered rotation of the device.
+     * @param r the 3x3 rotation matrix, from the device coordinate system to the world coordinate system, filled by this method.
+     * @return <b>true</b> on success, <b>false</b> if the rotation is not known yet: the rotation matrix is left unchanged.
+     */
+    boolean getRotationMatrix(float[] r);
+}
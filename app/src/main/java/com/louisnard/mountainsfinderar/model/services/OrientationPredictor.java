@@ -0,0 +1,161 @@
+package com.louisnard.mountainsfinderar.model.services;
+
+/**
+ * Class that extrapolates the device rotation to a future time, such as the expected display time of the next frame, in order to cancel the sensor-to-screen latency.<br>
+ *
+ * The angular velocity of the device is read from the {@link android.hardware.Sensor#TYPE_GYROSCOPE} when it is available,
+ * or else estimated from the successive rotations and smoothed, since it is then derived from already noisy values.<br>
+ * The rotation is extrapolated at constant angular velocity, by at most the maximum horizon: the further the prediction, the more it overshoots when the device stops.<br>
+ *
+ * The rotations are held as unit quaternions, in the {@link android.hardware.Sensor#TYPE_ROTATION_VECTOR} order: x, y, z, w.
+ * The angular velocity is expressed in the device coordinate system, as the gyroscope values.<br>
+ *
+ * It is called at the sensors rate, so it never allocates.<br>
+ * Not thread-safe: the {@link Compass} calls it from a synchronized block.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class OrientationPredictor {
+
+    // Constants
+    // The smoothing factor of the angular velocity estimated from the successive rotations
+    private static final float ANGULAR_VELOCITY_SMOOTHING_FACTOR = 0.3f;
+    // The maximum age of the last gyroscope values for them to be used instead of the successive rotations, in nanoseconds
+    private static final long GYROSCOPE_TIMEOUT_NANOS = 100000000;
+    // The minimum and maximum time intervals between two rotations for them to be used to estimate the angular velocity, in nanoseconds
+    private static final long MIN_ROTATIONS_INTERVAL_NANOS = 1000000;
+    private static final long MAX_ROTATIONS_INTERVAL_NANOS = 500000000;
+    // Below this rotation angle, in radians, sin(angle) is approximated by angle
+    private static final double SMALL_ANGLE = 1e-6;
+
+    // The maximum time the rotation is extrapolated by, in nanoseconds
+    private long mMaxHorizonNanos;
+
+    // Last rotation, and the previous one to estimate the angular velocity
+    private final float[] mRotation = new float[4];
+    private final float[] mPreviousRotation = new float[4];
+    private long mRotationTimestampNanos;
+    private boolean mHasRotation;
+
+    // Angular velocity in the device coordinate system, in radians per second
+    private final float[] mAngularVelocity = new float[3];
+    private long mGyroscopeTimestampNanos;
+    private boolean mHasGyroscope;
+
+    // Scratch buffers
+    private final float[] mDeltaRotation = new float[4];
+    private final float[] mPredictedRotation = new float[4];
+
+    /**
+     * Constructs a new instance of {@link OrientationPredictor}.
+     * @param maxHorizonNanos the maximum time the rotation is extrapolated by, in nanoseconds. 0 disables the extrapolation.
+     */
+    public OrientationPredictor(long maxHorizonNanos) {
+        mMaxHorizonNanos = maxHorizonNanos;
+    }
+
+    /**
+     * Sets the maximum time the rotation is extrapolated by.
+     * @param maxHorizonNanos the maximum horizon in nanoseconds. 0 disables the extrapolation.
+     */
+    public void setMaxHorizonNanos(long maxHorizonNanos) {
+        mMaxHorizonNanos = maxHorizonNanos;
+    }
+
+    /**
+     * Gets the maximum time the rotation is extrapolated by.
+     * @return the maximum horizon in nanoseconds.
+     */
+    public long getMaxHorizonNanos() {
+        return mMaxHorizonNanos;
+    }
+
+    /**
+     * Forgets the rotations and the angular velocity.
+     */
+    public void reset() {
+        mHasRotation = false;
+        mHasGyroscope = false;
+        mAngularVelocity[0] = 0;
+        mAngularVelocity[1] = 0;
+        mAngularVelocity[2] = 0;
+    }
+
+    /**
+     * Updates the angular velocity with new {@link android.hardware.Sensor#TYPE_GYROSCOPE} values.<br>
+     * They are used instead of the successive rotations for {@link #GYROSCOPE_TIMEOUT_NANOS}.
+     * @param timestampNanos the sensor event timestamp, in nanoseconds.
+     * @param values the gyroscope sensor event values: the angular velocity around the device x, y and z axes, in radians per second.
+     */
+    public void updateGyroscope(long timestampNanos, float[] values) {
+        mAngularVelocity[0] = values[0];
+        mAngularVelocity[1] = values[1];
+        mAngularVelocity[2] = values[2];
+        mGyroscopeTimestampNanos = timestampNanos;
+        mHasGyroscope = true;
+    }
+
+    /**
+     * Updates the rotation of the device, and estimates the angular velocity from the previous rotation if the gyroscope values are not available.
+     * @param timestampNanos the timestamp of the sensor event the rotation has been calculated from, in nanoseconds.
+     * @param r the 3x3 rotation matrix, from the device coordinate system to the world coordinate system.
+     */
+    public void updateRotation(long timestampNanos, float[] r) {
+        System.arraycopy(mRotation, 0, mPreviousRotation, 0, 4);
+        Quaternions.fromRotationMatrix(r, mRotation);
+        final long intervalNanos = timestampNanos - mRotationTimestampNanos;
+        final boolean hadRotation = mHasRotation;
+        mHasRotation = true;
+        mRotationTimestampNanos = timestampNanos;
+        if (!hadRotation) {
+            return;
+        }
+        // q and -q are the same rotation: keep the one closest to the previous rotation
+        if (Quaternions.dot(mRotation, mPreviousRotation) < 0) {
+            for (int i = 0; i < 4; i++) {
+                mRotation[i] = -mRotation[i];
+            }
+        }
+        if (mHasGyroscope && timestampNanos - mGyroscopeTimestampNanos < GYROSCOPE_TIMEOUT_NANOS) {
+            return;
+        }
+        if (intervalNanos < MIN_ROTATIONS_INTERVAL_NANOS || intervalNanos > MAX_ROTATIONS_INTERVAL_NANOS) {
+            return;
+        }
+        // Rotation between the previous and the last rotation, in the device coordinate system: delta = conjugate(previous) * last
+        Quaternions.conjugate(mPreviousRotation, mDeltaRotation);
+        Quaternions.multiply(mDeltaRotation, mRotation, mDeltaRotation);
+        final double sinHalfAngle = Math.sqrt(mDeltaRotation[0] * mDeltaRotation[0] + mDeltaRotation[1] * mDeltaRotation[1] + mDeltaRotation[2] * mDeltaRotation[2]);
+        final double angle = 2 * Math.atan2(sinHalfAngle, mDeltaRotation[3]);
+        final double scale = (sinHalfAngle < SMALL_ANGLE ? 2 : angle / sinHalfAngle) / (intervalNanos * 1e-9);
+        for (int i = 0; i < 3; i++) {
+            mAngularVelocity[i] += ANGULAR_VELOCITY_SMOOTHING_FACTOR * (mDeltaRotation[i] * scale - mAngularVelocity[i]);
+        }
+    }
+
+    /**
+     * Extrapolates the last rotation to the given time, at constant angular velocity.<br>
+     * The extrapolation time is limited to [0, maximum horizon]: the last rotation is returned as is for a time before it, or if the maximum horizon is 0.
+     * @param timestampNanos the time to extrapolate the rotation to, in the sensor events time base, in nanoseconds.
+     * @param r the 3x3 rotation matrix, filled by this method.
+     * @return <b>true</b> on success, <b>false</b> if no rotation has been received yet: the rotation matrix is left unchanged.
+     */
+    public boolean predict(long timestampNanos, float[] r) {
+        if (!mHasRotation) {
+            return false;
+        }
+        final long horizonNanos = Math.max(0, Math.min(timestampNanos - mRotationTimestampNanos, mMaxHorizonNanos));
+        Quaternions.integrate(mRotation, mAngularVelocity, horizonNanos * 1e-9, mPredictedRotation, mDeltaRotation);
+        OrientationCalculator.getRotationMatrixFromVector(r, mPredictedRotation);
+        return true;
+    }
+
+    /**
+     * Gets the angular speed of the device, from the gyroscope or estimated from the successive rotations.
+     * @return the angular speed in radians per second.
+     */
+    public float getAngularSpeed() {
+        return (float) Math.sqrt(mAngularVelocity[0] * mAngularVelocity[0] + mAngularVelocity[1] * mAngularVelocity[1] + mAngularVelocity[2] * mAngularVelocity[2]);
+    }
+}
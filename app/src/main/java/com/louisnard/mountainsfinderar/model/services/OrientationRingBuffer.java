@@ -0,0 +1,123 @@
+package com.louisnard.mountainsfinderar.model.services;
+
+/**
+ * Ring buffer of timestamped orientation samples, accumulated between two frames and averaged once per frame.<br>
+ *
+ * It is written at the sensors rate, so it never allocates: the samples are held in arrays allocated once.<br>
+ * When the buffer is full, the oldest samples are overwritten.<br>
+ * The angles are averaged relatively to the newest sample, so that the average of angles on both sides of 0° / 360° (or -180° / 180°) is correct.<br>
+ *
+ * Not thread-safe: the {@link Compass} calls it from a synchronized block.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class OrientationRingBuffer {
+
+    // Samples
+    private final long[] mTimestampsNanos;
+    private final float[] mAzimuths;
+    private final float[] mPitches;
+    private final float[] mRolls;
+    // The index of the next sample to write, and the number of samples added since the last consume()
+    private int mNext;
+    private int mSize;
+
+    // The mean timestamp of the samples averaged by the last consume()
+    private long mLastConsumedTimestampNanos;
+
+    /**
+     * Constructs a new instance of {@link OrientationRingBuffer}.
+     * @param capacity the maximum number of samples held between two frames.
+     */
+    public OrientationRingBuffer(int capacity) {
+        mTimestampsNanos = new long[capacity];
+        mAzimuths = new float[capacity];
+        mPitches = new float[capacity];
+        mRolls = new float[capacity];
+    }
+
+    /**
+     * Adds an orientation sample, overwriting the oldest one if the buffer is full.
+     * @param timestampNanos the sample timestamp, in nanoseconds.
+     * @param azimuth the azimuth in degrees, from 0° to 360°.
+     * @param pitch the pitch in degrees, from -180° to 180°.
+     * @param roll the roll in degrees, from -90° to 90°.
+     */
+    public void add(long timestampNanos, float azimuth, float pitch, float roll) {
+        mTimestampsNanos[mNext] = timestampNanos;
+        mAzimuths[mNext] = azimuth;
+        mPitches[mNext] = pitch;
+        mRolls[mNext] = roll;
+        mNext = (mNext + 1) % mTimestampsNanos.length;
+        mSize = Math.min(mSize + 1, mTimestampsNanos.length);
+    }
+
+    /**
+     * Gets the number of samples added since the last {@link #consume(float[])}, up to the buffer capacity.
+     * @return the number of samples.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Averages the samples added since the last call, and removes them from the buffer.
+     * @param orientation the average azimuth, pitch and roll in degrees, filled by this method.
+     * @return <b>true</b> on success, <b>false</b> if no sample has been added since the last call: the orientation is left unchanged.
+     */
+    public boolean consume(float[] orientation) {
+        if (mSize == 0) {
+            return false;
+        }
+        final int capacity = mTimestampsNanos.length;
+        final int newest = (mNext - 1 + capacity) % capacity;
+        // Average the differences with the newest sample, so that the timestamps do not overflow and the angles do not wrap around
+        long timestampsSumNanos = 0;
+        float azimuthsSum = 0;
+        float pitchesSum = 0;
+        float rollsSum = 0;
+        for (int i = 0; i < mSize; i++) {
+            final int index = (newest - i + capacity) % capacity;
+            timestampsSumNanos += mTimestampsNanos[index] - mTimestampsNanos[newest];
+            azimuthsSum += getAngleDifference(mAzimuths[index], mAzimuths[newest]);
+            pitchesSum += getAngleDifference(mPitches[index], mPitches[newest]);
+            rollsSum += getAngleDifference(mRolls[index], mRolls[newest]);
+        }
+        mLastConsumedTimestampNanos = mTimestampsNanos[newest] + timestampsSumNanos / mSize;
+        orientation[0] = normalizeAngle(mAzimuths[newest] + azimuthsSum / mSize, 0);
+        orientation[1] = normalizeAngle(mPitches[newest] + pitchesSum / mSize, -180);
+        orientation[2] = normalizeAngle(mRolls[newest] + rollsSum / mSize, -180);
+        mSize = 0;
+        return true;
+    }
+
+    /**
+     * Gets the mean timestamp of the samples averaged by the last successful {@link #consume(float[])}.
+     * @return the timestamp, in nanoseconds.
+     */
+    public long getLastConsumedTimestampNanos() {
+        return mLastConsumedTimestampNanos;
+    }
+
+    /**
+     * Removes all the samples.
+     */
+    public void clear() {
+        mSize = 0;
+    }
+
+    // Returns the difference between two angles in degrees, from -180° to 180°
+    private static float getAngleDifference(float angle, float reference) {
+        return normalizeAngle(angle - reference, -180);
+    }
+
+    // Returns the angle in degrees, from the given minimum included to the minimum + 360° excluded
+    private static float normalizeAngle(float angle, float min) {
+        float normalized = (angle - min) % 360;
+        if (normalized < 0) {
+            normalized += 360;
+        }
+        return normalized + min;
+    }
+}
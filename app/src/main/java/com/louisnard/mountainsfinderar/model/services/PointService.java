@@ -4,18 +4,30 @@ import android.os.AsyncTask;
 import android.util.Log;
 
 import com.louisnard.mountainsfinderar.BuildConfig;
+import com.louisnard.mountainsfinderar.model.database.ARDbHelper;
+import com.louisnard.mountainsfinderar.model.database.PointsBulkInserter;
+import com.louisnard.mountainsfinderar.model.database.PointsFile;
+import com.louisnard.mountainsfinderar.model.database.PointsFileWriter;
+import com.louisnard.mountainsfinderar.model.objects.AzimuthIndex;
+import com.louisnard.mountainsfinderar.model.objects.BoundingBox;
+import com.louisnard.mountainsfinderar.model.objects.HorizonProfile;
 import com.louisnard.mountainsfinderar.model.objects.Point;
+import com.louisnard.mountainsfinderar.model.objects.PointStore;
+import com.louisnard.mountainsfinderar.model.objects.PointsSnapshot;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Helper class that performs operations related to {@link Point}.
@@ -34,9 +46,56 @@ public class PointService {
     // Constants
     // The Earth mean radius in meters
     public static final double EARTH_RADIUS = 6371000;
+    // The standard coefficient of atmospheric refraction: the lines of sight are bent towards the ground along a circle of radius EARTH_RADIUS / REFRACTION_COEFFICIENT
+    public static final float REFRACTION_COEFFICIENT = 0.13f;
+    // The size of the spatial index tiles, in degrees of latitude and longitude
+    public static final double TILE_SIZE = 0.1;
+    // The number of tiles in a row of tiles, from -180° to 180° of longitude
+    public static final int TILES_PER_ROW = (int) Math.round(360 / TILE_SIZE);
 
-    public interface GpxParserListener {
-        void onGpxParsed(List<Point> parsedPoints);
+    // The number of points parsed from a GPX file before being handed to the database as a batch
+    private static final int GPX_IMPORT_BATCH_SIZE = 500;
+    // The maximum number of batches waiting to be inserted into the database: bounds the memory used by a GPX import
+    private static final int GPX_IMPORT_QUEUE_CAPACITY = 4;
+    // The maximum time the database insertion waits for a batch before checking whether the import has been cancelled, in milliseconds
+    private static final long GPX_IMPORT_POLL_TIMEOUT_MS = 100;
+
+    // Running GPX import
+    private GpxImporter mGpxImporter;
+
+    /**
+     * {@link PointService} GPX import listener.
+     */
+    public interface GpxImportListener {
+        /**
+         * Called regularly while a GPX file is being imported.
+         * @param parsedPointsNumber the number of {@link Point}s parsed from the GPX file so far.
+         * @param importedPointsNumber the number of {@link Point}s inserted into the database so far.
+         */
+        void onGpxImportProgress(long parsedPointsNumber, long importedPointsNumber);
+
+        /**
+         * Called when a GPX file import has completed or has been cancelled.
+         * @param importedPointsNumber the number of {@link Point}s inserted into the database, or -1 if an error occurred on one or many of them.
+         */
+        void onGpxImported(long importedPointsNumber);
+
+        /**
+         * Called instead of {@link #onGpxImported(long)} when the file is not a valid GPX file.
+         */
+        void onGpxInvalid();
+    }
+
+    /**
+     * Interface definition for receiving the {@link Point}s of a GPX file while it is being parsed.
+     */
+    private interface GpxPointHandler {
+        /**
+         * Called for each valid {@link Point} parsed from the GPX file.
+         * @param point the parsed {@link Point}.
+         * @throws InterruptedException if parsing has to stop.
+         */
+        void onPointParsed(Point point) throws InterruptedException;
     }
 
     /**
@@ -117,127 +176,592 @@ public class PointService {
         }
     }
     /**
-     * Calculates the relative azimuth of each {@link Point} from {@param points} as seen from {@param originPoint} (which is for instance the user location).<br>
-     * Returns a {@link SortedMap <>} mapping:<br>
-     * - As key: each point azimuth, as seen from {@param originPoint}.<br>
-     * - As value: each {@link Point} from {@param points}.<br>
-     * The {@link SortedMap<>} is sorted by key value (which means by point azimuth).
+     * Calculates the minimal bounding boxes containing all the points located at a great-circle distance lower than or equal to {@param distance} from the given coordinates.<br>
+     * The longitude span is widened according to the latitude, as meridians converge towards the poles.<br>
+     * Returns:<br>
+     * - A single {@link BoundingBox} in the general case.<br>
+     * - Two {@link BoundingBox}es when the area crosses the antimeridian (±180°), one on each side of it.<br>
+     * - A single {@link BoundingBox} spanning all longitudes, clamped at the pole, when the area contains a pole.
+     * @param latitude the latitude of the center in degrees, comprised between -90° and 90°.
+     * @param longitude the longitude of the center in degrees, comprised between -180° and 180°.
+     * @param distance the radius of the area (in meters).
+     * @return the {@link List<BoundingBox>} to query, containing one or two {@link BoundingBox}es.
+     */
+    public static List<BoundingBox> getBoundingBoxes(double latitude, double longitude, int distance) {
+        final List<BoundingBox> boundingBoxes = new ArrayList<>(2);
+        final double angularDistance = distance / EARTH_RADIUS;
+        final double latitudeDelta = Math.toDegrees(angularDistance);
+        final double latitudeMin = latitude - latitudeDelta;
+        final double latitudeMax = latitude + latitudeDelta;
+
+        // The area contains a pole: all longitudes are concerned
+        if (latitudeMax >= 90 || latitudeMin <= -90) {
+            boundingBoxes.add(new BoundingBox(Math.max(latitudeMin, -90), Math.min(latitudeMax, 90), -180, 180));
+            return boundingBoxes;
+        }
+
+        // Longitude span at the latitudes where the circle is tangent to the meridians
+        final double longitudeDelta = Math.toDegrees(Math.asin(Math.sin(angularDistance) / Math.cos(Math.toRadians(latitude))));
+        final double longitudeMin = longitude - longitudeDelta;
+        final double longitudeMax = longitude + longitudeDelta;
+        if (longitudeMin < -180) {
+            boundingBoxes.add(new BoundingBox(latitudeMin, latitudeMax, longitudeMin + 360, 180));
+            boundingBoxes.add(new BoundingBox(latitudeMin, latitudeMax, -180, longitudeMax));
+        } else if (longitudeMax > 180) {
+            boundingBoxes.add(new BoundingBox(latitudeMin, latitudeMax, longitudeMin, 180));
+            boundingBoxes.add(new BoundingBox(latitudeMin, latitudeMax, -180, longitudeMax - 360));
+        } else {
+            boundingBoxes.add(new BoundingBox(latitudeMin, latitudeMax, longitudeMin, longitudeMax));
+        }
+        return boundingBoxes;
+    }
+
+    /**
+     * Returns the row of the spatial index tile containing the given latitude.<br>
+     * Rows are numbered from 0 at -90° towards the North Pole.
+     * @param latitude the latitude in degrees, comprised between -90° and 90°.
+     * @return the tile row.
+     */
+    public static int getTileRow(double latitude) {
+        return (int) ((latitude + 90) / TILE_SIZE);
+    }
+
+    /**
+     * Returns the column of the spatial index tile containing the given longitude.<br>
+     * Columns are numbered from 0 at -180° eastwards. 180° belongs to the last column.
+     * @param longitude the longitude in degrees, comprised between -180° and 180°.
+     * @return the tile column, from 0 to {@link #TILES_PER_ROW} - 1.
+     */
+    public static int getTileColumn(double longitude) {
+        return Math.min((int) ((longitude + 180) / TILE_SIZE), TILES_PER_ROW - 1);
+    }
+
+    /**
+     * Returns the key of the spatial index tile containing the given coordinates.<br>
+     * Keys of the tiles of a same row are contiguous, so that a latitude band of tiles can be queried as a single range of keys.<br>
+     * Must be kept consistent with {@link #getSqlTileKey(String, String)}.
+     * @param latitude the latitude in degrees, comprised between -90° and 90°.
+     * @param longitude the longitude in degrees, comprised between -180° and 180°.
+     * @return the tile key.
+     */
+    public static int getTileKey(double latitude, double longitude) {
+        return getTileRow(latitude) * TILES_PER_ROW + getTileColumn(longitude);
+    }
+
+    /**
+     * Returns the SQL expression computing the tile key (see {@link #getTileKey(double, double)}) from latitude and longitude columns.
+     * @param latitudeColumn the latitude column name.
+     * @param longitudeColumn the longitude column name.
+     * @return the SQL expression.
+     */
+    public static String getSqlTileKey(String latitudeColumn, String longitudeColumn) {
+        return "(CAST((" + latitudeColumn + " + 90) / " + TILE_SIZE + " AS INTEGER) * " + TILES_PER_ROW
+                + " + MIN(CAST((" + longitudeColumn + " + 180) / " + TILE_SIZE + " AS INTEGER), " + (TILES_PER_ROW - 1) + "))";
+    }
+
+    /**
+     * Returns the keys of the spatial index tiles overlapping the given {@link BoundingBox}es (see {@link #getTileKey(double, double)}).
+     * @param boundingBoxes the {@link List<BoundingBox>}, as returned by {@link #getBoundingBoxes(double, double, int)}. They must not cross the antimeridian.
+     * @return the tile keys, sorted in ascending order, without duplicates.
+     */
+    public static int[] getTileKeys(List<BoundingBox> boundingBoxes) {
+        int tilesNumber = 0;
+        for (BoundingBox boundingBox : boundingBoxes) {
+            tilesNumber += (getTileRow(boundingBox.getLatitudeMax()) - getTileRow(boundingBox.getLatitudeMin()) + 1)
+                    * (getTileColumn(boundingBox.getLongitudeMax()) - getTileColumn(boundingBox.getLongitudeMin()) + 1);
+        }
+        int[] tileKeys = new int[tilesNumber];
+        int i = 0;
+        for (BoundingBox boundingBox : boundingBoxes) {
+            final int columnMin = getTileColumn(boundingBox.getLongitudeMin());
+            final int columnMax = getTileColumn(boundingBox.getLongitudeMax());
+            for (int row = getTileRow(boundingBox.getLatitudeMin()); row <= getTileRow(boundingBox.getLatitudeMax()); row++) {
+                for (int column = columnMin; column <= columnMax; column++) {
+                    tileKeys[i++] = row * TILES_PER_ROW + column;
+                }
+            }
+        }
+        // Bounding boxes on both sides of the antimeridian may share their border column
+        Arrays.sort(tileKeys);
+        int distinctTilesNumber = 0;
+        for (int j = 0; j < tileKeys.length; j++) {
+            if (j == 0 || tileKeys[j] != tileKeys[j - 1]) {
+                tileKeys[distinctTilesNumber++] = tileKeys[j];
+            }
+        }
+        if (distinctTilesNumber < tileKeys.length) {
+            tileKeys = Arrays.copyOf(tileKeys, distinctTilesNumber);
+        }
+        return tileKeys;
+    }
+
+    /**
+     * Returns the coordinates reached when travelling the given distance from the given coordinates along the given initial bearing, on a spherical Earth.
+     * @param latitude the origin latitude in degrees.
+     * @param longitude the origin longitude in degrees.
+     * @param bearing the initial bearing in degrees, clockwise from the North.
+     * @param distance the distance to travel, in meters.
+     * @return the destination latitude and longitude in degrees, as an array of 2 elements.
+     */
+    public static double[] getDestination(double latitude, double longitude, double bearing, double distance) {
+        final double angularDistance = distance / EARTH_RADIUS;
+        final double latitudeRadians = Math.toRadians(latitude);
+        final double bearingRadians = Math.toRadians(bearing);
+        final double destinationLatitude = Math.asin(Math.sin(latitudeRadians) * Math.cos(angularDistance)
+                + Math.cos(latitudeRadians) * Math.sin(angularDistance) * Math.cos(bearingRadians));
+        final double longitudeDelta = Math.atan2(Math.sin(bearingRadians) * Math.sin(angularDistance) * Math.cos(latitudeRadians),
+                Math.cos(angularDistance) - Math.sin(latitudeRadians) * Math.sin(destinationLatitude));
+        return new double[] {Math.toDegrees(destinationLatitude), getValidLongitude(longitude + Math.toDegrees(longitudeDelta))};
+    }
+
+    /**
+     * Helper method that calculates the vertical angle (in degrees) associated to a height difference over a horizontal distance.<br>
+     * If the horizontal distance is 0, the angle will be 90° or -90°.
+     * @param heightDifference the height difference (in meters), positive if the destination is higher than the origin.
+     * @param distance the horizontal distance (in meters).
+     * @return the vertical angle (in degrees), from -90° to 90°.
+     */
+    public static float getVerticalAngle(float heightDifference, float distance) {
+        if (distance == 0) {
+            return heightDifference >= 0 ? 90f : -90f;
+        }
+        return (float) Math.toDegrees(Math.atan(heightDifference / distance));
+    }
+
+    /**
+     * Helper method that calculates the apparent vertical angle (in degrees) of a point at a given height difference and distance, taking into account the Earth curvature and the atmospheric refraction.<br>
+     * The Earth curvature lowers the distant points: by around 60 m at 30 km, and 2.2 km at 180 km with the standard refraction.<br>
+     * The refraction bends the lines of sight towards the ground, which is the same as straight lines of sight over an Earth of radius {@link #EARTH_RADIUS} / (1 - {@param refractionCoefficient}).<br>
+     * If the distance is 0, the angle will be 90° or -90°.
+     * @param heightDifference the height difference (in meters), positive if the destination is higher than the origin.
+     * @param distance the distance along the Earth surface (in meters).
+     * @param refractionCoefficient the atmospheric refraction coefficient, from 0 (straight lines of sight) to 1 (lines of sight following the Earth curvature, as on a flat Earth). See {@link #REFRACTION_COEFFICIENT}.
+     * @return the vertical angle (in degrees), from -90° to 90°.
+     */
+    public static float getApparentVerticalAngle(float heightDifference, float distance, float refractionCoefficient) {
+        return getApparentVerticalAngle(heightDifference, distance, getApparentEarthCurvature(refractionCoefficient));
+    }
+
+    // Returns the curvature of the Earth as seen along the lines of sight bent by the given refraction coefficient, in 1/meters
+    static double getApparentEarthCurvature(float refractionCoefficient) {
+        return (1 - refractionCoefficient) / EARTH_RADIUS;
+    }
+
+    // Calculates the apparent vertical angle (in degrees) of a point at a given height difference and distance, as seen over an Earth of the given curvature
+    static float getApparentVerticalAngle(double heightDifference, double distance, double earthCurvature) {
+        if (distance == 0) {
+            return heightDifference >= 0 ? 90f : -90f;
+        }
+        if (earthCurvature == 0) {
+            return (float) Math.toDegrees(Math.atan2(heightDifference, distance));
+        }
+        // Position of the destination point from the origin point, in the vertical plane containing both points and the Earth center
+        final double centralAngle = distance * earthCurvature;
+        final double sinHalfCentralAngle = Math.sin(centralAngle / 2);
+        final double horizontal = (1 / earthCurvature + heightDifference) * Math.sin(centralAngle);
+        // The Earth surface drops by (1 - cos(centralAngle)) / earthCurvature under the horizontal plane
+        final double vertical = heightDifference * Math.cos(centralAngle) - 2 * sinHalfCentralAngle * sinHalfCentralAngle / earthCurvature;
+        return (float) Math.toDegrees(Math.atan2(vertical, horizontal));
+    }
+
+    /**
+     * Returns the approximate distance in meters between {@param originPoint} and the point at {@param index} in {@param points}.<br>
+     * Distance is calculated in the local tangent plane of the WGS84 ellipsoid: only accurate for close points (see {@link GeoMath}).
+     * @param originPoint the origin {@link Point}. For instance, the user location.
+     * @param points the {@link PointStore} holding the destination point.
+     * @param index the index of the destination point in {@param points}.
+     * @return the distance (in meters).
+     */
+    public static int getDistance(Point originPoint, PointStore points, int index) {
+        return (int) GeoMath.getLocalDistance(originPoint.getLatitude(), originPoint.getLongitude(), points.getLatitude(index), points.getLongitude(index));
+    }
+
+    /**
+     * Returns the approximate apparent vertical angle in degrees from {@param originPoint} to the point at {@param index} in {@param points}, with the standard refraction.<br>
+     * See {@link Point#verticalAngleTo(Point)}.
+     * @param originPoint the origin {@link Point}. For instance, the user location.
+     * @param points the {@link PointStore} holding the destination point.
+     * @param index the index of the destination point in {@param points}.
+     * @return the vertical angle (in degrees), from -90° to 90°.
+     */
+    public static float getVerticalAngle(Point originPoint, PointStore points, int index) {
+        return getApparentVerticalAngle(points.getAltitude(index) - originPoint.getAltitude(), getDistance(originPoint, points, index), REFRACTION_COEFFICIENT);
+    }
+
+    /**
+     * Calculates the distance and the apparent vertical angle of each point from {@param points} as seen from {@param originPoint} (which is for instance the user location), with the standard refraction.<br>
+     * See {@link #calculateDistancesAndVerticalAngles(Point, PointStore, int[], float[], float)}.
+     * @param originPoint the origin {@link Point}. For instance, the user location.
+     * @param points the {@link PointStore} holding the destination points.
+     * @param distances the array receiving the distances (in meters). Its length must be greater than or equal to {@param points} size.
+     * @param verticalAngles the array receiving the vertical angles (in degrees), from -90° to 90°. Its length must be greater than or equal to {@param points} size.
+     */
+    public static void calculateDistancesAndVerticalAngles(Point originPoint, PointStore points, int[] distances, float[] verticalAngles) {
+        calculateDistancesAndVerticalAngles(originPoint, points, distances, verticalAngles, REFRACTION_COEFFICIENT);
+    }
+
+    /**
+     * Calculates the distance and the apparent vertical angle of each point from {@param points} as seen from {@param originPoint} (which is for instance the user location).<br>
+     * The results are written at each point index, so that they can be calculated once per {@param originPoint} move and reused as long as it does not move.<br>
+     * Distances are calculated in the local tangent plane of the WGS84 ellipsoid (see {@link GeoMath}): the points must be close to {@param originPoint}.<br>
+     * Vertical angles take into account the Earth curvature and the atmospheric refraction (see {@link #getApparentVerticalAngle(float, float, float)}), calculated once for all points.
+     * @param originPoint the origin {@link Point}. For instance, the user location.
+     * @param points the {@link PointStore} holding the destination points.
+     * @param distances the array receiving the distances (in meters). Its length must be greater than or equal to {@param points} size.
+     * @param verticalAngles the array receiving the vertical angles (in degrees), from -90° to 90°. Its length must be greater than or equal to {@param points} size.
+     * @param refractionCoefficient the atmospheric refraction coefficient. See {@link #REFRACTION_COEFFICIENT}.
+     */
+    public static void calculateDistancesAndVerticalAngles(Point originPoint, PointStore points, int[] distances, float[] verticalAngles, float refractionCoefficient) {
+        calculateDistancesAndVerticalAngles(originPoint, originPoint.getAltitude(), points, distances, verticalAngles, refractionCoefficient);
+    }
+
+    /**
+     * Calculates the distance and the apparent vertical angle of each point from {@param points} as seen from {@param originPoint} at the given altitude,
+     * instead of the altitude of {@param originPoint}: for instance, the altitude a {@link HorizonProfile} has been seen from.<br>
+     * See {@link #calculateDistancesAndVerticalAngles(Point, PointStore, int[], float[], float)}.
+     * @param originPoint the origin {@link Point}. For instance, the user location.
+     * @param originAltitude the origin altitude, in meters.
+     * @param points the {@link PointStore} holding the destination points.
+     * @param distances the array receiving the distances (in meters). Its length must be greater than or equal to {@param points} size.
+     * @param verticalAngles the array receiving the vertical angles (in degrees), from -90° to 90°. Its length must be greater than or equal to {@param points} size.
+     * @param refractionCoefficient the atmospheric refraction coefficient. See {@link #REFRACTION_COEFFICIENT}.
+     */
+    public static void calculateDistancesAndVerticalAngles(Point originPoint, float originAltitude, PointStore points, int[] distances, float[] verticalAngles, float refractionCoefficient) {
+        final double originLatitude = originPoint.getLatitude();
+        final double originLongitude = originPoint.getLongitude();
+        final double earthCurvature = getApparentEarthCurvature(refractionCoefficient);
+        for (int i = 0; i < points.size(); i++) {
+            distances[i] = (int) GeoMath.getLocalDistance(originLatitude, originLongitude, points.getLatitude(i), points.getLongitude(i));
+            verticalAngles[i] = getApparentVerticalAngle(points.getAltitude(i) - originAltitude, distances[i], earthCurvature);
+        }
+    }
+
+    /**
+     * Calculates the relative azimuth of each point from {@param points} as seen from {@param originPoint} (which is for instance the user location).<br>
+     * Returns an {@link AzimuthIndex} holding each point index in {@param points} sorted by azimuth, as seen from {@param originPoint}.<br>
+     * Points with the same azimuth are all kept.<br>
+     * Azimuths are calculated in the local tangent plane of the WGS84 ellipsoid (see {@link GeoMath}): the points must be close to {@param originPoint}.
      * @param originPoint the {@link Point} from which to calculate the relative azimuths of the other points. For instance, the user location.
-     * @param points the {@link List <Point>} to sort by relative azimuth.
-     * @return the {@link SortedMap<>} of points sorted by azimuth as seen from {@param originPoint}, and using azimuth values as keys.
+     * @param points the {@link PointStore} to sort by relative azimuth.
+     * @return the {@link AzimuthIndex} of points indexes sorted by azimuth as seen from {@param originPoint}.
+     */
+    public static AzimuthIndex sortPointsByRelativeAzimuth(Point originPoint, PointStore points) {
+        final float[] azimuths = new float[points.size()];
+        final double originLatitude = originPoint.getLatitude();
+        final double originLongitude = originPoint.getLongitude();
+        for (int i = 0; i < points.size(); i++) {
+            final float azimuth = (float) GeoMath.getLocalBearing(originLatitude, originLongitude, points.getLatitude(i), points.getLongitude(i));
+            // Azimuths just below 360° may be rounded up to 360° as floats
+            azimuths[i] = azimuth < 360 ? azimuth : 0;
+        }
+        return new AzimuthIndex(azimuths, points.size());
+    }
+
+    /**
+     * Calculates everything needed to display {@param points} as seen from {@param originPoint}: their {@link AzimuthIndex}, distances, vertical angles and names.
+     * @param originPoint the {@link Point} from which the points are seen. For instance, the user location.
+     * @param points the {@link PointStore} holding the points. Must not be modified afterwards.
+     * @return the {@link PointsSnapshot} of {@param points} as seen from {@param originPoint}.
      */
-    public static SortedMap<Float, Point> sortPointsByRelativeAzimuth(Point originPoint, List<Point> points) {
-        SortedMap<Float, Point> pointsSortedMap = new TreeMap<>();
-        for (Point p : points) {
-            pointsSortedMap.put(originPoint.azimuthTo(p), p);
+    public static PointsSnapshot getPointsSnapshot(Point originPoint, PointStore points) {
+        return getPointsSnapshot(originPoint, points, null);
+    }
+
+    /**
+     * Calculates everything needed to display {@param points} as seen from {@param originPoint}: their {@link AzimuthIndex}, distances, vertical angles and visibility.<br>
+     * A point is occluded if some closer terrain of the {@link HorizonProfile} is seen higher than it. The names of the visible points are loaded, since they may be drawn.
+     * The vertical angles are then calculated from the altitude the {@link HorizonProfile} has been seen from, rather than from the less accurate altitude of {@param originPoint}.
+     * @param originPoint the {@link Point} from which the points are seen. For instance, the user location.
+     * @param points the {@link PointStore} holding the points. Must not be modified afterwards.
+     * @param horizonProfile the {@link HorizonProfile} around {@param originPoint}, or <b>null</b> if all points are visible.
+     * @return the {@link PointsSnapshot} of {@param points} as seen from {@param originPoint}.
+     */
+    public static PointsSnapshot getPointsSnapshot(Point originPoint, PointStore points, HorizonProfile horizonProfile) {
+        final int[] distances = new int[points.size()];
+        final float[] verticalAngles = new float[points.size()];
+        final float originAltitude = horizonProfile != null ? horizonProfile.getObserverAltitude() : originPoint.getAltitude();
+        calculateDistancesAndVerticalAngles(originPoint, originAltitude, points, distances, verticalAngles, REFRACTION_COEFFICIENT);
+        final AzimuthIndex pointsByAzimuth = sortPointsByRelativeAzimuth(originPoint, points);
+        boolean[] visibilities = null;
+        if (horizonProfile != null) {
+            visibilities = new boolean[points.size()];
+            for (int position = 0; position < pointsByAzimuth.size(); position++) {
+                final int index = pointsByAzimuth.getPointIndex(position);
+                visibilities[index] = horizonProfile.isVisible(pointsByAzimuth.getAzimuth(position), distances[index], verticalAngles[index]);
+            }
+        }
+        final String[] names = new String[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            if (visibilities == null || visibilities[i]) {
+                names[i] = points.getName(i);
+            }
+        }
+        return new PointsSnapshot(originPoint, points, pointsByAzimuth, distances, verticalAngles, visibilities, names);
+    }
+
+    /**
+     * Parses a GPX file {@link InputStream} and inserts the {@link Point}s that it contains into the database asynchronously.<br>
+     * Parsing and insertion run concurrently: the parser hands the {@link Point}s to the database in batches, through a bounded queue, so that the memory used does not depend on the GPX file size.
+     * @param inputStream the {@link InputStream} of the GPX file. Closed when the import completes.
+     * @param dbHelper the {@link ARDbHelper} to insert the {@link Point}s with.
+     * @param listener the {@link GpxImportListener} to notify of the import progress and completion.
+     */
+    public void importGpxAsynchronously(InputStream inputStream, ARDbHelper dbHelper, GpxImportListener listener) {
+        mGpxImporter = new GpxImporter(inputStream, dbHelper, listener);
+        mGpxImporter.execute();
+    }
+
+    /**
+     * Cancels the running GPX import, if any.<br>
+     * The insertion stops within {@link #GPX_IMPORT_POLL_TIMEOUT_MS}, even if the parser is blocked: the {@link Point}s inserted so far are kept and the {@link GpxImportListener} is notified with their number.
+     */
+    public void cancelGpxImport() {
+        if (mGpxImporter != null) {
+            mGpxImporter.cancel(false);
         }
-        return pointsSortedMap;
     }
 
     /**
-     * Parses a GPX file {@link InputStream} and returns the {@link List<Point>} that it contains.
+     * Parses a GPX file {@link InputStream} and writes the {@link Point}s that it contains to a binary points file, to be read by {@link PointsFile}.<br>
+     * Blocks until the file is written: must not be called from the UI thread.
+     * @param inputStream the {@link InputStream} of the GPX file. Not closed by this method.
+     * @param file the points file to write, replaced if it exists.
+     * @return the number of {@link Point}s written, or -1 if the input is not a GPX file.
+     * @throws XmlPullParserException if the GPX file is malformed.
+     * @throws IOException if the GPX file cannot be read or the points file cannot be written.
+     */
+    public static int writePointsFile(InputStream inputStream, File file) throws XmlPullParserException, IOException {
+        final PointsFileWriter writer = new PointsFileWriter();
+        try {
+            final boolean isValidGpx = parseGpx(inputStream, new GpxPointHandler() {
+                @Override
+                public void onPointParsed(Point point) {
+                    writer.add(point.getLatitude(), point.getLongitude(), point.getAltitude(), point.getName());
+                }
+            });
+            if (!isValidGpx) {
+                return -1;
+            }
+        } catch (InterruptedException e) {
+            // Never thrown: this handler never stops the parsing
+            throw new IllegalStateException(e);
+        }
+        writer.write(file);
+        return writer.size();
+    }
+
+    /**
+     * Parses a GPX file {@link InputStream} and hands each valid {@link Point} that it contains to the given {@link GpxPointHandler}, as soon as it is parsed.<br>
+     * The waypoints without latitude or longitude are skipped.
      * @param inputStream the {@link InputStream} of the GPX file.
-     * @param listener the {@link GpxParserListener} to notify when parsing has completed.
-     * @return the {@link List<Point>} contained in the GPX file or <b>null</b> if the file is invalid or empty.
+     * @param handler the {@link GpxPointHandler} to hand the {@link Point}s to.
+     * @return <b>true</b> if the file is a GPX file. <b>false</b> otherwise.
+     * @throws XmlPullParserException if the GPX file is malformed.
+     * @throws IOException if the GPX file cannot be read.
+     * @throws InterruptedException if the {@link GpxPointHandler} has stopped the parsing.
      */
-    public void parseGpxAsynchronously(InputStream inputStream, GpxParserListener listener) {
-        final GpxParser gpxParser = new GpxParser(inputStream, listener);
-        gpxParser.execute();
+    private static boolean parseGpx(InputStream inputStream, GpxPointHandler handler) throws XmlPullParserException, IOException, InterruptedException {
+        // Initialize XmlPullParser
+        final XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        final XmlPullParser xpp = factory.newPullParser();
+        xpp.setInput(inputStream, null);
+
+        // Ensure this is a GPX file
+        int eventType = xpp.getEventType();
+        if (eventType != XmlPullParser.START_DOCUMENT) {
+            if (BuildConfig.DEBUG) Log.d(TAG, "Invalid GPX file");
+            return false;
+        }
+        eventType = xpp.next();
+        if (eventType != XmlPullParser.START_TAG || !xpp.getName().equalsIgnoreCase("gpx")) {
+            if (BuildConfig.DEBUG) Log.d(TAG, "Invalid GPX file");
+            return false;
+        }
+
+        // Parse points
+        eventType = xpp.next();
+        Point temporaryPoint = null;
+        String currentTag = null;
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG
+                    && xpp.getName().equalsIgnoreCase("wpt")) {
+                // <wpt>: create a new Point, or skip the waypoint if it has no coordinates
+                final String latitude = xpp.getAttributeValue(null, "lat");
+                final String longitude = xpp.getAttributeValue(null, "lon");
+                if (latitude != null && longitude != null) {
+                    temporaryPoint = new Point();
+                    temporaryPoint.setLatitude(Double.parseDouble(latitude));
+                    temporaryPoint.setLongitude(Double.parseDouble(longitude));
+                } else {
+                    if (BuildConfig.DEBUG) Log.d(TAG, "Skipping a waypoint without coordinates");
+                    temporaryPoint = null;
+                }
+            } else if (eventType == XmlPullParser.END_TAG
+                    && xpp.getName().equalsIgnoreCase("wpt")) {
+                // </wpt>: hand the new Point over
+                if (temporaryPoint != null && temporaryPoint.isValid()) {
+                    handler.onPointParsed(temporaryPoint);
+                }
+                temporaryPoint = null;
+            } else if (eventType == XmlPullParser.START_TAG
+                    && (xpp.getName().equalsIgnoreCase("name") || xpp.getName().equalsIgnoreCase("ele") || xpp.getName().equalsIgnoreCase("desc"))) {
+                // <name> or <ele> or <desc>
+                currentTag = xpp.getName();
+            } else if (eventType == XmlPullParser.END_TAG
+                    && (xpp.getName().equalsIgnoreCase("name") || xpp.getName().equalsIgnoreCase("ele") || xpp.getName().equalsIgnoreCase("desc"))) {
+                // </name> or </ele> or </desc>
+                currentTag = null;
+            } else if (eventType == XmlPullParser.TEXT) {
+                // Text node
+                if (currentTag != null && temporaryPoint != null) {
+                    if (currentTag.equals("name")) {
+                        temporaryPoint.setName(xpp.getText());
+                    } else if (currentTag.equals("ele")) {
+                        temporaryPoint.setAltitude((int) Double.parseDouble(xpp.getText()));
+                    } else if (currentTag.equals("desc")) {
+                        temporaryPoint.setDescription(xpp.getText());
+                    }
+                }
+            }
+            eventType = xpp.next();
+        }
+        return true;
     }
 
     /**
-     * GPX parser.
+     * GPX importer.<br>
+     * A producer thread parses the GPX file and puts the {@link Point}s in batches into a bounded queue, while the {@link AsyncTask} background thread consumes the batches and inserts them into the database.
      */
-    private class GpxParser extends AsyncTask<Void, Void, Void> {
+    private class GpxImporter extends AsyncTask<Void, Long, Void> implements GpxPointHandler {
 
-        // GPX input stram
-        private InputStream mInputStream;
-        // Parsed points list
-        private List<Point> mPointsList;
+        // GPX input stream
+        private final InputStream mInputStream;
+        // Database
+        private final ARDbHelper mDbHelper;
         // Listener
-        private GpxParserListener mListener;
+        private final GpxImportListener mListener;
+
+        // Batches of parsed points waiting to be inserted
+        private final BlockingQueue<List<Point>> mBatchesQueue = new ArrayBlockingQueue<>(GPX_IMPORT_QUEUE_CAPACITY);
+        // Batch marking the end of the GPX file
+        private final List<Point> mEndOfGpx = new ArrayList<>(0);
+        // Batch being filled by the parser
+        private List<Point> mCurrentBatch = new ArrayList<>(GPX_IMPORT_BATCH_SIZE);
+
+        // Results
+        private volatile boolean mIsValidGpx;
+        private volatile long mParsedPointsNumber;
+        private long mImportedPointsNumber;
 
         /**
-         * Parses a GPX file {@link InputStream} and generates the {@link List<Point>} that it contains.
+         * Imports a GPX file {@link InputStream} into the database.
          * @param inputStream the {@link InputStream} of the GPX file.
-         * @param listener the {@link GpxParserListener} to notify when parsing has completed.
+         * @param dbHelper the {@link ARDbHelper} to insert the {@link Point}s with.
+         * @param listener the {@link GpxImportListener} to notify of the import progress and completion.
          */
-        public GpxParser(InputStream inputStream, GpxParserListener listener) {
+        public GpxImporter(InputStream inputStream, ARDbHelper dbHelper, GpxImportListener listener) {
             mInputStream = inputStream;
+            mDbHelper = dbHelper;
             mListener = listener;
         }
 
+        // Producer: parses the GPX file and puts the points into the queue in batches
+        private final Runnable mParser = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    try {
+                        mIsValidGpx = parseGpx(mInputStream, GpxImporter.this);
+                        if (!mCurrentBatch.isEmpty()) {
+                            mBatchesQueue.put(mCurrentBatch);
+                        }
+                    } catch (XmlPullParserException | IOException | RuntimeException e) {
+                        // Keep the points parsed before the error, if any. Any error must still end the GPX file, or the insertion would wait for it until cancelled
+                        e.printStackTrace();
+                        mIsValidGpx = mParsedPointsNumber > 0;
+                        if (mIsValidGpx) {
+                            mBatchesQueue.put(mCurrentBatch);
+                        }
+                    }
+                    mBatchesQueue.put(mEndOfGpx);
+                } catch (InterruptedException e) {
+                    // The import has been cancelled: nobody consumes the queue anymore
+                } finally {
+                    try {
+                        mInputStream.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        };
+
+        // GpxPointHandler implementation, called from the parser thread
+        @Override
+        public void onPointParsed(Point point) throws InterruptedException {
+            mCurrentBatch.add(point);
+            mParsedPointsNumber++;
+            if (mCurrentBatch.size() == GPX_IMPORT_BATCH_SIZE) {
+                mBatchesQueue.put(mCurrentBatch);
+                mCurrentBatch = new ArrayList<>(GPX_IMPORT_BATCH_SIZE);
+            }
+        }
+
         @Override
         protected Void doInBackground(Void... params) {
+            final Thread parserThread = new Thread(mParser, TAG + "-GpxParser");
+            parserThread.start();
+            // Consumer: inserts the batches into the database while the parsing goes on
+            final PointsBulkInserter bulkInserter = mDbHelper.beginBulkInsert();
             try {
-                // Initialize XmlPullParser
-                final XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
-                factory.setNamespaceAware(true);
-                final XmlPullParser xpp = factory.newPullParser();
-                xpp.setInput(mInputStream, null);
-
-                // Ensure this is a GPX file
-                int eventType = xpp.getEventType();
-                if (eventType != XmlPullParser.START_DOCUMENT) {
-                    if (BuildConfig.DEBUG) Log.d(TAG, "Invalid GPX file");
-                    return null;
-                }
-                eventType = xpp.next();
-                if (eventType != XmlPullParser.START_TAG || !xpp.getName().equalsIgnoreCase("gpx")) {
-                    if (BuildConfig.DEBUG) Log.d(TAG, "Invalid GPX file");
-                    return null;
-                }
-
-                // Parse points
-                mPointsList = new ArrayList<>();
-                eventType = xpp.next();
-                Point temporaryPoint = null;
-                String currentTag = null;
-                while (eventType != XmlPullParser.END_DOCUMENT) {
-                    if (eventType == XmlPullParser.START_TAG
-                            && xpp.getName().equalsIgnoreCase("wpt")) {
-                        // <wpt>: create a new Point
-                        temporaryPoint = new Point();
-                        temporaryPoint.setLatitude(Double.parseDouble(xpp.getAttributeValue(null, "lat")));
-                        temporaryPoint.setLongitude(Double.parseDouble(xpp.getAttributeValue(null, "lon")));
-                    } else if (eventType == XmlPullParser.END_TAG
-                            && xpp.getName().equalsIgnoreCase("wpt")) {
-                        // </wpt>: add the new Point to the list
-                        if (temporaryPoint != null && temporaryPoint.isValid()) {
-                            mPointsList.add(temporaryPoint);
-                        }
-                        temporaryPoint = null;
-                    } else if (eventType == XmlPullParser.START_TAG
-                            && (xpp.getName().equalsIgnoreCase("name") || xpp.getName().equalsIgnoreCase("ele") || xpp.getName().equalsIgnoreCase("desc"))) {
-                        // <name> or <ele> or <desc>
-                        currentTag = xpp.getName();
-                    } else if (eventType == XmlPullParser.END_TAG
-                            && (xpp.getName().equalsIgnoreCase("name") || xpp.getName().equalsIgnoreCase("ele") || xpp.getName().equalsIgnoreCase("desc"))) {
-                        // </name> or </ele> or </desc>
-                        currentTag = null;
-                    } else if (eventType == XmlPullParser.TEXT) {
-                        // Text node
-                        if (currentTag != null && temporaryPoint != null) {
-                            if (currentTag.equals("name")) {
-                                temporaryPoint.setName(xpp.getText());
-                            } else if (currentTag.equals("ele")) {
-                                temporaryPoint.setAltitude((int) Double.parseDouble(xpp.getText()));
-                            } else if (currentTag.equals("desc")) {
-                                temporaryPoint.setDescription(xpp.getText());
-                            }
+                while (!isCancelled()) {
+                    // Wait for a batch for a limited time only, so that a cancellation is taken into account without waiting for the parser
+                    final List<Point> batch = mBatchesQueue.poll(GPX_IMPORT_POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    if (batch == null) {
+                        // The parser thread has died without ending the GPX file
+                        if (!parserThread.isAlive() && mBatchesQueue.isEmpty()) {
+                            break;
                         }
+                        continue;
                     }
-                    eventType = xpp.next();
+                    if (batch == mEndOfGpx) {
+                        break;
+                    }
+                    for (Point point : batch) {
+                        bulkInserter.insert(point);
+                    }
+                    publishProgress(mParsedPointsNumber, bulkInserter.getInsertedPointsNumber());
                 }
-            } catch (XmlPullParserException | IOException e) {
+            } catch (InterruptedException e) {
                 e.printStackTrace();
+            } finally {
+                // Stop the parser if the import has been cancelled, and commit the points inserted so far
+                parserThread.interrupt();
+                mImportedPointsNumber = bulkInserter.finish();
             }
             return null;
         }
 
+        @Override
+        protected void onProgressUpdate(Long... values) {
+            mListener.onGpxImportProgress(values[0], values[1]);
+        }
+
         @Override
         protected void onPostExecute(Void aVoid) {
-            mListener.onGpxParsed(mPointsList);
+            mGpxImporter = null;
+            if (mIsValidGpx) {
+                mListener.onGpxImported(mImportedPointsNumber);
+            } else {
+                mListener.onGpxInvalid();
+            }
+        }
+
+        @Override
+        protected void onCancelled(Void aVoid) {
+            mGpxImporter = null;
+            mListener.onGpxImported(mImportedPointsNumber);
         }
     }
 }
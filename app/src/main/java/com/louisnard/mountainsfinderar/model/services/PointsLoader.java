@@ -0,0 +1,286 @@
+package com.louisnard.mountainsfinderar.model.services;
+
+import android.location.Location;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.Process;
+import android.util.Log;
+
+import com.louisnard.mountainsfinderar.BuildConfig;
+import com.louisnard.mountainsfinderar.model.database.ARDbHelper;
+import com.louisnard.mountainsfinderar.model.database.PointRepository;
+import com.louisnard.mountainsfinderar.model.database.PointsTileCache;
+import com.louisnard.mountainsfinderar.model.objects.HorizonProfile;
+import com.louisnard.mountainsfinderar.model.objects.Point;
+import com.louisnard.mountainsfinderar.model.objects.PointStore;
+import com.louisnard.mountainsfinderar.model.objects.PointsSnapshot;
+
+import java.io.File;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that loads the points around the user location on a background thread, and publishes them to the UI thread as {@link PointsSnapshot}s.<br>
+ *
+ * The points are read only when the user has moved far enough from the location of the last reading. Otherwise, only their azimuths, distances and vertical angles are recalculated.<br>
+ * They are read from a {@link PointRepository}: by default, a {@link PointsTileCache} reading only the tiles that are not cached yet from the database. The points ahead of the user are prefetched after each reading.<br>
+ * When an {@link ElevationModel} is available, the terrain {@link HorizonProfile} is calculated for each user location, and the points hidden by the terrain are marked as such.<br>
+ * Location updates are coalesced: when a newer location is requested, the pending loads are dropped, the running database query is cancelled and the results of the obsolete loads are never published.<br>
+ *
+ * A single loader thread is used for the whole life of the {@link PointsLoader}, from the first {@link #start()} to {@link #release()}: a load still running when the loader is stopped and restarted
+ * runs to its end before the next one, so that the points repository and buffers are never accessed by two loads at a time.<br>
+ *
+ * {@link #start()}, {@link #stop()}, {@link #release()}, {@link #loadPointsAround(Point)} and {@link #cancel()} must be called from the UI thread, where the {@link PointsLoaderListener} is notified.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class PointsLoader {
+
+    // Tag
+    private static final String TAG = PointsLoader.class.getSimpleName();
+
+    // Points repository, only accessed from the loader thread
+    private final PointRepository mPointRepository;
+    // The radius of the area around the user location where the points are searched, in meters
+    private final int mSearchDistance;
+    // The minimum distance the user must have moved from the location of the last database reading to reload the points, in meters
+    private final int mReloadDistance;
+
+    // Terrain, or null if no elevation model is available
+    private final ElevationModel mElevationModel;
+    private volatile HorizonCalculator mHorizonCalculator;
+
+    // Threads: the loader thread is created by the first start() and quit by release()
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private HandlerThread mLoaderThread;
+    private Handler mLoaderHandler;
+
+    // The generation of the last requested load: the loads and results of older generations are obsolete
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    // The database query running on the loader thread, if any
+    private volatile CancellationSignal mRunningQuery;
+
+    // Points, only accessed from the loader thread
+    private PointStore mPoints;
+    private Location mLocationAtLastDbReading;
+
+    // Listener
+    private final PointsLoaderListener mListener;
+
+    /**
+     * Interface definition for {@link PointsLoader} callbacks.
+     */
+    public interface PointsLoaderListener {
+        /**
+         * Called on the UI thread when the points around the last requested user location have been loaded.
+         * @param pointsSnapshot the {@link PointsSnapshot} of the points around the user location.
+         */
+        void onPointsLoaded(PointsSnapshot pointsSnapshot);
+    }
+
+    /**
+     * Constructs a new instance of {@link PointsLoader}.
+     * @param dbHelper the {@link ARDbHelper} to read the points from.
+     * @param searchDistance the radius of the area around the user location where the points are searched, in meters.
+     * @param reloadDistance the minimum distance the user must have moved from the location of the last database reading to reload the points, in meters.
+     * @param listener the {@link PointsLoaderListener} to notify of the loaded points.
+     */
+    public PointsLoader(ARDbHelper dbHelper, int searchDistance, int reloadDistance, PointsLoaderListener listener) {
+        this(dbHelper, null, searchDistance, reloadDistance, listener);
+    }
+
+    /**
+     * Constructs a new instance of {@link PointsLoader} hiding the points occluded by the terrain.
+     * @param dbHelper the {@link ARDbHelper} to read the points from.
+     * @param elevationModelDirectory the directory containing the {@link ElevationModel} tiles, or <b>null</b> if all points are visible.
+     * @param searchDistance the radius of the area around the user location where the points are searched, in meters.
+     * @param reloadDistance the minimum distance the user must have moved from the location of the last database reading to reload the points, in meters.
+     * @param listener the {@link PointsLoaderListener} to notify of the loaded points.
+     */
+    public PointsLoader(ARDbHelper dbHelper, File elevationModelDirectory, int searchDistance, int reloadDistance, PointsLoaderListener listener) {
+        this(new PointsTileCache(dbHelper), elevationModelDirectory, searchDistance, reloadDistance, listener);
+    }
+
+    /**
+     * Constructs a new instance of {@link PointsLoader} reading the points from the given {@link PointRepository}, and hiding the points occluded by the terrain.
+     * @param pointRepository the {@link PointRepository} to read the points from. Only accessed from the loader thread once given.
+     * @param elevationModelDirectory the directory containing the {@link ElevationModel} tiles, or <b>null</b> if all points are visible.
+     * @param searchDistance the radius of the area around the user location where the points are searched, in meters.
+     * @param reloadDistance the minimum distance the user must have moved from the location of the last reading to reload the points, in meters.
+     * @param listener the {@link PointsLoaderListener} to notify of the loaded points.
+     */
+    public PointsLoader(PointRepository pointRepository, File elevationModelDirectory, int searchDistance, int reloadDistance, PointsLoaderListener listener) {
+        mPointRepository = pointRepository;
+        mElevationModel = elevationModelDirectory != null ? new ElevationModel(elevationModelDirectory) : null;
+        mSearchDistance = searchDistance;
+        mReloadDistance = reloadDistance;
+        mListener = listener;
+    }
+
+    /**
+     * Starts the loader thread, unless it is already running.<br>
+     * Must be called in {@link android.app.Activity#onResume()}.
+     */
+    public void start() {
+        if (mLoaderThread == null) {
+            mLoaderThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            mLoaderThread.start();
+            mLoaderHandler = new Handler(mLoaderThread.getLooper());
+        }
+        if (mElevationModel != null && mHorizonCalculator == null) {
+            mHorizonCalculator = new HorizonCalculator(mElevationModel);
+        }
+    }
+
+    /**
+     * Cancels the pending and running loads. The loader thread is kept for the next {@link #start()}.<br>
+     * Must be called in {@link android.app.Activity#onPause()}.
+     */
+    public void stop() {
+        cancel();
+    }
+
+    /**
+     * Cancels the pending and running loads, and quits the loader thread once the running load, if any, is over.<br>
+     * Must be called once the {@link PointsLoader} is not needed anymore, for instance in {@link android.app.Activity#onDestroy()}.
+     */
+    public void release() {
+        cancel();
+        final HorizonCalculator horizonCalculator = mHorizonCalculator;
+        mHorizonCalculator = null;
+        if (mLoaderThread != null) {
+            // The horizon calculator threads are stopped on the loader thread, after the running load which may still use them
+            if (horizonCalculator != null) {
+                mLoaderHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        horizonCalculator.shutdown();
+                    }
+                });
+            }
+            mLoaderThread.quitSafely();
+            mLoaderThread = null;
+            mLoaderHandler = null;
+        } else if (horizonCalculator != null) {
+            horizonCalculator.shutdown();
+        }
+    }
+
+    /**
+     * Cancels the pending and running loads: their results will not be published.
+     */
+    public void cancel() {
+        mGeneration.incrementAndGet();
+        if (mLoaderHandler != null) {
+            mLoaderHandler.removeCallbacksAndMessages(null);
+        }
+        final CancellationSignal runningQuery = mRunningQuery;
+        if (runningQuery != null) {
+            runningQuery.cancel();
+        }
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Loads the points around the given user location asynchronously, and cancels the previous loads.<br>
+     * The {@link PointsLoaderListener} is notified on the UI thread, unless a newer location is requested in the meantime.
+     * @param userPoint the user location {@link Point}.
+     */
+    public void loadPointsAround(final Point userPoint) {
+        if (mLoaderHandler == null) {
+            if (BuildConfig.DEBUG) Log.d(TAG, "PointsLoader not started");
+            return;
+        }
+        cancel();
+        final int generation = mGeneration.get();
+        mLoaderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                load(userPoint, generation);
+            }
+        });
+    }
+
+    // Load the points around the user location on the loader thread, and publish them if they are not obsolete
+    private void load(Point userPoint, final int generation) {
+        if (generation != mGeneration.get()) {
+            return;
+        }
+
+        // Load points around the user from the repository
+        final Location location = userPoint.getLocation();
+        boolean pointsReloaded = false;
+        if (mPoints == null || mLocationAtLastDbReading == null || mLocationAtLastDbReading.distanceTo(location) > mReloadDistance) {
+            final CancellationSignal cancellationSignal = new CancellationSignal();
+            mRunningQuery = cancellationSignal;
+            try {
+                // A newer location may have been requested before the query was made cancellable
+                if (generation != mGeneration.get()) {
+                    return;
+                }
+                mPoints = mPointRepository.getPointsAround(location, mSearchDistance, cancellationSignal);
+                mLocationAtLastDbReading = location;
+                pointsReloaded = true;
+                if (BuildConfig.DEBUG) Log.d(TAG, "Found " + mPoints.size() + " points around the new user location");
+            } catch (OperationCanceledException e) {
+                if (BuildConfig.DEBUG) Log.d(TAG, "Obsolete points query cancelled");
+                return;
+            } finally {
+                mRunningQuery = null;
+            }
+        }
+
+        // Calculate the terrain horizon around the user location
+        HorizonProfile horizonProfile = null;
+        final HorizonCalculator horizonCalculator = mHorizonCalculator;
+        if (horizonCalculator != null && generation == mGeneration.get()) {
+            try {
+                horizonProfile = horizonCalculator.calculateHorizonProfile(userPoint, mSearchDistance);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RejectedExecutionException e) {
+                if (BuildConfig.DEBUG) Log.d(TAG, "Horizon calculation stopped");
+                return;
+            }
+        }
+
+        // Calculate the points azimuths, distances, vertical angles and visibility from the user location
+        if (generation != mGeneration.get()) {
+            return;
+        }
+        final PointsSnapshot pointsSnapshot = PointService.getPointsSnapshot(userPoint, mPoints, horizonProfile);
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (generation == mGeneration.get()) {
+                    mListener.onPointsLoaded(pointsSnapshot);
+                }
+            }
+        });
+
+        // Once the points are published, prefetch the points ahead of the user for the next readings
+        if (pointsReloaded) {
+            prefetchPointsAhead(location, generation);
+        }
+    }
+
+    // Prefetch the points ahead of the user on the loader thread, unless a newer location has been requested
+    private void prefetchPointsAhead(Location location, int generation) {
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+        mRunningQuery = cancellationSignal;
+        try {
+            if (generation != mGeneration.get()) {
+                return;
+            }
+            mPointRepository.prefetchPointsAhead(location, mSearchDistance, cancellationSignal);
+        } catch (OperationCanceledException e) {
+            if (BuildConfig.DEBUG) Log.d(TAG, "Obsolete points prefetch cancelled");
+        } finally {
+            mRunningQuery = null;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.louisnard.mountainsfinderar.model.services;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.louisnard.mountainsfinderar.BuildConfig;
+import com.louisnard.mountainsfinderar.model.database.ARDbHelper;
+import com.louisnard.mountainsfinderar.model.objects.PointStore;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class that pages through all the points of the database for a list, reading the pages on a background thread as the list scrolls.<br>
+ *
+ * The pages are read by key (see {@link ARDbHelper#getPointsPage(long, int)}): each page starts after the id of the last point of the previous one, whatever its position in the table.<br>
+ * The points are counted as their pages are reached: the list grows page by page as the user scrolls down, and the page following the last displayed one is prefetched.<br>
+ * At most the given number of pages is held in memory: the least recently displayed ones are dropped, and read again by key when they are displayed again.<br>
+ *
+ * All methods must be called from the UI thread, where the {@link PointsPagerListener} is notified.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class PointsPager {
+
+    // Tag
+    private static final String TAG = PointsPager.class.getSimpleName();
+
+    // Database
+    private final ARDbHelper mDbHelper;
+    private final int mPageSize;
+
+    // Threads
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private HandlerThread mLoaderThread;
+    private Handler mLoaderHandler;
+    // The generation of the loads: the results of the loads requested before the last stop() are dropped
+    private int mGeneration;
+
+    // Pages in memory by page index, from the least to the most recently displayed
+    private final Map<Integer, PointStore> mPages;
+    // Pages being read, and pages whose reading has been interrupted by stop() to read again on start()
+    private final Set<Integer> mLoadingPages = new HashSet<>();
+    private final Set<Integer> mInterruptedPages = new HashSet<>();
+    // The id after which each page reached so far starts
+    private final List<Long> mPagesStartIds = new ArrayList<>();
+    // The number of points of the pages reached so far, and whether the last page has been reached
+    private int mCount;
+    private boolean mEndReached;
+
+    // Listener
+    private final PointsPagerListener mListener;
+
+    /**
+     * Interface definition for {@link PointsPager} callbacks.
+     */
+    public interface PointsPagerListener {
+        /**
+         * Called on the UI thread when the points of a page already counted have been read again.
+         * @param positionStart the position of the first point of the page.
+         * @param itemCount the number of points of the page.
+         */
+        void onPointsChanged(int positionStart, int itemCount);
+
+        /**
+         * Called on the UI thread when the points of a new page have been read, and counted at the end of the list.
+         * @param positionStart the position of the first point of the page.
+         * @param itemCount the number of points of the page.
+         */
+        void onPointsInserted(int positionStart, int itemCount);
+    }
+
+    /**
+     * Constructs a new instance of {@link PointsPager}.
+     * @param dbHelper the {@link ARDbHelper} to read the points from.
+     * @param pageSize the number of points per page.
+     * @param maxPagesInMemory the maximum number of pages held in memory. Must be large enough to hold the points displayed at a time, plus the prefetched page.
+     * @param listener the {@link PointsPagerListener} to notify of the read pages.
+     */
+    public PointsPager(ARDbHelper dbHelper, int pageSize, final int maxPagesInMemory, PointsPagerListener listener) {
+        mDbHelper = dbHelper;
+        mPageSize = pageSize;
+        mListener = listener;
+        mPages = new LinkedHashMap<Integer, PointStore>(maxPagesInMemory + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, PointStore> eldest) {
+                return size() > maxPagesInMemory;
+            }
+        };
+        mPagesStartIds.add(-1L);
+    }
+
+    /**
+     * Starts the loader thread, and reads the first page if it has not been read yet, and the pages whose reading has been interrupted by {@link #stop()}.<br>
+     * Must be called in {@link android.app.Activity#onResume()}.
+     */
+    public void start() {
+        if (mLoaderThread == null) {
+            mLoaderThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            mLoaderThread.start();
+            mLoaderHandler = new Handler(mLoaderThread.getLooper());
+        }
+        if (mCount == 0 && !mEndReached) {
+            mInterruptedPages.add(0);
+        }
+        for (int page : mInterruptedPages) {
+            loadPage(page);
+        }
+        mInterruptedPages.clear();
+    }
+
+    /**
+     * Drops the pending reads and stops the loader thread. The pages already read are kept.<br>
+     * Must be called in {@link android.app.Activity#onPause()}.
+     */
+    public void stop() {
+        mGeneration++;
+        mInterruptedPages.addAll(mLoadingPages);
+        mLoadingPages.clear();
+        mMainHandler.removeCallbacksAndMessages(null);
+        if (mLoaderThread != null) {
+            mLoaderThread.quit();
+            mLoaderThread = null;
+            mLoaderHandler = null;
+        }
+    }
+
+    /**
+     * Gets the number of points of the pages reached so far.
+     * @return the number of points.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Gets the name of the point at the given position, and prefetches the next page.<br>
+     * If the page of the point is not in memory, it is read in the background and <b>null</b> is returned: {@link PointsPagerListener#onPointsChanged(int, int)} is called once it is read.
+     * @param position the position of the point, lower than {@link #getCount()}.
+     * @return the name, or <b>null</b> if the point is not in memory yet.
+     */
+    public String getName(int position) {
+        final int page = position / mPageSize;
+        final PointStore points = mPages.get(page);
+        if (points == null) {
+            loadPage(page);
+        }
+        loadPage(page + 1);
+        return points != null ? points.getName(position - page * mPageSize) : null;
+    }
+
+    // Read the given page in the background, unless it is in memory or already being read, or its start is not known yet
+    private void loadPage(final int page) {
+        if (mLoaderHandler == null || page >= mPagesStartIds.size() || mPages.containsKey(page) || mLoadingPages.contains(page)) {
+            return;
+        }
+        mLoadingPages.add(page);
+        final long afterId = mPagesStartIds.get(page);
+        final int generation = mGeneration;
+        mLoaderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final PointStore points = mDbHelper.getPointsPage(afterId, mPageSize);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) {
+                            onPageLoaded(page, points);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // Store a page read in the background, and count its points if it is the last page reached so far
+    private void onPageLoaded(int page, PointStore points) {
+        mLoadingPages.remove(page);
+        mPages.put(page, points);
+        if (BuildConfig.DEBUG) Log.d(TAG, "Page " + page + " read: " + points.size() + " points");
+        if (page * mPageSize < mCount) {
+            mListener.onPointsChanged(page * mPageSize, points.size());
+            return;
+        }
+        if (points.size() == mPageSize) {
+            mPagesStartIds.add(points.getId(mPageSize - 1));
+        } else {
+            mEndReached = true;
+        }
+        if (points.size() > 0) {
+            mCount += points.size();
+            mListener.onPointsInserted(page * mPageSize, points.size());
+        }
+    }
+}
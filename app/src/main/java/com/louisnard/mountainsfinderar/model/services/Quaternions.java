@@ -0,0 +1,159 @@
+package com.louisnard.mountainsfinderar.model.services;
+
+/**
+ * Unit quaternions operations, shared by the orientation filters and predictor.<br>
+ *
+ * The quaternions are held in float arrays, in the {@link android.hardware.Sensor#TYPE_ROTATION_VECTOR} order: x, y, z, w.
+ * The results are written in arrays given by the caller, which may be one of the operands: no operation allocates.
+ *
+ * @author Alexandre Louisnard
+ */
+
+final class Quaternions {
+
+    // Constants
+    // Below this rotation angle, in radians, sin(angle) is approximated by angle
+    private static final double SMALL_ANGLE = 1e-6;
+    // Above this cosine of the angle between two quaternions, they are linearly interpolated
+    private static final float SLERP_LINEAR_THRESHOLD = 0.9995f;
+
+    // Private constructor
+    private Quaternions() {}
+
+    /**
+     * Calculates the dot product of two quaternions.
+     * @param a the first quaternion.
+     * @param b the second quaternion.
+     * @return the dot product: the cosine of half the angle between the two rotations, if they are unit quaternions.
+     */
+    static float dot(float[] a, float[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2] + a[3] * b[3];
+    }
+
+    /**
+     * Calculates the conjugate of a quaternion: the inverse rotation, if it is a unit quaternion.
+     * @param q the quaternion.
+     * @param result the conjugate, filled by this method.
+     */
+    static void conjugate(float[] q, float[] result) {
+        result[0] = -q[0];
+        result[1] = -q[1];
+        result[2] = -q[2];
+        result[3] = q[3];
+    }
+
+    /**
+     * Calculates the product a * b of two quaternions: the rotation b followed by the rotation a.
+     * @param a the first quaternion.
+     * @param b the second quaternion.
+     * @param result the product, filled by this method.
+     */
+    static void multiply(float[] a, float[] b, float[] result) {
+        final float x = a[3] * b[0] + a[0] * b[3] + a[1] * b[2] - a[2] * b[1];
+        final float y = a[3] * b[1] - a[0] * b[2] + a[1] * b[3] + a[2] * b[0];
+        final float z = a[3] * b[2] + a[0] * b[1] - a[1] * b[0] + a[2] * b[3];
+        final float w = a[3] * b[3] - a[0] * b[0] - a[1] * b[1] - a[2] * b[2];
+        result[0] = x;
+        result[1] = y;
+        result[2] = z;
+        result[3] = w;
+    }
+
+    /**
+     * Normalizes a quaternion in place.
+     * @param q the quaternion.
+     */
+    static void normalize(float[] q) {
+        final float norm = (float) Math.sqrt(dot(q, q));
+        for (int i = 0; i < 4; i++) {
+            q[i] /= norm;
+        }
+    }
+
+    /**
+     * Rotates a device rotation by a constant angular velocity during a time interval: result = q * exp(angularVelocity * interval / 2).
+     * @param q the rotation, from the device coordinate system to the world coordinate system.
+     * @param angularVelocity the angular velocity in the device coordinate system, in radians per second, as the {@link android.hardware.Sensor#TYPE_GYROSCOPE} values.
+     * @param intervalSeconds the time interval, in seconds.
+     * @param result the rotated rotation, filled by this method.
+     * @param scratch a quaternion buffer used by this method.
+     */
+    static void integrate(float[] q, float[] angularVelocity, double intervalSeconds, float[] result, float[] scratch) {
+        final double angularSpeed = Math.sqrt(angularVelocity[0] * angularVelocity[0] + angularVelocity[1] * angularVelocity[1] + angularVelocity[2] * angularVelocity[2]);
+        final double halfAngle = angularSpeed * intervalSeconds / 2;
+        if (halfAngle < SMALL_ANGLE) {
+            System.arraycopy(q, 0, result, 0, 4);
+            return;
+        }
+        final double axisScale = Math.sin(halfAngle) / angularSpeed;
+        scratch[0] = (float) (angularVelocity[0] * axisScale);
+        scratch[1] = (float) (angularVelocity[1] * axisScale);
+        scratch[2] = (float) (angularVelocity[2] * axisScale);
+        scratch[3] = (float) Math.cos(halfAngle);
+        multiply(q, scratch, result);
+        normalize(result);
+    }
+
+    /**
+     * Spherical linear interpolation between two rotations, along the shortest path.
+     * @param a the rotation at t = 0.
+     * @param b the rotation at t = 1.
+     * @param t the interpolation factor, from 0 to 1.
+     * @param result the interpolated rotation, filled by this method. May be a, but not b.
+     */
+    static void slerp(float[] a, float[] b, float t, float[] result) {
+        // q and -q are the same rotation: interpolate towards the closest one
+        float cos = dot(a, b);
+        final float sign = cos < 0 ? -1 : 1;
+        cos *= sign;
+        float weightA = 1 - t;
+        float weightB = t * sign;
+        if (cos < SLERP_LINEAR_THRESHOLD) {
+            final double angle = Math.acos(cos);
+            final double sin = Math.sin(angle);
+            weightA = (float) (Math.sin((1 - t) * angle) / sin);
+            weightB = (float) (Math.sin(t * angle) / sin) * sign;
+        }
+        for (int i = 0; i < 4; i++) {
+            result[i] = weightA * a[i] + weightB * b[i];
+        }
+        normalize(result);
+    }
+
+    /**
+     * Calculates the unit quaternion of a 3x3 rotation matrix, the inverse of {@link OrientationCalculator#getRotationMatrixFromVector(float[], float[])}.
+     * @param r the 3x3 rotation matrix.
+     * @param q the quaternion x, y, z, w, filled by this method.
+     */
+    static void fromRotationMatrix(float[] r, float[] q) {
+        // Use the largest component as the divisor, for numerical stability
+        final float trace = r[0] + r[4] + r[8];
+        if (trace > 0) {
+            final float s = (float) Math.sqrt(trace + 1) * 2;
+            q[3] = 0.25f * s;
+            q[0] = (r[7] - r[5]) / s;
+            q[1] = (r[2] - r[6]) / s;
+            q[2] = (r[3] - r[1]) / s;
+        } else if (r[0] > r[4] && r[0] > r[8]) {
+            final float s = (float) Math.sqrt(1 + r[0] - r[4] - r[8]) * 2;
+            q[3] = (r[7] - r[5]) / s;
+            q[0] = 0.25f * s;
+            q[1] = (r[1] + r[3]) / s;
+            q[2] = (r[2] + r[6]) / s;
+        } else if (r[4] > r[8]) {
+            final float s = (float) Math.sqrt(1 + r[4] - r[0] - r[8]) * 2;
+            q[3] = (r[2] - r[6]) / s;
+            q[0] = (r[1] + r[3]) / s;
+            q[1] = 0.25f * s;
+            q[2] = (r[5] + r[7]) / s;
+        } else {
+            final float s = (float) Math.sqrt(1 + r[8] - r[0] - r[4]) * 2;
+            q[3] = (r[3] - r[1]) / s;
+            q[0] = (r[2] + r[6]) / s;
+            q[1] = (r[5] + r[7]) / s;
+            q[2] = 0.25f * s;
+        }
+        // The rotation matrix may not be exactly orthonormal
+        normalize(q);
+    }
+}
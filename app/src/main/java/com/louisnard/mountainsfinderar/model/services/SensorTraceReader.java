@@ -0,0 +1,125 @@
+package com.louisnard.mountainsfinderar.model.services;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Class that reads a binary sensor trace, written by {@link SensorTraceWriter} while the {@link Compass} is recording (see {@link Compass#startRecording(java.io.File)}).<br>
+ *
+ * The trace is made of, in big-endian order:
+ * <ul>
+ *     <li>a header: the magic number {@link #MAGIC} and the format version {@link #VERSION}, as 32-bit integers.</li>
+ *     <li>the sensor events records, in the order they have been received: the sensor type as an 8-bit integer, the timestamp in nanoseconds as a 64-bit integer,
+ *     the number of values as an 8-bit integer (at most {@link #MAX_VALUES_NUMBER}) and the values as 32-bit floats.</li>
+ * </ul>
+ * The events are read one at a time by {@link #next()}, into buffers allocated once per number of values: reading a trace does not allocate any object per event.<br>
+ * A record truncated at the end of the trace, such as when the application has been killed while recording, is ignored.<br>
+ *
+ * Not thread-safe.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class SensorTraceReader implements Closeable {
+
+    // Constants
+    // The magic number at the beginning of a sensor trace: "MFST"
+    static final int MAGIC = 0x4D465354;
+    // The version of the sensor trace format
+    static final int VERSION = 1;
+    // The maximum number of values of a sensor event record, as in SensorEvent#values
+    static final int MAX_VALUES_NUMBER = 16;
+
+    // Input
+    private final DataInputStream mInput;
+
+    // Current event
+    private int mSensorType;
+    private long mTimestampNanos;
+    private float[] mValues;
+    // Values buffers, indexed by number of values, allocated when first needed
+    private final float[][] mValuesBuffers = new float[MAX_VALUES_NUMBER + 1][];
+
+    /**
+     * Opens a sensor trace, and reads its header.
+     * @param inputStream the sensor trace input stream, written by {@link SensorTraceWriter}. It is buffered by this reader.
+     * @throws IOException if the stream cannot be read or is not a valid sensor trace.
+     */
+    public SensorTraceReader(InputStream inputStream) throws IOException {
+        mInput = new DataInputStream(new BufferedInputStream(inputStream));
+        try {
+            if (mInput.readInt() != MAGIC || mInput.readInt() != VERSION) {
+                throw new IOException("Invalid sensor trace header");
+            }
+        } catch (EOFException e) {
+            throw new IOException("Invalid sensor trace header", e);
+        }
+    }
+
+    /**
+     * Reads the next sensor event, made available by {@link #getSensorType()}, {@link #getTimestampNanos()} and {@link #getValues()}.
+     * @return <b>true</b> if an event has been read, <b>false</b> at the end of the trace.
+     * @throws IOException if the trace cannot be read or is corrupted.
+     */
+    public boolean next() throws IOException {
+        final int sensorType = mInput.read();
+        if (sensorType < 0) {
+            return false;
+        }
+        try {
+            final long timestampNanos = mInput.readLong();
+            final int valuesNumber = mInput.readUnsignedByte();
+            if (valuesNumber > MAX_VALUES_NUMBER) {
+                throw new IOException("Invalid sensor trace record: " + valuesNumber + " values");
+            }
+            if (mValuesBuffers[valuesNumber] == null) {
+                mValuesBuffers[valuesNumber] = new float[valuesNumber];
+            }
+            final float[] values = mValuesBuffers[valuesNumber];
+            for (int i = 0; i < valuesNumber; i++) {
+                values[i] = mInput.readFloat();
+            }
+            mSensorType = sensorType;
+            mTimestampNanos = timestampNanos;
+            mValues = values;
+            return true;
+        } catch (EOFException e) {
+            // Truncated last record
+            return false;
+        }
+    }
+
+    /**
+     * Gets the sensor type of the current event, such as {@link android.hardware.Sensor#TYPE_ACCELEROMETER}.
+     * @return the sensor type.
+     */
+    public int getSensorType() {
+        return mSensorType;
+    }
+
+    /**
+     * Gets the timestamp of the current event, as {@link android.hardware.SensorEvent#timestamp}.
+     * @return the timestamp in nanoseconds.
+     */
+    public long getTimestampNanos() {
+        return mTimestampNanos;
+    }
+
+    /**
+     * Gets the values of the current event, as {@link android.hardware.SensorEvent#values}.<br>
+     * The array is reused by the next events with the same number of values: it must not be kept.
+     * @return the values.
+     */
+    public float[] getValues() {
+        return mValues;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInput.close();
+    }
+}
@@ -0,0 +1,64 @@
+package com.louisnard.mountainsfinderar.model.services;
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Class that replays a sensor trace, recorded by the {@link Compass} (see {@link Compass#startRecording(java.io.File)}), through an {@link OrientationCalculator}.<br>
+ *
+ * The events are fed to {@link OrientationCalculator#updateSensor(int, long, float[])}, as the {@link Compass} does with the live sensor events: the same orientation pipeline runs without Android,
+ * so that the behaviour of the compass can be reproduced, and the {@link OrientationFilter}s accuracy and cost benchmarked, in local unit tests.<br>
+ *
+ * Not thread-safe.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class SensorTraceReplayer {
+
+    // Orientation
+    private final OrientationCalculator mOrientationCalculator;
+
+    /**
+     * Interface definition for {@link SensorTraceReplayer} callbacks.
+     */
+    public interface ReplayListener {
+        /**
+         * Called after each replayed event that has updated the orientation.
+         * @param timestampNanos the event timestamp, in nanoseconds.
+         * @param azimuth the azimuth of the device, in degrees, see {@link OrientationCalculator#getAzimuthDegrees()}.
+         * @param pitch the pitch of the device, in degrees, see {@link OrientationCalculator#getPitchDegrees()}.
+         * @param roll the roll of the device, in degrees, see {@link OrientationCalculator#getRollDegrees()}.
+         */
+        void onOrientationChanged(long timestampNanos, float azimuth, float pitch, float roll);
+    }
+
+    /**
+     * Creates a {@link SensorTraceReplayer}.
+     * @param orientationCalculator the {@link OrientationCalculator} to feed with the events, set up with its {@link OrientationFilter} and screen rotation.
+     */
+    public SensorTraceReplayer(OrientationCalculator orientationCalculator) {
+        mOrientationCalculator = orientationCalculator;
+    }
+
+    /**
+     * Replays all the remaining events of a sensor trace.<br>
+     * Does not allocate any object per event.
+     * @param sensorTraceReader the {@link SensorTraceReader} to read the events from. It is not closed.
+     * @param replayListener the listener notified of each orientation update, or <b>null</b>.
+     * @return the number of replayed events, including the ignored ones.
+     * @throws IOException if the trace cannot be read.
+     */
+    public int replay(SensorTraceReader sensorTraceReader, @Nullable ReplayListener replayListener) throws IOException {
+        int eventsNumber = 0;
+        while (sensorTraceReader.next()) {
+            eventsNumber++;
+            final long timestampNanos = sensorTraceReader.getTimestampNanos();
+            if (mOrientationCalculator.updateSensor(sensorTraceReader.getSensorType(), timestampNanos, sensorTraceReader.getValues()) && replayListener != null) {
+                replayListener.onOrientationChanged(timestampNanos, mOrientationCalculator.getAzimuthDegrees(), mOrientationCalculator.getPitchDegrees(), mOrientationCalculator.getRollDegrees());
+            }
+        }
+        return eventsNumber;
+    }
+}
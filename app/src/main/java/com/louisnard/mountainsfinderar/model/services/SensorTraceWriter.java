@@ -0,0 +1,72 @@
+package com.louisnard.mountainsfinderar.model.services;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Class that writes a binary sensor trace, read by {@link SensorTraceReader} (see {@link SensorTraceReader} for the trace format).<br>
+ *
+ * It is called at the sensors rate by the {@link Compass} while recording, so it does not allocate any object per event: the records are written to a buffered stream, flushed to the underlying stream only when the buffer is full.<br>
+ *
+ * Not thread-safe: the {@link Compass} calls it from a synchronized block.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class SensorTraceWriter implements Closeable {
+
+    // Constants
+    // The size of the output buffer, in bytes: about 3000 events of 3 values
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Output
+    private final DataOutputStream mOutput;
+
+    /**
+     * Starts a sensor trace, and writes its header.
+     * @param outputStream the sensor trace output stream. It is buffered by this writer.
+     * @throws IOException if the stream cannot be written.
+     */
+    public SensorTraceWriter(OutputStream outputStream) throws IOException {
+        mOutput = new DataOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE));
+        mOutput.writeInt(SensorTraceReader.MAGIC);
+        mOutput.writeInt(SensorTraceReader.VERSION);
+    }
+
+    /**
+     * Writes a sensor event.
+     * @param sensorType the sensor type, such as {@link android.hardware.Sensor#TYPE_ACCELEROMETER}, from 0 to 255.
+     * @param timestampNanos the sensor event timestamp, in nanoseconds.
+     * @param values the sensor event values. Only the first {@link SensorTraceReader#MAX_VALUES_NUMBER} values are written.
+     * @throws IOException if the stream cannot be written.
+     */
+    public void write(int sensorType, long timestampNanos, float[] values) throws IOException {
+        final int valuesNumber = Math.min(values.length, SensorTraceReader.MAX_VALUES_NUMBER);
+        mOutput.writeByte(sensorType);
+        mOutput.writeLong(timestampNanos);
+        mOutput.writeByte(valuesNumber);
+        for (int i = 0; i < valuesNumber; i++) {
+            mOutput.writeFloat(values[i]);
+        }
+    }
+
+    /**
+     * Gets the number of bytes written so far, header included.
+     * @return the size of the trace in bytes.
+     */
+    public int size() {
+        return mOutput.size();
+    }
+
+    /**
+     * Flushes the buffered events, and closes the underlying stream.
+     * @throws IOException if the stream cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        mOutput.close();
+    }
+}
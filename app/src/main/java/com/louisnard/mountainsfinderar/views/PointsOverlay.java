@@ -0,0 +1,39 @@
+package com.louisnard.mountainsfinderar.views;
+
+import com.louisnard.mountainsfinderar.model.objects.PointsSnapshot;
+
+/**
+ * Interface of the views that display the points around the user location over the camera preview.<br>
+ *
+ * Implemented by {@link PointsView}, which draws on the UI thread, and {@link PointsSurfaceView}, which draws on its own render thread.<br>
+ * All methods must be called from the UI thread.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public interface PointsOverlay {
+
+    /**
+     * Sets the device camera angles of view.<br>
+     * This angle of view is used to calculate the placement of the points.<br>
+     * If not set, default values are those of a Nexus 4: horizontal angle = 54.8° and vertical angle = 42.5°.
+     * @param horizontalCameraAngle the horizontal angle of view in degrees such as 0° < angle < 180°.
+     * @param verticalCameraAngle the vertical angle of view in degrees such as 0° < angle < 180°.
+     */
+    void setCameraAngles(float horizontalCameraAngle, float verticalCameraAngle);
+
+    /**
+     * Sets the points that will be displayed.
+     * @param pointsSnapshot the {@link PointsSnapshot} of the points around the user location, or <b>null</b> to display no points.
+     */
+    void setPoints(PointsSnapshot pointsSnapshot);
+
+    /**
+     * Updates the orientation: azimuth, pitch and roll of the device.<br>
+     * On them depends which points will be displayed and where will they be.
+     * @param azimuth the azimuth in degrees.
+     * @param pitch the vertical inclination in degrees.
+     * @param roll the horizontal inclination in degrees.
+     */
+    void updateOrientation(float azimuth, float pitch, float roll);
+}
@@ -0,0 +1,350 @@
+package com.louisnard.mountainsfinderar.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import com.louisnard.mountainsfinderar.BuildConfig;
+import com.louisnard.mountainsfinderar.R;
+import com.louisnard.mountainsfinderar.model.objects.AzimuthIndex;
+import com.louisnard.mountainsfinderar.model.objects.PointStore;
+import com.louisnard.mountainsfinderar.model.objects.PointsSnapshot;
+
+/**
+ * Class that draws points from a {@link PointsSnapshot} on a {@link Canvas} depending on their azimuth and on the device orientation.<br>
+ *
+ * Shared by {@link PointsView}, which draws on the UI thread, and {@link PointsSurfaceView}, which draws on its own render thread.<br>
+ * A {@link PointsRenderer} is not thread-safe: all its methods must be called from the thread that draws.
+ *
+ * @author Alexandre Louisnard
+ */
+
+class PointsRenderer {
+
+    // Tag
+    private static final String TAG = PointsRenderer.class.getSimpleName();
+
+    // Constants
+    // The size of the arrow placemark
+    private static final int ARROW_SIZE = 100;
+    // The distance step in meters under which a point label is not rebuilt when the user moves
+    private static final int LABEL_DISTANCE_BUCKET_SIZE = 100;
+    // Default camera angles of view, in degrees: those of a Nexus 4 camera
+    static final float DEFAULT_HORIZONTAL_CAMERA_ANGLE = 54.8f;
+    static final float DEFAULT_VERTICAL_CAMERA_ANGLE = 42.5f;
+
+    // Points, with their azimuth, distance and vertical angle from the user location, calculated once per user location update
+    private PointsSnapshot mPointsSnapshot;
+
+    // Device and view orientations
+    private float mAzimuthViewLeft;
+    private float mAzimuthViewRight;
+    private float mVerticalAngleViewTop;
+    private float mVerticalAngleViewBottom;
+    private float mRoll;
+
+    // Screen to camera angles ratios: the number of pixels on the screen associated to a one degree variation on the camera
+    private float mHorizontalCameraAngle = DEFAULT_HORIZONTAL_CAMERA_ANGLE;
+    private float mVerticalCameraAngle = DEFAULT_VERTICAL_CAMERA_ANGLE;
+    private float mHorizontalPixelsPerDegree;
+    private float mVerticalPixelsPerDegree;
+
+    // Size of the drawing area in pixels
+    private int mWidth;
+    private int mHeight;
+
+    // Drawing
+    private final TextPaint mTextPaint;
+    private final Drawable mArrowDrawable;
+    private final String mPointText;
+    // Pixel coordinates of the point being drawn, reused for all the points of all the frames
+    private final int[] mPixelCoordinates = new int[2];
+    // Point labels laid out once and reused across frames, by point id
+    private LongSparseArray<PointLabel> mPointLabels = new LongSparseArray<>();
+
+    // Point label: a text layout, valid as long as the point distance stays in the same distance bucket
+    private static class PointLabel {
+        private final int mDistanceBucket;
+        private final StaticLayout mLayout;
+
+        private PointLabel(int distanceBucket, StaticLayout layout) {
+            mDistanceBucket = distanceBucket;
+            mLayout = layout;
+        }
+    }
+
+    /**
+     * Constructs a new instance of {@link PointsRenderer}.
+     * @param context the {@link Context} to get the drawing resources from.
+     */
+    PointsRenderer(Context context) {
+        // Paint
+        mTextPaint = new TextPaint();
+        mTextPaint.setColor(Color.BLACK);
+        mTextPaint.setTextAlign(Paint.Align.CENTER);
+        mTextPaint.setStrokeWidth(2);
+        mTextPaint.setTextSize(25);
+        mTextPaint.setStyle(Paint.Style.STROKE);
+        // Arrow: mutated so that its bounds are not shared with the other users of the resource, which may draw on another thread
+        mArrowDrawable = context.getResources().getDrawable(R.drawable.ic_arrow_drop_down_24dp, null).mutate();
+        mPointText = context.getString(R.string.points_view_display_information);
+    }
+
+    /**
+     * Sets the device camera angles of view.<br>
+     * This angle of view is used to calculate the placement of the points.<br>
+     * If not set, default values are those of a Nexus 4: horizontal angle = 54.8° and vertical angle = 42.5°.
+     * @param horizontalCameraAngle the horizontal angle of view in degrees such as 0° < angle < 180°.
+     * @param verticalCameraAngle the vertical angle of view in degrees such as 0° < angle < 180°.
+     */
+    void setCameraAngles(float horizontalCameraAngle, float verticalCameraAngle) {
+        // Camera angles
+        if (horizontalCameraAngle > 0 && horizontalCameraAngle < 180 && verticalCameraAngle > 0 && verticalCameraAngle < 180) {
+            mHorizontalCameraAngle = horizontalCameraAngle;
+            mVerticalCameraAngle = verticalCameraAngle;
+            // Force recalculation of pixels per degree in draw()
+            mHorizontalPixelsPerDegree = 0;
+            mVerticalPixelsPerDegree = 0;
+        } else {
+            if (BuildConfig.DEBUG) Log.d(TAG, "Invalid camera angles, must be: 0° < angle < 180°");
+        }
+    }
+
+    /**
+     * Sets the size of the drawing area.<br>
+     * The labels cache is cleared, since the labels are laid out with the drawing area width.
+     * @param width the width in pixels.
+     * @param height the height in pixels.
+     */
+    void setSize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        // Force recalculation of pixels per degree in draw()
+        mHorizontalPixelsPerDegree = 0;
+        mVerticalPixelsPerDegree = 0;
+        mPointLabels.clear();
+    }
+
+    /**
+     * Sets the points to draw.<br>
+     * The labels of the points that are not in the {@link PointsSnapshot} anymore are evicted from the labels cache.
+     * @param pointsSnapshot the {@link PointsSnapshot} of the points around the user location, or <b>null</b> to draw no points.
+     */
+    void setPoints(PointsSnapshot pointsSnapshot) {
+        mPointsSnapshot = pointsSnapshot;
+        evictPointLabels(pointsSnapshot != null ? pointsSnapshot.getPoints() : null);
+    }
+
+    /**
+     * Gets the points to draw.
+     * @return the {@link PointsSnapshot}, or <b>null</b> if there are no points to draw.
+     */
+    PointsSnapshot getPoints() {
+        return mPointsSnapshot;
+    }
+
+    /**
+     * Sets the orientation: azimuth, pitch and roll of the device.
+     * @param azimuth the azimuth in degrees.
+     * @param pitch the vertical inclination in degrees.
+     * @param roll the horizontal inclination in degrees.
+     */
+    void setOrientation(float azimuth, float pitch, float roll) {
+        mAzimuthViewLeft = (azimuth - mHorizontalCameraAngle / 2);
+        mAzimuthViewRight = (azimuth + mHorizontalCameraAngle / 2);
+        // When the device screen is held perpendicular to the ground, its camera pointing horizontally towards the landscape:
+        //      - The device pitch = -90°.
+        //      - The vertical angle of the points displayed at the center of the view is 0°.
+        float verticalAngleViewCenter = -pitch - 90;
+        mVerticalAngleViewTop = verticalAngleViewCenter + mVerticalCameraAngle / 2;
+        mVerticalAngleViewBottom = verticalAngleViewCenter - mVerticalCameraAngle / 2;
+        mRoll = roll;
+    }
+
+    /**
+     * Draws the visible points on the {@link Canvas}.<br>
+     * The {@link PointsSnapshot} holds the distance and vertical angle of each point, so that only the angles are projected on the screen.
+     * @param canvas the {@link Canvas} to draw on.
+     */
+    void draw(Canvas canvas) {
+        // Scaling: calculate the number of pixels on the screen associated to a 1° angle variation on the camera
+        if(mHorizontalPixelsPerDegree == 0 || mVerticalPixelsPerDegree == 0) {
+            mHorizontalPixelsPerDegree = mWidth / mHorizontalCameraAngle;
+            mVerticalPixelsPerDegree = mHeight / mVerticalCameraAngle;
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "View size in pixels = " + mWidth + "x" + mHeight);
+                Log.d(TAG, "Screen pixels associated to 1° camera angle variation: horizontal=" + mHorizontalPixelsPerDegree + "px/° & vertical=" + mVerticalPixelsPerDegree + "px/°");
+            }
+        }
+
+        // Draw visible points on canvas
+        // Only the points in the azimuth window of the view are visited: the window is split in two slices when it crosses the North (0° / 360°)
+        final PointsSnapshot pointsSnapshot = mPointsSnapshot;
+        if (pointsSnapshot != null && !pointsSnapshot.getPointsByAzimuth().isEmpty()) {
+            if (mAzimuthViewLeft < 0) {
+                drawPoints(canvas, pointsSnapshot, mAzimuthViewLeft + 360, 360);
+                drawPoints(canvas, pointsSnapshot, 0, mAzimuthViewRight);
+            } else if (mAzimuthViewRight > 360) {
+                drawPoints(canvas, pointsSnapshot, mAzimuthViewLeft, 360);
+                drawPoints(canvas, pointsSnapshot, 0, mAzimuthViewRight - 360);
+            } else {
+                drawPoints(canvas, pointsSnapshot, mAzimuthViewLeft, mAzimuthViewRight);
+            }
+        }
+    }
+
+    // Keep only the labels of the points that are still in the given PointStore
+    private void evictPointLabels(PointStore points) {
+        if (points == null || points.isEmpty()) {
+            mPointLabels.clear();
+            return;
+        }
+        final LongSparseArray<PointLabel> pointLabels = new LongSparseArray<>(Math.min(points.size(), mPointLabels.size()));
+        for (int i = 0; i < points.size() && pointLabels.size() < mPointLabels.size(); i++) {
+            final PointLabel pointLabel = mPointLabels.get(points.getId(i));
+            if (pointLabel != null) {
+                pointLabels.put(points.getId(i), pointLabel);
+            }
+        }
+        mPointLabels = pointLabels;
+    }
+
+    /**
+     * Returns the label of the point at the given index, from the labels cache if its distance bucket has not changed.<br>
+     * Formatting the text and measuring its layout is only done when the point is first displayed, or when the user has moved by more than {@link #LABEL_DISTANCE_BUCKET_SIZE} relatively to the point.
+     * @param pointsSnapshot the {@link PointsSnapshot} being drawn.
+     * @param index the point index in the {@link PointsSnapshot}.
+     * @return the {@link StaticLayout} of the point label.
+     */
+    private StaticLayout getPointLabelLayout(PointsSnapshot pointsSnapshot, int index) {
+        final PointStore points = pointsSnapshot.getPoints();
+        final long id = points.getId(index);
+        final int distanceBucket = pointsSnapshot.getDistance(index) / LABEL_DISTANCE_BUCKET_SIZE;
+        PointLabel pointLabel = mPointLabels.get(id);
+        if (pointLabel == null || pointLabel.mDistanceBucket != distanceBucket) {
+            final float distanceKm = distanceBucket * LABEL_DISTANCE_BUCKET_SIZE / 1000f;
+            final String pointText = String.format(mPointText, pointsSnapshot.getName(index), points.getAltitude(index), distanceKm);
+            pointLabel = new PointLabel(distanceBucket, new StaticLayout(pointText, mTextPaint, mWidth, Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false));
+            mPointLabels.put(id, pointLabel);
+        }
+        return pointLabel.mLayout;
+    }
+
+    /**
+     * Draws the visible points whose azimuth is in [{@param azimuthFrom}, {@param azimuthTo}[ on the {@link Canvas}.
+     * @param canvas the {@link Canvas} to draw on.
+     * @param pointsSnapshot the {@link PointsSnapshot} to draw.
+     * @param azimuthFrom the minimum azimuth in degrees, included.
+     * @param azimuthTo the maximum azimuth in degrees, excluded.
+     */
+    private void drawPoints(Canvas canvas, PointsSnapshot pointsSnapshot, float azimuthFrom, float azimuthTo) {
+        final AzimuthIndex pointsByAzimuth = pointsSnapshot.getPointsByAzimuth();
+        final int positionTo = pointsByAzimuth.getFirstPosition(azimuthTo);
+        for (int position = pointsByAzimuth.getFirstPosition(azimuthFrom); position < positionTo; position++) {
+            final int index = pointsByAzimuth.getPointIndex(position);
+            // Skip the points hidden by the terrain
+            if (!pointsSnapshot.isVisible(index)) {
+                continue;
+            }
+            final int[] xy = mPixelCoordinates;
+            if (getPixelCoordinates(pointsByAzimuth.getAzimuth(position), pointsSnapshot.getVerticalAngle(index), xy)) {
+                // Draw arrow
+                mArrowDrawable.setBounds(xy[0] - ARROW_SIZE/2, xy[1] - ARROW_SIZE, xy[0] + ARROW_SIZE/2, xy[1]);
+                mArrowDrawable.draw(canvas);
+                // Draw text
+                canvas.save();
+                canvas.translate(xy[0], xy[1] - ARROW_SIZE - 50);
+                getPointLabelLayout(pointsSnapshot, index).draw(canvas);
+                canvas.restore();
+            }
+        }
+    }
+
+    /**
+     * Calculates the x and y coordinates in pixels for a given azimuth and vertical angle of a point.<br>
+     * Coordinates are following the usual Android system:<br>
+     *     1) (0,0) is top left corner.<br>
+     *     2) (maxX,0) is top right corner.<br>
+     *     3) (0,maxY) is bottom left corner.<br>
+     *     4) (maxX,maxY) is bottom right corner.<br>
+     * @param azimuth the azimuth of the point, in degrees from 0° to 360°.
+     * @param verticalAngle the vertical angle of the point, in degrees from -90° to 90°.
+     * @param xy the {@link int[]} coordinates, filled by this method such as:<br>
+     *     xy[0] the x coordinate in pixels.<br>
+     *     xy[1] the y coordinate in pixels.
+     * @return <b>true</b> if the point is on the screen, <b>false</b> otherwise: the coordinates are then left unspecified.
+     */
+    private boolean getPixelCoordinates(float azimuth, float verticalAngle, int[] xy) {
+        // Coordinates in pixels
+        int x;
+        int y;
+
+        // Invalid azimuth
+        if (azimuth < 0 || azimuth >= 360) {
+            return false;
+        }
+
+        // Invalid vertical angle or not visible
+        if (verticalAngle < -90 || verticalAngle > 90 || verticalAngle > mVerticalAngleViewTop || verticalAngle < mVerticalAngleViewBottom) {
+            return false;
+        }
+
+        // x coordinates calculation from azimuth
+        // Normal case : 0 < azimuthFrom < azimuth < azimuthTo < 360
+        if (azimuth > mAzimuthViewLeft && azimuth < mAzimuthViewRight) {
+            x = (int) (mHorizontalPixelsPerDegree * (azimuth - mAzimuthViewLeft - (mAzimuthViewRight - mAzimuthViewLeft) / 2) + mWidth / 2);
+        // Special case 1 : azimuthFrom < 0 < azimuth < azimuthTo < 360
+        } else if (mAzimuthViewLeft < 0 && azimuth > 360 + mAzimuthViewLeft) {
+            x = (int) (mHorizontalPixelsPerDegree * (azimuth - 360 - mAzimuthViewLeft - (mAzimuthViewRight - mAzimuthViewLeft) / 2) + mWidth / 2);
+        // Special case 2 : 0 < azimuthFrom < azimuth < 360 < azimuthTo
+        } else if (mAzimuthViewRight > 360 && azimuth < mAzimuthViewRight - 360) {
+            x = (int) (mHorizontalPixelsPerDegree * (azimuth + 360 - mAzimuthViewLeft - (mAzimuthViewRight - mAzimuthViewLeft) / 2) + mWidth / 2);
+        // Azimuth not visible
+        } else {
+            return false;
+        }
+
+        // y coordinates calculation from vertical angle
+        y = (int) ((mVerticalAngleViewTop - verticalAngle) * mVerticalPixelsPerDegree);
+
+        return applyRollOnPixelCoordinates(x, y, xy);
+    }
+
+    /**
+     * Calculates the pixel coordinates variation taking into account the roll of the device.
+     * @param x the original x coordinate in pixels.
+     * @param y the original y coordinate in pixels.
+     * @param xy the {@link int[]} coordinates after applying the roll, filled by this method such as:<br>
+     *     xy[0] the x coordinate in pixels.<br>
+     *     xy[1] the y coordinate in pixels.
+     * @return <b>true</b> if the point is on the screen, <b>false</b> otherwise: the coordinates are then left unspecified.
+     */
+    private boolean applyRollOnPixelCoordinates(int x, int y, int[] xy) {
+        // Center the frame in the middle of the screen (to apply the rotation from the center)
+        x -= mWidth / 2;
+        y -= mHeight / 2;
+
+        // Apply rotation to the coordinates with the device roll value
+        // Rotation around the center of the frame:
+        // x' = x cos a - y sin a
+        // y' = y cos a + x sin a
+        double rollRadians = Math.toRadians(mRoll);
+        int x2 = (int) (x * Math.cos(-rollRadians) - y * Math.sin(-rollRadians));
+        int y2 = (int) (y * Math.cos(rollRadians) - x * Math.sin(rollRadians));
+
+        // Center the frame in the top left corner (Android pixels coordinate system)
+        x2 += mWidth / 2;
+        y2 += mHeight / 2;
+
+        xy[0] = x2;
+        xy[1] = y2;
+        return x2 >= 0 && y2 >= 0 && x2 <= mWidth && y2 <= mHeight;
+    }
+}
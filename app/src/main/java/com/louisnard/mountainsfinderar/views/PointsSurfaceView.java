@@ -0,0 +1,214 @@
+package com.louisnard.mountainsfinderar.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.os.Process;
+import android.support.annotation.Nullable;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import com.louisnard.mountainsfinderar.BuildConfig;
+import com.louisnard.mountainsfinderar.model.objects.PointStore;
+import com.louisnard.mountainsfinderar.model.objects.PointsSnapshot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Custom {@link SurfaceView} that displays points from a {@link PointStore} depending on their azimuth, drawing them on its own render thread.<br>
+ *
+ * The UI thread only publishes the latest state to draw (orientation, points, camera angles and size) into a single-slot {@link AtomicReference}, without locking nor drawing.<br>
+ * The render thread draws the latest published state at most once per {@link #FRAME_BUDGET_NANOS}: the states published meanwhile are coalesced into the next frame, and it sleeps while nothing changes.<br>
+ *
+ * The camera preview being a {@link android.view.TextureView} drawn in the window, the surface is placed on top of the window: it is also drawn over the other views.
+ *
+ * @author Alexandre Louisnard
+ */
+public class PointsSurfaceView extends SurfaceView implements PointsOverlay, SurfaceHolder.Callback {
+
+    // Tag
+    private static final String TAG = PointsSurfaceView.class.getSimpleName();
+
+    // Constants
+    // The minimum duration between two frames drawn by the render thread, in nanoseconds
+    private static final long FRAME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+
+    // The latest state to draw, published by the UI thread and read by the render thread
+    private final AtomicReference<RenderState> mRenderState = new AtomicReference<>(new RenderState());
+
+    // Render thread, drawing with its own PointsRenderer
+    private final PointsRenderer mRenderer;
+    private RenderThread mRenderThread;
+
+    // Immutable state to draw: each update from the UI thread publishes a copy with the updated values
+    private static class RenderState {
+        private final PointsSnapshot mPointsSnapshot;
+        private final float mAzimuth;
+        private final float mPitch;
+        private final float mRoll;
+        private final float mHorizontalCameraAngle;
+        private final float mVerticalCameraAngle;
+        private final int mWidth;
+        private final int mHeight;
+
+        private RenderState() {
+            this(null, 0, 0, 0, PointsRenderer.DEFAULT_HORIZONTAL_CAMERA_ANGLE, PointsRenderer.DEFAULT_VERTICAL_CAMERA_ANGLE, 0, 0);
+        }
+
+        private RenderState(PointsSnapshot pointsSnapshot, float azimuth, float pitch, float roll, float horizontalCameraAngle, float verticalCameraAngle, int width, int height) {
+            mPointsSnapshot = pointsSnapshot;
+            mAzimuth = azimuth;
+            mPitch = pitch;
+            mRoll = roll;
+            mHorizontalCameraAngle = horizontalCameraAngle;
+            mVerticalCameraAngle = verticalCameraAngle;
+            mWidth = width;
+            mHeight = height;
+        }
+    }
+
+    public PointsSurfaceView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        mRenderer = new PointsRenderer(context);
+        // Transparent surface over the camera preview
+        setZOrderOnTop(true);
+        getHolder().setFormat(PixelFormat.TRANSPARENT);
+        getHolder().addCallback(this);
+    }
+
+    @Override
+    public void setCameraAngles(float horizontalCameraAngle, float verticalCameraAngle) {
+        final RenderState s = mRenderState.get();
+        publish(new RenderState(s.mPointsSnapshot, s.mAzimuth, s.mPitch, s.mRoll, horizontalCameraAngle, verticalCameraAngle, s.mWidth, s.mHeight));
+    }
+
+    @Override
+    public void setPoints(PointsSnapshot pointsSnapshot) {
+        if (BuildConfig.DEBUG) Log.d(TAG, "Updating points list with " + (pointsSnapshot != null ? pointsSnapshot.getPoints().size() : 0) + " points");
+        final RenderState s = mRenderState.get();
+        publish(new RenderState(pointsSnapshot, s.mAzimuth, s.mPitch, s.mRoll, s.mHorizontalCameraAngle, s.mVerticalCameraAngle, s.mWidth, s.mHeight));
+    }
+
+    @Override
+    public void updateOrientation(float azimuth, float pitch, float roll) {
+        final RenderState s = mRenderState.get();
+        publish(new RenderState(s.mPointsSnapshot, azimuth, pitch, roll, s.mHorizontalCameraAngle, s.mVerticalCameraAngle, s.mWidth, s.mHeight));
+    }
+
+    // Publish the state to draw, and wake up the render thread if it is waiting for a change
+    // The state is only written by the UI thread: no compare-and-set is needed
+    private void publish(RenderState renderState) {
+        mRenderState.set(renderState);
+        final RenderThread renderThread = mRenderThread;
+        if (renderThread != null) {
+            LockSupport.unpark(renderThread);
+        }
+    }
+
+    // SurfaceHolder.Callback interface
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        mRenderThread = new RenderThread(holder);
+        mRenderThread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        final RenderState s = mRenderState.get();
+        publish(new RenderState(s.mPointsSnapshot, s.mAzimuth, s.mPitch, s.mRoll, s.mHorizontalCameraAngle, s.mVerticalCameraAngle, width, height));
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        // The surface must not be drawn on anymore when this method returns
+        final RenderThread renderThread = mRenderThread;
+        mRenderThread = null;
+        renderThread.quit();
+        boolean interrupted = false;
+        while (renderThread.isAlive()) {
+            try {
+                renderThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Render thread: draws the latest published state, at most once per frame budget
+    private class RenderThread extends Thread {
+
+        private final SurfaceHolder mSurfaceHolder;
+        private volatile boolean mRunning = true;
+
+        private RenderThread(SurfaceHolder surfaceHolder) {
+            super(TAG);
+            mSurfaceHolder = surfaceHolder;
+        }
+
+        private void quit() {
+            mRunning = false;
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+            RenderState drawnState = null;
+            while (mRunning) {
+                final RenderState renderState = mRenderState.get();
+                // Nothing has changed since the last frame: wait for the next publication
+                if (renderState == drawnState) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                final long frameStartNanos = System.nanoTime();
+                drawFrame(renderState, drawnState);
+                drawnState = renderState;
+                // Wait until the end of the frame budget
+                long remainingNanos = frameStartNanos + FRAME_BUDGET_NANOS - System.nanoTime();
+                while (mRunning && remainingNanos > 0) {
+                    LockSupport.parkNanos(this, remainingNanos);
+                    remainingNanos = frameStartNanos + FRAME_BUDGET_NANOS - System.nanoTime();
+                }
+            }
+        }
+
+        // Apply the changes of the state to the renderer, and draw it on the surface
+        private void drawFrame(RenderState renderState, RenderState drawnState) {
+            if (drawnState == null || renderState.mWidth != drawnState.mWidth || renderState.mHeight != drawnState.mHeight) {
+                mRenderer.setSize(renderState.mWidth, renderState.mHeight);
+            }
+            if (drawnState == null || renderState.mHorizontalCameraAngle != drawnState.mHorizontalCameraAngle || renderState.mVerticalCameraAngle != drawnState.mVerticalCameraAngle) {
+                mRenderer.setCameraAngles(renderState.mHorizontalCameraAngle, renderState.mVerticalCameraAngle);
+            }
+            if (drawnState == null || renderState.mPointsSnapshot != drawnState.mPointsSnapshot) {
+                mRenderer.setPoints(renderState.mPointsSnapshot);
+            }
+            mRenderer.setOrientation(renderState.mAzimuth, renderState.mPitch, renderState.mRoll);
+
+            // The surface size is not known yet
+            if (renderState.mWidth == 0 || renderState.mHeight == 0) {
+                return;
+            }
+            final Canvas canvas = mSurfaceHolder.lockCanvas();
+            if (canvas == null) {
+                return;
+            }
+            try {
+                canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                mRenderer.draw(canvas);
+            } finally {
+                mSurfaceHolder.unlockCanvasAndPost(canvas);
+            }
+        }
+    }
+}
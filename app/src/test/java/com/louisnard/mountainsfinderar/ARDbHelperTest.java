@@ -0,0 +1,36 @@
+package com.louisnard.mountainsfinderar;
+
+import com.louisnard.mountainsfinderar.model.database.ARDbHelper;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * Unit testing for the {@link ARDbHelper} methods that do not need a database.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class ARDbHelperTest {
+
+    /**
+     * Tests {@link ARDbHelper#getSearchQuery(String)}.
+     */
+    @Test
+    public void test_getSearchQuery() {
+        assertEquals("dent* bl*", ARDbHelper.getSearchQuery("dent bl"));
+        assertEquals("dent* bl*", ARDbHelper.getSearchQuery("  Dent   BL "));
+        assertEquals("saint* jean* d* arves*", ARDbHelper.getSearchQuery("Saint-Jean-d'Arves"));
+        assertEquals("écrins*", ARDbHelper.getSearchQuery("Écrins"));
+        // Decomposed accents are composed, so that they are not read as separators
+        assertEquals("écrins*", ARDbHelper.getSearchQuery("E\u0301crins"));
+        assertEquals("k2*", ARDbHelper.getSearchQuery("K2"));
+        // Query operators and syntax are never passed through
+        assertEquals("pic* or* aiguille*", ARDbHelper.getSearchQuery("pic OR aiguille"));
+        assertEquals("mont* blanc*", ARDbHelper.getSearchQuery("\"mont\" -blanc*"));
+        assertNull(ARDbHelper.getSearchQuery(""));
+        assertNull(ARDbHelper.getSearchQuery(" *-' "));
+    }
+}
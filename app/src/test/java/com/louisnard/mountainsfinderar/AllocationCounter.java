@@ -0,0 +1,44 @@
+package com.louisnard.mountainsfinderar;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Counter of the memory allocated by the current thread, to check that a code path does not allocate any object.<br>
+ * Uses the HotSpot per-thread allocation counter: the calling test is skipped on JVMs that do not provide it.
+ *
+ * @author Alexandre Louisnard
+ */
+
+final class AllocationCounter {
+
+    private final com.sun.management.ThreadMXBean mThreadMXBean;
+    private final long mThreadId;
+
+    private AllocationCounter(com.sun.management.ThreadMXBean threadMXBean) {
+        mThreadMXBean = threadMXBean;
+        mThreadId = Thread.currentThread().getId();
+    }
+
+    /**
+     * Creates an {@link AllocationCounter} for the current thread, or skips the calling test if the JVM cannot count the allocations.
+     * @return the {@link AllocationCounter}.
+     */
+    static AllocationCounter forCurrentThread() {
+        final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue("No per-thread allocation counter", threadMXBean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocationCounter = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue("Per-thread allocation counter not supported", allocationCounter.isThreadAllocatedMemorySupported());
+        allocationCounter.setThreadAllocatedMemoryEnabled(true);
+        return new AllocationCounter(allocationCounter);
+    }
+
+    /**
+     * Returns the total memory allocated so far by the thread that created this counter.
+     * @return the number of allocated bytes.
+     */
+    long getAllocatedBytes() {
+        return mThreadMXBean.getThreadAllocatedBytes(mThreadId);
+    }
+}
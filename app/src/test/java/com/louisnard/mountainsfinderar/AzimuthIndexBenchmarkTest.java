@@ -0,0 +1,78 @@
+package com.louisnard.mountainsfinderar;
+
+import com.louisnard.mountainsfinderar.model.objects.AzimuthIndex;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Benchmark of {@link AzimuthIndex} versus the {@link TreeMap} keyed by azimuth that it replaces, for growing numbers of points.<br>
+ * Measures the time to build the index and to query the azimuth window of a camera view. Results are written to the standard output.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class AzimuthIndexBenchmarkTest {
+
+    // Constants
+    private static final int[] POINTS_NUMBERS = new int[] {1000, 10000, 100000};
+    private static final int RUNS_NUMBER = 21;
+    // The horizontal angle of view of a Nexus 4 camera
+    private static final float VIEW_ANGLE = 54.8f;
+
+    private final Random mRandom = new Random(42);
+
+    /**
+     * Benchmarks building and querying an {@link AzimuthIndex} and a {@link TreeMap} with the same azimuths.
+     */
+    @Test
+    public void benchmark_buildAndQuery() {
+        for (int pointsNumber : POINTS_NUMBERS) {
+            // Azimuths are rounded to 0.01° as many real peaks share the same bearing at this precision
+            final float[] azimuths = new float[pointsNumber];
+            for (int i = 0; i < pointsNumber; i++) {
+                azimuths[i] = Math.round(mRandom.nextFloat() * 36000) / 100f % 360;
+            }
+
+            final long[] treeMapNanos = new long[RUNS_NUMBER];
+            final long[] azimuthIndexNanos = new long[RUNS_NUMBER];
+            int treeMapVisited = 0;
+            int azimuthIndexVisited = 0;
+            SortedMap<Float, Integer> treeMap = null;
+            for (int run = 0; run < RUNS_NUMBER; run++) {
+                final float azimuthFrom = mRandom.nextFloat() * (360 - VIEW_ANGLE);
+
+                long start = System.nanoTime();
+                treeMap = new TreeMap<>();
+                for (int i = 0; i < pointsNumber; i++) {
+                    treeMap.put(azimuths[i], i);
+                }
+                treeMapVisited = 0;
+                for (Integer index : treeMap.subMap(azimuthFrom, azimuthFrom + VIEW_ANGLE).values()) {
+                    treeMapVisited += index >= 0 ? 1 : 0;
+                }
+                treeMapNanos[run] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                final AzimuthIndex azimuthIndex = new AzimuthIndex(azimuths, pointsNumber);
+                azimuthIndexVisited = 0;
+                final int positionTo = azimuthIndex.getFirstPosition(azimuthFrom + VIEW_ANGLE);
+                for (int position = azimuthIndex.getFirstPosition(azimuthFrom); position < positionTo; position++) {
+                    azimuthIndexVisited += azimuthIndex.getPointIndex(position) >= 0 ? 1 : 0;
+                }
+                azimuthIndexNanos[run] = System.nanoTime() - start;
+            }
+
+            System.out.println(pointsNumber + " points: TreeMap " + BenchmarkUtils.median(treeMapNanos) / 1000 + "µs (" + (pointsNumber - treeMap.size()) + " points lost), "
+                    + "AzimuthIndex " + BenchmarkUtils.median(azimuthIndexNanos) / 1000 + "µs (" + azimuthIndexVisited + " points in view, " + treeMapVisited + " with TreeMap)");
+            assertTrue(azimuthIndexVisited >= treeMapVisited);
+            assertEquals(pointsNumber, new AzimuthIndex(azimuths, pointsNumber).size());
+        }
+    }
+}
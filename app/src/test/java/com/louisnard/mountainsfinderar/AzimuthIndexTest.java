@@ -0,0 +1,71 @@
+package com.louisnard.mountainsfinderar;
+
+import com.louisnard.mountainsfinderar.model.objects.AzimuthIndex;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit testing for the {@link AzimuthIndex} class.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class AzimuthIndexTest {
+
+    /**
+     * Tests that {@link AzimuthIndex} sorts the points by ascending azimuth and keeps the points with the same azimuth.
+     */
+    @Test
+    public void test_sort() {
+        final float[] azimuths = new float[] {350.5f, 12, 180, 12, 0, -0f, 359.9f, 12};
+        final AzimuthIndex index = new AzimuthIndex(azimuths, azimuths.length);
+        assertEquals(azimuths.length, index.size());
+        for (int position = 1; position < index.size(); position++) {
+            assertTrue(index.getAzimuth(position - 1) <= index.getAzimuth(position));
+        }
+        // Points with the same azimuth are all kept, by ascending point index
+        assertEquals(12f, index.getAzimuth(2));
+        assertEquals(1, index.getPointIndex(2));
+        assertEquals(3, index.getPointIndex(3));
+        assertEquals(7, index.getPointIndex(4));
+        // Each point index appears once
+        final boolean[] found = new boolean[azimuths.length];
+        for (int position = 0; position < index.size(); position++) {
+            final int pointIndex = index.getPointIndex(position);
+            assertEquals(azimuths[pointIndex], index.getAzimuth(position), 0);
+            found[pointIndex] = true;
+        }
+        for (boolean pointFound : found) {
+            assertTrue(pointFound);
+        }
+
+        // Only the given size is indexed
+        assertEquals(3, new AzimuthIndex(azimuths, 3).size());
+        assertTrue(new AzimuthIndex(azimuths, 0).isEmpty());
+    }
+
+    /**
+     * Tests {@link AzimuthIndex#getFirstPosition(float)} range queries.
+     */
+    @Test
+    public void test_getFirstPosition() {
+        final float[] azimuths = new float[] {10, 20, 20, 30, 300};
+        final AzimuthIndex index = new AzimuthIndex(azimuths, azimuths.length);
+        assertEquals(0, index.getFirstPosition(0));
+        assertEquals(0, index.getFirstPosition(10));
+        assertEquals(1, index.getFirstPosition(10.5f));
+        assertEquals(1, index.getFirstPosition(20));
+        assertEquals(3, index.getFirstPosition(25));
+        assertEquals(4, index.getFirstPosition(300));
+        assertEquals(5, index.getFirstPosition(360));
+
+        // Points in [20, 30[
+        assertEquals(2, index.getFirstPosition(30) - index.getFirstPosition(20));
+
+        // Empty index
+        assertEquals(0, new AzimuthIndex(new float[0], 0).getFirstPosition(180));
+    }
+}
@@ -0,0 +1,26 @@
+package com.louisnard.mountainsfinderar;
+
+import java.util.Arrays;
+
+/**
+ * Utility methods shared by the benchmarks.
+ *
+ * @author Alexandre Louisnard
+ */
+
+final class BenchmarkUtils {
+
+    private BenchmarkUtils() {
+    }
+
+    /**
+     * Returns the median of the given durations, which are left unchanged.
+     * @param durations the durations, in any unit.
+     * @return the median duration, in the same unit.
+     */
+    static long median(long[] durations) {
+        final long[] sorted = durations.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,97 @@
+package com.louisnard.mountainsfinderar;
+
+import com.louisnard.mountainsfinderar.model.services.GeoMath;
+import com.louisnard.mountainsfinderar.model.services.PointService;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Benchmark of the {@link GeoMath} distance and bearing calculations versus Vincenty's formulae of {@link VincentyReference}, as used by {@link android.location.Location}.<br>
+ * Measures the time to calculate the distance and bearing of the points around the user, after a warm-up. Results are written to the standard output.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class GeoMathBenchmarkTest {
+
+    // Constants
+    private static final int POINTS_NUMBER = 10000;
+    private static final int WARM_UP_RUNS_NUMBER = 20;
+    private static final int RUNS_NUMBER = 21;
+    // The points are spread around the user up to this distance, in meters
+    private static final int SEARCH_DISTANCE = 10000;
+    private static final double USER_LATITUDE = 45.1916626;
+    private static final double USER_LONGITUDE = 5.7385538;
+
+    private final Random mRandom = new Random(42);
+
+    // Sink for the results, so that the calculations are not optimized away
+    private double mSink;
+
+    /**
+     * Benchmarks the distance and bearing calculations of {@link #POINTS_NUMBER} points around the user with each model.
+     */
+    @Test
+    public void benchmark_distanceAndBearing() {
+        final double[] latitudes = new double[POINTS_NUMBER];
+        final double[] longitudes = new double[POINTS_NUMBER];
+        for (int i = 0; i < POINTS_NUMBER; i++) {
+            final double[] point = PointService.getDestination(USER_LATITUDE, USER_LONGITUDE, mRandom.nextDouble() * 360, mRandom.nextDouble() * SEARCH_DISTANCE);
+            latitudes[i] = point[0];
+            longitudes[i] = point[1];
+        }
+
+        final long[] vincentyNanos = new long[RUNS_NUMBER];
+        final long[] haversineNanos = new long[RUNS_NUMBER];
+        final long[] localNanos = new long[RUNS_NUMBER];
+        for (int run = -WARM_UP_RUNS_NUMBER; run < RUNS_NUMBER; run++) {
+            final long vincenty = runVincenty(latitudes, longitudes);
+            final long haversine = runHaversine(latitudes, longitudes);
+            final long local = runLocal(latitudes, longitudes);
+            if (run >= 0) {
+                vincentyNanos[run] = vincenty;
+                haversineNanos[run] = haversine;
+                localNanos[run] = local;
+            }
+        }
+
+        final long vincentyMedian = BenchmarkUtils.median(vincentyNanos);
+        final long haversineMedian = BenchmarkUtils.median(haversineNanos);
+        final long localMedian = BenchmarkUtils.median(localNanos);
+        System.out.println(POINTS_NUMBER + " points: Vincenty " + vincentyMedian / 1000 + "µs, haversine " + haversineMedian / 1000 + "µs (x" + (float) vincentyMedian / haversineMedian + "), "
+                + "local tangent plane " + localMedian / 1000 + "µs (x" + (float) vincentyMedian / localMedian + ")");
+        assertTrue(mSink != 0);
+    }
+
+    private long runVincenty(double[] latitudes, double[] longitudes) {
+        final double[] results = new double[2];
+        final long start = System.nanoTime();
+        for (int i = 0; i < POINTS_NUMBER; i++) {
+            VincentyReference.computeDistanceAndBearing(USER_LATITUDE, USER_LONGITUDE, latitudes[i], longitudes[i], results);
+            mSink += results[0] + results[1];
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long runHaversine(double[] latitudes, double[] longitudes) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < POINTS_NUMBER; i++) {
+            mSink += GeoMath.getHaversineDistance(USER_LATITUDE, USER_LONGITUDE, latitudes[i], longitudes[i])
+                    + GeoMath.getHaversineBearing(USER_LATITUDE, USER_LONGITUDE, latitudes[i], longitudes[i]);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long runLocal(double[] latitudes, double[] longitudes) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < POINTS_NUMBER; i++) {
+            mSink += GeoMath.getLocalDistance(USER_LATITUDE, USER_LONGITUDE, latitudes[i], longitudes[i])
+                    + GeoMath.getLocalBearing(USER_LATITUDE, USER_LONGITUDE, latitudes[i], longitudes[i]);
+        }
+        return System.nanoTime() - start;
+    }
+}
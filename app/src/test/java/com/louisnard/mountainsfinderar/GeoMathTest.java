@@ -0,0 +1,132 @@
+package com.louisnard.mountainsfinderar;
+
+import com.louisnard.mountainsfinderar.model.services.GeoMath;
+import com.louisnard.mountainsfinderar.model.services.PointService;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit testing for the {@link GeoMath} class, against the WGS84 ellipsoid distances and bearings of {@link VincentyReference}.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class GeoMathTest {
+
+    // Constants
+    private static final int PAIRS_NUMBER = 100000;
+    // The local tangent plane model is checked up to this distance, in meters
+    private static final double LOCAL_MAX_DISTANCE = 100000;
+    // The maximum absolute latitude of the checked coordinates, in degrees
+    private static final double MAX_LATITUDE = 80;
+    // The local tangent plane model is checked up to this absolute latitude, in degrees
+    private static final double LOCAL_MAX_LATITUDE = 70;
+
+    private final Random mRandom = new Random(42);
+
+    /**
+     * Tests static method {@link GeoMath#getLongitudeDelta(double, double)}.
+     */
+    @Test
+    public void test_getLongitudeDelta() {
+        assertEquals(1, GeoMath.getLongitudeDelta(5, 6), 0);
+        assertEquals(-1, GeoMath.getLongitudeDelta(6, 5), 0);
+        assertEquals(2, GeoMath.getLongitudeDelta(179, -179), 1e-9);
+        assertEquals(-2, GeoMath.getLongitudeDelta(-179, 179), 1e-9);
+        assertEquals(0, GeoMath.getLongitudeDelta(-180, 180) % 360, 0);
+    }
+
+    /**
+     * Tests static methods {@link GeoMath#getHaversineDistance(double, double, double, double)} and {@link GeoMath#getHaversineBearing(double, double, double, double)} on known values.
+     */
+    @Test
+    public void test_haversine() {
+        // Along the equator and along a meridian, 1° is worth 1/360 of the Earth circumference
+        final double oneDegree = 2 * Math.PI * PointService.EARTH_RADIUS / 360;
+        assertEquals(oneDegree, GeoMath.getHaversineDistance(0, 0, 0, 1), 1e-6);
+        assertEquals(oneDegree, GeoMath.getHaversineDistance(45, 5, 46, 5), 1e-6);
+        assertEquals(2 * oneDegree, GeoMath.getHaversineDistance(0, 179, 0, -179), 1e-6);
+        assertEquals(180 * oneDegree, GeoMath.getHaversineDistance(90, 0, -90, 0), 1e-6);
+        assertEquals(0, GeoMath.getHaversineDistance(45.2417, 5.7436, 45.2417, 5.7436), 0);
+
+        assertEquals(90, GeoMath.getHaversineBearing(0, 0, 0, 1), 1e-9);
+        assertEquals(0, GeoMath.getHaversineBearing(45, 5, 46, 5), 1e-9);
+        assertEquals(180, GeoMath.getHaversineBearing(46, 5, 45, 5), 1e-9);
+        assertEquals(270, GeoMath.getHaversineBearing(0, 1, 0, 0), 1e-9);
+        assertEquals(90, GeoMath.getHaversineBearing(0, 179.5, 0, -179.5), 1e-9);
+    }
+
+    /**
+     * Tests the documented error bound of the spherical model versus the WGS84 ellipsoid, at any distance.
+     */
+    @Test
+    public void test_haversine_errorBound() {
+        final double[] reference = new double[2];
+        double maxRelativeError = 0;
+        for (int i = 0; i < PAIRS_NUMBER; i++) {
+            final double latitude1 = randomLatitude();
+            final double longitude1 = randomLongitude();
+            final double latitude2 = randomLatitude();
+            final double longitude2 = randomLongitude();
+            VincentyReference.computeDistanceAndBearing(latitude1, longitude1, latitude2, longitude2, reference);
+            if (reference[0] > 1000) {
+                final double distance = GeoMath.getHaversineDistance(latitude1, longitude1, latitude2, longitude2);
+                maxRelativeError = Math.max(maxRelativeError, Math.abs(distance - reference[0]) / reference[0]);
+            }
+        }
+        assertTrue("Maximum relative distance error: " + maxRelativeError, maxRelativeError < 0.006);
+    }
+
+    /**
+     * Tests static methods {@link GeoMath#getLocalDistance(double, double, double, double)} and {@link GeoMath#getLocalBearing(double, double, double, double)} on known values.
+     */
+    @Test
+    public void test_local() {
+        assertEquals(0, GeoMath.getLocalDistance(45.2417, 5.7436, 45.2417, 5.7436), 0);
+        assertEquals(90, GeoMath.getLocalBearing(0, 0, 0, 0.01), 1e-9);
+        assertEquals(0, GeoMath.getLocalBearing(45, 5, 45.01, 5), 1e-9);
+        assertEquals(180, GeoMath.getLocalBearing(45.01, 5, 45, 5), 1e-9);
+        assertEquals(270, GeoMath.getLocalBearing(0, 0.01, 0, 0), 1e-9);
+        // Across the antimeridian
+        assertEquals(90, GeoMath.getLocalBearing(0, 179.99, 0, -179.99), 1e-9);
+        assertEquals(GeoMath.getLocalDistance(-17, 179.98, -17, 180), GeoMath.getLocalDistance(-17, 179.99, -17, -179.99), 1e-6);
+    }
+
+    /**
+     * Tests the documented error bound of the local tangent plane model versus the WGS84 ellipsoid, up to {@link #LOCAL_MAX_DISTANCE} and {@link #LOCAL_MAX_LATITUDE}.
+     */
+    @Test
+    public void test_local_errorBound() {
+        final double[] reference = new double[2];
+        double maxRelativeError = 0;
+        double maxBearingError = 0;
+        for (int i = 0; i < PAIRS_NUMBER; i++) {
+            final double latitude1 = (mRandom.nextDouble() * 2 - 1) * LOCAL_MAX_LATITUDE;
+            final double longitude1 = randomLongitude();
+            final double[] destination = PointService.getDestination(latitude1, longitude1, mRandom.nextDouble() * 360, mRandom.nextDouble() * LOCAL_MAX_DISTANCE);
+            VincentyReference.computeDistanceAndBearing(latitude1, longitude1, destination[0], destination[1], reference);
+            // Below 1 km, the absolute error is negligible anyway
+            if (reference[0] > 1000) {
+                final double distance = GeoMath.getLocalDistance(latitude1, longitude1, destination[0], destination[1]);
+                maxRelativeError = Math.max(maxRelativeError, Math.abs(distance - reference[0]) / reference[0]);
+                final double bearing = GeoMath.getLocalBearing(latitude1, longitude1, destination[0], destination[1]);
+                maxBearingError = Math.max(maxBearingError, Math.abs(GeoMath.getLongitudeDelta(reference[1], bearing)));
+            }
+        }
+        assertTrue("Maximum relative distance error: " + maxRelativeError, maxRelativeError < 0.0001);
+        assertTrue("Maximum bearing error: " + maxBearingError + "°", maxBearingError < 0.01);
+    }
+
+    private double randomLatitude() {
+        return (mRandom.nextDouble() * 2 - 1) * MAX_LATITUDE;
+    }
+
+    private double randomLongitude() {
+        return mRandom.nextDouble() * 360 - 180;
+    }
+}
@@ -0,0 +1,136 @@
+package com.louisnard.mountainsfinderar;
+
+import com.louisnard.mountainsfinderar.model.objects.HorizonProfile;
+import com.louisnard.mountainsfinderar.model.services.ElevationModel;
+import com.louisnard.mountainsfinderar.model.services.GeoMath;
+import com.louisnard.mountainsfinderar.model.services.HorizonCalculator;
+import com.louisnard.mountainsfinderar.model.services.PointService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit testing for the {@link ElevationModel} and {@link HorizonCalculator} classes, on a synthetic SRTM tile.<br>
+ * The tile is flat at {@link #GROUND_ELEVATION}, with an east-west ridge at {@link #RIDGE_ELEVATION} between {@link #RIDGE_LATITUDE_MIN} and {@link #RIDGE_LATITUDE_MAX}.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class HorizonCalculatorTest {
+
+    // Constants
+    private static final int SAMPLES_PER_SIDE = 1201;
+    private static final short GROUND_ELEVATION = 200;
+    private static final short RIDGE_ELEVATION = 1500;
+    private static final double RIDGE_LATITUDE_MIN = 45.52;
+    private static final double RIDGE_LATITUDE_MAX = 45.53;
+    private static final double USER_LATITUDE = 45.5;
+    private static final double USER_LONGITUDE = 5.5;
+    private static final int SEARCH_DISTANCE = 10000;
+
+    private File mDirectory;
+    private ElevationModel mElevationModel;
+    private HorizonCalculator mHorizonCalculator;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("dem", "");
+        assertTrue(mDirectory.delete() && mDirectory.mkdir());
+        final ByteBuffer samples = ByteBuffer.allocate(SAMPLES_PER_SIDE * SAMPLES_PER_SIDE * 2).order(ByteOrder.BIG_ENDIAN);
+        for (int row = 0; row < SAMPLES_PER_SIDE; row++) {
+            final double latitude = 46 - (double) row / (SAMPLES_PER_SIDE - 1);
+            final short elevation = latitude >= RIDGE_LATITUDE_MIN && latitude <= RIDGE_LATITUDE_MAX ? RIDGE_ELEVATION : GROUND_ELEVATION;
+            for (int column = 0; column < SAMPLES_PER_SIDE; column++) {
+                samples.putShort(elevation);
+            }
+        }
+        // A single void sample in the south-east corner
+        samples.putShort((SAMPLES_PER_SIDE * SAMPLES_PER_SIDE - 1) * 2, (short) -32768);
+        final FileOutputStream outputStream = new FileOutputStream(new File(mDirectory, "N45E005.hgt"));
+        try {
+            outputStream.write(samples.array());
+        } finally {
+            outputStream.close();
+        }
+        mElevationModel = new ElevationModel(mDirectory);
+        mHorizonCalculator = new HorizonCalculator(mElevationModel);
+    }
+
+    @After
+    public void tearDown() {
+        mHorizonCalculator.shutdown();
+        new File(mDirectory, "N45E005.hgt").delete();
+        mDirectory.delete();
+    }
+
+    /**
+     * Tests {@link ElevationModel#getElevation(double, double)}.
+     */
+    @Test
+    public void test_getElevation() {
+        mElevationModel.loadTilesAround(USER_LATITUDE, USER_LONGITUDE, SEARCH_DISTANCE);
+        assertTrue(mElevationModel.hasTiles());
+        assertEquals(GROUND_ELEVATION, mElevationModel.getElevation(USER_LATITUDE, USER_LONGITUDE), 0.001);
+        assertEquals(RIDGE_ELEVATION, mElevationModel.getElevation(45.525, USER_LONGITUDE), 0.001);
+        // Interpolated on the ridge slope
+        final double slopeLatitude = RIDGE_LATITUDE_MAX + 0.5 / (SAMPLES_PER_SIDE - 1);
+        final float slopeElevation = mElevationModel.getElevation(slopeLatitude, USER_LONGITUDE);
+        assertTrue(slopeElevation > GROUND_ELEVATION && slopeElevation < RIDGE_ELEVATION);
+        // Tile corners
+        assertEquals(GROUND_ELEVATION, mElevationModel.getElevation(45.9999, 5), 0.001);
+        assertEquals(GROUND_ELEVATION, mElevationModel.getElevation(45, 5), 0.001);
+        // No data
+        assertTrue(Float.isNaN(mElevationModel.getElevation(45.0001, 5.9999)));
+        assertTrue(Float.isNaN(mElevationModel.getElevation(44.5, 5.5)));
+
+        // Tiles far from the loaded area are unloaded
+        mElevationModel.loadTilesAround(10, 10, SEARCH_DISTANCE);
+        assertFalse(mElevationModel.hasTiles());
+        assertTrue(Float.isNaN(mElevationModel.getElevation(USER_LATITUDE, USER_LONGITUDE)));
+    }
+
+    /**
+     * Tests {@link HorizonCalculator#calculateHorizonProfile(double, double, float, int)} and {@link HorizonProfile#isVisible(float, int, float)}.
+     */
+    @Test
+    public void test_calculateHorizonProfile() throws InterruptedException {
+        assertNull(mHorizonCalculator.calculateHorizonProfile(10, 10, 0, SEARCH_DISTANCE));
+
+        // The user stands on the ground, whatever the altitude given by the location provider
+        final HorizonProfile horizonProfile = mHorizonCalculator.calculateHorizonProfile(USER_LATITUDE, USER_LONGITUDE, 0, SEARCH_DISTANCE);
+        final float userAltitude = GROUND_ELEVATION + 1.7f;
+        assertEquals(userAltitude, horizonProfile.getObserverAltitude(), 0.01f);
+
+        // Behind the ridge, northwards: only the points seen higher than the ridge are visible
+        assertFalse(isVisible(horizonProfile, 45.56, USER_LONGITUDE, 1000, userAltitude));
+        assertFalse(isVisible(horizonProfile, 45.56, 5.51, 1400, userAltitude));
+        assertTrue(isVisible(horizonProfile, 45.56, USER_LONGITUDE, 5000, userAltitude));
+        // The front edge of the ridge and the points before it are visible, but the ridge top hides itself
+        assertTrue(isVisible(horizonProfile, 45.521, USER_LONGITUDE, RIDGE_ELEVATION, userAltitude));
+        assertFalse(isVisible(horizonProfile, 45.529, USER_LONGITUDE, RIDGE_ELEVATION, userAltitude));
+        assertTrue(isVisible(horizonProfile, 45.51, USER_LONGITUDE, 300, userAltitude));
+        // Southwards, eastwards and westwards, the terrain is flat
+        assertTrue(isVisible(horizonProfile, 45.44, USER_LONGITUDE, 1000, userAltitude));
+        assertTrue(isVisible(horizonProfile, USER_LATITUDE, 5.6, 250, userAltitude));
+        assertTrue(isVisible(horizonProfile, USER_LATITUDE, 5.4, 250, userAltitude));
+    }
+
+    // Returns whether the given point is visible from the user location
+    private static boolean isVisible(HorizonProfile horizonProfile, double latitude, double longitude, float altitude, float userAltitude) {
+        final float azimuth = (float) GeoMath.getLocalBearing(USER_LATITUDE, USER_LONGITUDE, latitude, longitude);
+        final int distance = (int) GeoMath.getLocalDistance(USER_LATITUDE, USER_LONGITUDE, latitude, longitude);
+        return horizonProfile.isVisible(azimuth, distance, PointService.getApparentVerticalAngle(altitude - userAltitude, distance, PointService.REFRACTION_COEFFICIENT));
+    }
+}
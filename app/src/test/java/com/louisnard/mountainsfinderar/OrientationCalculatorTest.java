@@ -0,0 +1,115 @@
+package com.louisnard.mountainsfinderar;
+
+import com.louisnard.mountainsfinderar.model.services.OrientationCalculator;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit testing for the {@link OrientationCalculator} class.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class OrientationCalculatorTest {
+
+    // Error tolerance for angles, in degrees
+    private final static float ERROR_TOLERANCE = 0.5f;
+
+    // Number of simulated sensor events for the allocation test
+    private final static int SENSOR_EVENTS_NUMBER = 100000;
+
+    /**
+     * Tests the orientation calculated from {@link android.hardware.Sensor#TYPE_ROTATION_VECTOR} values.
+     */
+    @Test
+    public void test_updateRotationVector() {
+        final OrientationCalculator calculator = new OrientationCalculator();
+
+        // Device lying flat, top edge towards the North
+        calculator.updateRotationVector(new float[] {0, 0, 0, 1});
+        assertEquals(0, calculator.getAzimuthDegrees(), ERROR_TOLERANCE);
+        assertEquals(0, calculator.getPitchDegrees(), ERROR_TOLERANCE);
+        assertEquals(0, calculator.getRollDegrees(), ERROR_TOLERANCE);
+
+        // Device lying flat, rotated by 90° about the z axis
+        final float sin45 = (float) Math.sin(Math.PI / 4);
+        calculator.updateRotationVector(new float[] {0, 0, sin45, sin45});
+        assertEquals(270, calculator.getAzimuthDegrees(), ERROR_TOLERANCE);
+        assertEquals(0, calculator.getPitchDegrees(), ERROR_TOLERANCE);
+        assertEquals(0, calculator.getRollDegrees(), ERROR_TOLERANCE);
+
+        // Same rotation vector without its scalar component
+        calculator.updateRotationVector(new float[] {0, 0, sin45});
+        assertEquals(270, calculator.getAzimuthDegrees(), ERROR_TOLERANCE);
+    }
+
+    /**
+     * Tests the orientation calculated from {@link android.hardware.Sensor#TYPE_ACCELEROMETER} and {@link android.hardware.Sensor#TYPE_MAGNETIC_FIELD} values, once the smoothed values have converged.
+     */
+    @Test
+    public void test_updateGravityAndGeomagnetic() {
+        final OrientationCalculator calculator = new OrientationCalculator();
+
+        // Device lying flat, top edge towards the magnetic North
+        final float[] gravity = {0, 0, 9.81f};
+        final float[] geomagnetic = {0, 22, -42};
+        for (int i = 0; i < 200; i++) {
+            calculator.updateGravity(i, gravity);
+            calculator.updateGeomagnetic(i, geomagnetic);
+        }
+        assertEquals(0, calculator.getAzimuthDegrees(), ERROR_TOLERANCE);
+        assertEquals(0, calculator.getPitchDegrees(), ERROR_TOLERANCE);
+        assertEquals(0, calculator.getRollDegrees(), ERROR_TOLERANCE);
+
+        // Device held upright to take a picture towards the horizon
+        gravity[1] = 9.81f;
+        gravity[2] = 0;
+        for (int i = 0; i < 200; i++) {
+            calculator.updateGravity(i, gravity);
+            calculator.updateGeomagnetic(i, geomagnetic);
+        }
+        assertEquals(-90, calculator.getPitchDegrees(), ERROR_TOLERANCE);
+    }
+
+    /**
+     * Tests that updating the orientation does not allocate any object, whatever the sensor.<br>
+     * Skipped on JVMs that cannot count the allocations, see {@link AllocationCounter}.
+     */
+    @Test
+    public void test_updateOrientation_doesNotAllocate() {
+        final AllocationCounter allocationCounter = AllocationCounter.forCurrentThread();
+
+        final OrientationCalculator calculator = new OrientationCalculator();
+        final float[] rotationVector = {0.1f, 0.2f, 0.3f, 0.9f, 0};
+        final float[] gravity = {0.5f, 9.5f, 1.2f};
+        final float[] geomagnetic = {3, 22, -42};
+
+        // Warm up, so that class loading and compilation are not counted
+        simulateSensorEvents(calculator, rotationVector, gravity, geomagnetic);
+
+        final long allocatedBytesBefore = allocationCounter.getAllocatedBytes();
+        simulateSensorEvents(calculator, rotationVector, gravity, geomagnetic);
+        final long allocatedBytes = allocationCounter.getAllocatedBytes() - allocatedBytesBefore;
+
+        // A single array per event would allocate at least 16 bytes per event, the remainder is the counter's own overhead
+        final long allocatedBytesPerEvent = allocatedBytes / (3L * SENSOR_EVENTS_NUMBER);
+        assertEquals(0, allocatedBytesPerEvent);
+        assertTrue(calculator.getAzimuthDegrees() >= 0 && calculator.getAzimuthDegrees() < 360);
+    }
+
+    // Feed the calculator with sensor events of all types, slightly changing the values each time
+    private static void simulateSensorEvents(OrientationCalculator calculator, float[] rotationVector, float[] gravity, float[] geomagnetic) {
+        for (int i = 0; i < SENSOR_EVENTS_NUMBER; i++) {
+            final float noise = (i % 7) * 0.01f;
+            rotationVector[0] = 0.1f + noise;
+            gravity[0] = 0.5f + noise;
+            geomagnetic[0] = 3 + noise;
+            calculator.updateRotationVector(rotationVector);
+            calculator.updateGravity(i, gravity);
+            calculator.updateGeomagnetic(i, geomagnetic);
+        }
+    }
+}
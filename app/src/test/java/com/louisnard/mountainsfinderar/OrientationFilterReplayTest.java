@@ -0,0 +1,187 @@
+package com.louisnard.mountainsfinderar;
+
+import com.louisnard.mountainsfinderar.model.services.ComplementaryOrientationFilter;
+import com.louisnard.mountainsfinderar.model.services.KalmanOrientationFilter;
+import com.louisnard.mountainsfinderar.model.services.LowPassOrientationFilter;
+import com.louisnard.mountainsfinderar.model.services.OrientationCalculator;
+import com.louisnard.mountainsfinderar.model.services.OrientationFilter;
+import com.louisnard.mountainsfinderar.model.services.SensorTraceReader;
+import com.louisnard.mountainsfinderar.model.services.SensorTraceReplayer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static com.louisnard.mountainsfinderar.SimulatedSensorTrace.PAN_DURATION_NANOS;
+import static com.louisnard.mountainsfinderar.SimulatedSensorTrace.PAN_SPEED;
+import static com.louisnard.mountainsfinderar.SimulatedSensorTrace.SAMPLES_NUMBER;
+import static com.louisnard.mountainsfinderar.SimulatedSensorTrace.SAMPLING_PERIOD_NANOS;
+import static com.louisnard.mountainsfinderar.SimulatedSensorTrace.STATIC_DURATION_NANOS;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Replay of sensor traces through each {@link OrientationFilter} by a {@link SensorTraceReplayer}, comparing their noise, latency and cost. Results are written to the standard output.<br>
+ *
+ * The accuracy is measured on the {@link SimulatedSensorTrace}:<br>
+ * - The noise is the standard deviation of the azimuth during the second half of the static phase.<br>
+ * - The latency is the mean azimuth lag during the second half of the pan, divided by the pan speed.<br>
+ *
+ * The replay speed is measured on the {@link SimulatedSensorTrace}, or on a trace recorded on a device by the {@link com.louisnard.mountainsfinderar.model.services.Compass}
+ * if its path is given by the {@link #SENSOR_TRACE_PROPERTY} system property.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class OrientationFilterReplayTest {
+
+    // Constants
+    // The system property giving the path of a recorded sensor trace to benchmark the replay speed on
+    private static final String SENSOR_TRACE_PROPERTY = "sensorTrace";
+    // Number of replays of the trace for the allocation measure
+    private static final int ALLOCATION_REPLAYS_NUMBER = 5;
+    // Number of replays of the trace for the replay speed measure, after as many warm-up replays
+    private static final int SPEED_REPLAYS_NUMBER = 20;
+
+    /**
+     * Replays the simulated trace through each filter, and compares their noise and latency.
+     */
+    @Test
+    public void benchmark_noiseAndLatency() throws IOException {
+        final byte[] trace = SimulatedSensorTrace.generate();
+        final double[] lowPass = replay(trace, new LowPassOrientationFilter());
+        final double[] complementary = replay(trace, new ComplementaryOrientationFilter());
+        final double[] kalman = replay(trace, new KalmanOrientationFilter());
+        System.out.println("LowPassOrientationFilter: noise " + (float) lowPass[0] + "°, latency " + (float) lowPass[1] + "ms, static error " + (float) lowPass[2] + "°");
+        System.out.println("ComplementaryOrientationFilter: noise " + (float) complementary[0] + "°, latency " + (float) complementary[1] + "ms, static error " + (float) complementary[2] + "°");
+        System.out.println("KalmanOrientationFilter: noise " + (float) kalman[0] + "°, latency " + (float) kalman[1] + "ms, static error " + (float) kalman[2] + "°");
+
+        // All filters converge to the static azimuth
+        assertEquals(0, lowPass[2], 1);
+        assertEquals(0, complementary[2], 1);
+        assertEquals(0, kalman[2], 1);
+        // The gyroscope fusion filters are both less noisy and less late than the low-pass filter
+        assertTrue(complementary[0] < lowPass[0] && Math.abs(complementary[1]) < Math.abs(lowPass[1]));
+        assertTrue(kalman[0] < lowPass[0] && Math.abs(kalman[1]) < Math.abs(lowPass[1]));
+    }
+
+    /**
+     * Tests that no filter allocates any object per sensor event.<br>
+     * Skipped on JVMs that cannot count the allocations, see {@link AllocationCounter}.
+     */
+    @Test
+    public void test_replay_doesNotAllocate() throws IOException {
+        final AllocationCounter allocationCounter = AllocationCounter.forCurrentThread();
+
+        final byte[] trace = SimulatedSensorTrace.generate();
+        final OrientationFilter[] filters = new OrientationFilter[] {new LowPassOrientationFilter(), new ComplementaryOrientationFilter(), new KalmanOrientationFilter()};
+        for (OrientationFilter filter : filters) {
+            final OrientationCalculator calculator = new OrientationCalculator();
+            calculator.setOrientationFilter(filter);
+            final SensorTraceReplayer replayer = new SensorTraceReplayer(calculator);
+            // Warm up, so that class loading and compilation are not counted
+            final int eventsNumber = replayer.replay(new SensorTraceReader(new ByteArrayInputStream(trace)), null);
+
+            long allocatedBytes = 0;
+            for (int i = 0; i < ALLOCATION_REPLAYS_NUMBER; i++) {
+                // The reader and its buffers are allocated once per trace, not per event
+                final SensorTraceReader reader = new SensorTraceReader(new ByteArrayInputStream(trace));
+                filter.reset();
+                final long allocatedBytesBefore = allocationCounter.getAllocatedBytes();
+                replayer.replay(reader, null);
+                allocatedBytes += allocationCounter.getAllocatedBytes() - allocatedBytesBefore;
+            }
+
+            // A single array per event would allocate at least 16 bytes per event, the remainder is the counter's own overhead
+            assertEquals(0, allocatedBytes / ((long) ALLOCATION_REPLAYS_NUMBER * eventsNumber));
+        }
+    }
+
+    /**
+     * Replays a trace through each filter, and measures the number of events replayed per second.
+     */
+    @Test
+    public void benchmark_eventsPerSecond() throws IOException {
+        final String sensorTracePath = System.getProperty(SENSOR_TRACE_PROPERTY);
+        final byte[] trace;
+        if (sensorTracePath != null) {
+            trace = Files.readAllBytes(new File(sensorTracePath).toPath());
+            System.out.println("Sensor trace: " + sensorTracePath + ", " + trace.length + " bytes");
+        } else {
+            trace = SimulatedSensorTrace.generate();
+            System.out.println("Simulated sensor trace: " + trace.length + " bytes");
+        }
+
+        final OrientationFilter[] filters = new OrientationFilter[] {new LowPassOrientationFilter(), new ComplementaryOrientationFilter(), new KalmanOrientationFilter()};
+        for (OrientationFilter filter : filters) {
+            final OrientationCalculator calculator = new OrientationCalculator();
+            calculator.setOrientationFilter(filter);
+            final SensorTraceReplayer replayer = new SensorTraceReplayer(calculator);
+            long eventsNumber = 0;
+            long durationNanos = 0;
+            for (int i = 0; i < 2 * SPEED_REPLAYS_NUMBER; i++) {
+                filter.reset();
+                final long startNanos = System.nanoTime();
+                final int replayedEventsNumber = replayer.replay(new SensorTraceReader(new ByteArrayInputStream(trace)), null);
+                // Warm-up replays are not counted
+                if (i >= SPEED_REPLAYS_NUMBER) {
+                    durationNanos += System.nanoTime() - startNanos;
+                    eventsNumber += replayedEventsNumber;
+                }
+            }
+            assertTrue(eventsNumber > 0);
+            System.out.println(filter.getClass().getSimpleName() + ": " + eventsNumber * 1000000000L / Math.max(1, durationNanos) + " events/s (" + (float) durationNanos / eventsNumber + "ns per event)");
+        }
+    }
+
+    // Replays the trace through the filter, and returns its noise in degrees, latency in milliseconds and static mean error in degrees
+    private static double[] replay(byte[] trace, OrientationFilter filter) throws IOException {
+        final OrientationCalculator calculator = new OrientationCalculator();
+        calculator.setOrientationFilter(filter);
+        // Azimuth after the last event of each sample
+        final double[] azimuths = new double[SAMPLES_NUMBER];
+        new SensorTraceReplayer(calculator).replay(new SensorTraceReader(new ByteArrayInputStream(trace)), new SensorTraceReplayer.ReplayListener() {
+            @Override
+            public void onOrientationChanged(long timestampNanos, float azimuth, float pitch, float roll) {
+                azimuths[SimulatedSensorTrace.getSample(timestampNanos)] = azimuth;
+            }
+        });
+
+        // Static phase, second half
+        final int staticFrom = SimulatedSensorTrace.getSample(STATIC_DURATION_NANOS / 2);
+        final int staticTo = SimulatedSensorTrace.getSample(STATIC_DURATION_NANOS);
+        double errorsSum = 0;
+        double squaredErrorsSum = 0;
+        for (int i = staticFrom; i < staticTo; i++) {
+            final double error = getAngleDifference(azimuths[i], SimulatedSensorTrace.getAzimuth(i * SAMPLING_PERIOD_NANOS));
+            errorsSum += error;
+            squaredErrorsSum += error * error;
+        }
+        final double staticMeanError = errorsSum / (staticTo - staticFrom);
+        final double noise = Math.sqrt(squaredErrorsSum / (staticTo - staticFrom) - staticMeanError * staticMeanError);
+
+        // Pan phase, second half
+        final int panFrom = SimulatedSensorTrace.getSample(STATIC_DURATION_NANOS + PAN_DURATION_NANOS / 2);
+        double lagsSum = 0;
+        for (int i = panFrom; i < SAMPLES_NUMBER; i++) {
+            lagsSum += getAngleDifference(SimulatedSensorTrace.getAzimuth(i * SAMPLING_PERIOD_NANOS), azimuths[i]);
+        }
+        final double latencyMillis = (lagsSum / (SAMPLES_NUMBER - panFrom) + staticMeanError) / PAN_SPEED * 1000;
+
+        return new double[] {noise, latencyMillis, staticMeanError};
+    }
+
+    // Returns the difference between two angles in degrees, from -180° to 180°
+    private static double getAngleDifference(double angle, double reference) {
+        double difference = (angle - reference) % 360;
+        if (difference > 180) {
+            difference -= 360;
+        } else if (difference < -180) {
+            difference += 360;
+        }
+        return difference;
+    }
+}
@@ -0,0 +1,164 @@
+package com.louisnard.mountainsfinderar;
+
+import com.louisnard.mountainsfinderar.model.services.OrientationCalculator;
+import com.louisnard.mountainsfinderar.model.services.OrientationPredictor;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit testing for the {@link OrientationPredictor} class.<br>
+ *
+ * The traces are simulated pans of a device held upright (pitch = -80°), sampled every {@link #SAMPLING_PERIOD_NANOS} as in the {@link com.louisnard.mountainsfinderar.model.services.Compass} frame-paced mode,
+ * with a seeded noise on the azimuth.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class OrientationPredictorTest {
+
+    // Constants
+    // Error tolerance for angles, in degrees
+    private final static float ERROR_TOLERANCE = 0.5f;
+    // Sensors sampling period, in nanoseconds
+    private final static long SAMPLING_PERIOD_NANOS = 5000000;
+    // Prediction horizon, in nanoseconds
+    private final static long HORIZON_NANOS = 50000000;
+    // Device pitch during the pans, in degrees
+    private final static double PITCH = -80;
+    // Pan speed, in degrees per second
+    private final static double PAN_SPEED = 60;
+    // Noise amplitude on the azimuth, in degrees
+    private final static double NOISE = 0.05;
+
+    private final OrientationCalculator mCalculator = new OrientationCalculator();
+    private final float[] mRotationMatrix = new float[9];
+    private final float[] mOrientation = new float[3];
+
+    /**
+     * Tests the extrapolation of a pan with the angular velocity estimated from the successive rotations.
+     */
+    @Test
+    public void test_predict_fromSuccessiveRotations() {
+        final OrientationPredictor predictor = new OrientationPredictor(HORIZON_NANOS);
+        final Random random = new Random(23);
+        long timestampNanos = 0;
+        double azimuth = 30;
+        for (int i = 0; i < 100; i++) {
+            timestampNanos += SAMPLING_PERIOD_NANOS;
+            azimuth += PAN_SPEED * SAMPLING_PERIOD_NANOS * 1e-9;
+            predictor.updateRotation(timestampNanos, getRotationMatrix(azimuth + (random.nextDouble() - 0.5) * 2 * NOISE));
+        }
+        assertEquals(Math.toRadians(PAN_SPEED), predictor.getAngularSpeed(), Math.toRadians(PAN_SPEED) / 10);
+
+        // The azimuth at the display time is predicted, whereas the last sample lags by PAN_SPEED * HORIZON = 3°
+        final double expectedAzimuth = azimuth + PAN_SPEED * HORIZON_NANOS * 1e-9;
+        assertTrue(predictor.predict(timestampNanos + HORIZON_NANOS, mRotationMatrix));
+        mCalculator.getOrientationDegrees(mRotationMatrix, mOrientation);
+        assertEquals(expectedAzimuth, mOrientation[0], ERROR_TOLERANCE);
+        assertEquals(PITCH, mOrientation[1], ERROR_TOLERANCE);
+        assertEquals(0, mOrientation[2], ERROR_TOLERANCE);
+    }
+
+    /**
+     * Tests that the prediction stops overshooting shortly after the end of a pan.
+     */
+    @Test
+    public void test_predict_panStop() {
+        final OrientationPredictor predictor = new OrientationPredictor(HORIZON_NANOS);
+        long timestampNanos = 0;
+        double azimuth = 350;
+        for (int i = 0; i < 100; i++) {
+            timestampNanos += SAMPLING_PERIOD_NANOS;
+            azimuth += PAN_SPEED * SAMPLING_PERIOD_NANOS * 1e-9;
+            predictor.updateRotation(timestampNanos, getRotationMatrix(azimuth));
+        }
+        // The pan stops on the North side: 100 samples at 60°/s from 350° = 20°
+        for (int i = 0; i < 40; i++) {
+            timestampNanos += SAMPLING_PERIOD_NANOS;
+            predictor.updateRotation(timestampNanos, getRotationMatrix(azimuth));
+        }
+        assertTrue(predictor.predict(timestampNanos + HORIZON_NANOS, mRotationMatrix));
+        mCalculator.getOrientationDegrees(mRotationMatrix, mOrientation);
+        assertEquals(20, mOrientation[0], ERROR_TOLERANCE);
+    }
+
+    /**
+     * Tests that the gyroscope values are used instead of the successive rotations.
+     */
+    @Test
+    public void test_predict_fromGyroscope() {
+        final OrientationPredictor predictor = new OrientationPredictor(HORIZON_NANOS);
+        // The gyroscope measures a pan, in the device coordinate system, whereas the rotations have not been updated yet
+        final float[] rotationMatrix = getRotationMatrix(100);
+        final double yawSpeed = Math.toRadians(PAN_SPEED);
+        // The azimuth increases clockwise, around the world -z axis: the angular velocity is -yawSpeed * z, expressed in the device coordinate system
+        final float[] gyroscope = new float[] {-(float) yawSpeed * rotationMatrix[6], -(float) yawSpeed * rotationMatrix[7], -(float) yawSpeed * rotationMatrix[8]};
+        predictor.updateGyroscope(0, gyroscope);
+        predictor.updateRotation(SAMPLING_PERIOD_NANOS, rotationMatrix);
+        predictor.updateGyroscope(2 * SAMPLING_PERIOD_NANOS, gyroscope);
+        predictor.updateRotation(2 * SAMPLING_PERIOD_NANOS, rotationMatrix);
+        assertEquals(yawSpeed, predictor.getAngularSpeed(), 1e-3);
+
+        assertTrue(predictor.predict(2 * SAMPLING_PERIOD_NANOS + HORIZON_NANOS, mRotationMatrix));
+        mCalculator.getOrientationDegrees(mRotationMatrix, mOrientation);
+        assertEquals(100 + PAN_SPEED * HORIZON_NANOS * 1e-9, mOrientation[0], ERROR_TOLERANCE);
+        assertEquals(PITCH, mOrientation[1], ERROR_TOLERANCE);
+    }
+
+    /**
+     * Tests the limits of the extrapolation time.
+     */
+    @Test
+    public void test_predict_horizon() {
+        final OrientationPredictor predictor = new OrientationPredictor(HORIZON_NANOS);
+        assertFalse(predictor.predict(0, mRotationMatrix));
+        long timestampNanos = 0;
+        double azimuth = 200;
+        for (int i = 0; i < 100; i++) {
+            timestampNanos += SAMPLING_PERIOD_NANOS;
+            azimuth += PAN_SPEED * SAMPLING_PERIOD_NANOS * 1e-9;
+            predictor.updateRotation(timestampNanos, getRotationMatrix(azimuth));
+        }
+
+        // Limited to the maximum horizon
+        predictor.predict(timestampNanos + 1000000000, mRotationMatrix);
+        mCalculator.getOrientationDegrees(mRotationMatrix, mOrientation);
+        assertEquals(azimuth + PAN_SPEED * HORIZON_NANOS * 1e-9, mOrientation[0], ERROR_TOLERANCE);
+
+        // No extrapolation to the past
+        predictor.predict(timestampNanos - HORIZON_NANOS, mRotationMatrix);
+        mCalculator.getOrientationDegrees(mRotationMatrix, mOrientation);
+        assertEquals(azimuth, mOrientation[0], ERROR_TOLERANCE);
+
+        // Prediction disabled
+        predictor.setMaxHorizonNanos(0);
+        predictor.predict(timestampNanos + HORIZON_NANOS, mRotationMatrix);
+        mCalculator.getOrientationDegrees(mRotationMatrix, mOrientation);
+        assertEquals(azimuth, mOrientation[0], ERROR_TOLERANCE);
+
+        // Forgotten rotations
+        predictor.reset();
+        assertFalse(predictor.predict(timestampNanos, mRotationMatrix));
+    }
+
+    // Returns the rotation matrix of a device held upright with the given azimuth: rotation of PITCH around the device x axis, then of the azimuth clockwise around the world z axis
+    private static float[] getRotationMatrix(double azimuthDegrees) {
+        final double pitch = Math.toRadians(-PITCH);
+        final double yaw = Math.toRadians(-azimuthDegrees);
+        final double cosPitch = Math.cos(pitch);
+        final double sinPitch = Math.sin(pitch);
+        final double cosYaw = Math.cos(yaw);
+        final double sinYaw = Math.sin(yaw);
+        // Rz(yaw) * Rx(pitch)
+        return new float[] {
+                (float) cosYaw, (float) (-sinYaw * cosPitch), (float) (sinYaw * sinPitch),
+                (float) sinYaw, (float) (cosYaw * cosPitch), (float) (-cosYaw * sinPitch),
+                0, (float) sinPitch, (float) cosPitch};
+    }
+}
@@ -0,0 +1,88 @@
+package com.louisnard.mountainsfinderar;
+
+import com.louisnard.mountainsfinderar.model.services.OrientationRingBuffer;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit testing for the {@link OrientationRingBuffer} class.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class OrientationRingBufferTest {
+
+    // Error tolerance for angles, in degrees
+    private final static float ERROR_TOLERANCE = 0.01f;
+
+    /**
+     * Tests the average of the samples added between two frames, and their consumption.
+     */
+    @Test
+    public void test_consume() {
+        final OrientationRingBuffer buffer = new OrientationRingBuffer(8);
+        final float[] orientation = new float[] {-1, -1, -1};
+        assertFalse(buffer.consume(orientation));
+        assertEquals(-1, orientation[0], ERROR_TOLERANCE);
+
+        buffer.add(1000, 10, -90, 0);
+        buffer.add(2000, 20, -80, 10);
+        buffer.add(3000, 30, -70, 20);
+        assertEquals(3, buffer.size());
+        assertTrue(buffer.consume(orientation));
+        assertEquals(20, orientation[0], ERROR_TOLERANCE);
+        assertEquals(-80, orientation[1], ERROR_TOLERANCE);
+        assertEquals(10, orientation[2], ERROR_TOLERANCE);
+        assertEquals(2000, buffer.getLastConsumedTimestampNanos());
+
+        // The consumed samples are not averaged again
+        assertEquals(0, buffer.size());
+        assertFalse(buffer.consume(orientation));
+        buffer.add(4000, 40, -60, 30);
+        assertTrue(buffer.consume(orientation));
+        assertEquals(40, orientation[0], ERROR_TOLERANCE);
+        assertEquals(4000, buffer.getLastConsumedTimestampNanos());
+    }
+
+    /**
+     * Tests the average of angles on both sides of the North and of the pitch limits.
+     */
+    @Test
+    public void test_consume_wrapAround() {
+        final OrientationRingBuffer buffer = new OrientationRingBuffer(8);
+        final float[] orientation = new float[3];
+
+        buffer.add(0, 350, 175, 0);
+        buffer.add(0, 10, -175, 0);
+        assertTrue(buffer.consume(orientation));
+        assertEquals(0, orientation[0] % 360, ERROR_TOLERANCE);
+        assertEquals(180, Math.abs(orientation[1]), ERROR_TOLERANCE);
+
+        buffer.add(0, 355, 0, 0);
+        buffer.add(0, 359, 0, 0);
+        buffer.add(0, 3, 0, 0);
+        assertTrue(buffer.consume(orientation));
+        assertEquals(359, orientation[0], ERROR_TOLERANCE);
+    }
+
+    /**
+     * Tests that the oldest samples are overwritten when more samples than the capacity are added between two frames.
+     */
+    @Test
+    public void test_add_overflow() {
+        final OrientationRingBuffer buffer = new OrientationRingBuffer(4);
+        final float[] orientation = new float[3];
+        for (int i = 0; i < 10; i++) {
+            buffer.add(i * 1000, i, 0, 0);
+        }
+        assertEquals(4, buffer.size());
+        assertTrue(buffer.consume(orientation));
+        // Samples 6 to 9 are kept
+        assertEquals(7.5f, orientation[0], ERROR_TOLERANCE);
+        assertEquals(7500, buffer.getLastConsumedTimestampNanos());
+    }
+}
@@ -1,10 +1,17 @@
 package com.louisnard.mountainsfinderar;
 
+import com.louisnard.mountainsfinderar.model.objects.BoundingBox;
 import com.louisnard.mountainsfinderar.model.services.PointService;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
 
 /**
  * Unit testing for the {@link PointService} class.
@@ -136,4 +143,181 @@ public class PointServiceTest {
         assertEquals(-179, PointService.getValidLongitude(3781), 0);
         assertEquals(-50, PointService.getValidLongitude(3550), 0);
     }
+
+    /**
+     * Tests static methods {@link PointService#getTileRow(double)}, {@link PointService#getTileColumn(double)} and {@link PointService#getTileKey(double, double)}.
+     */
+    @Test
+    public void test_getTileKey() {
+        assertEquals(0, PointService.getTileRow(-90));
+        assertEquals(900, PointService.getTileRow(0));
+        assertEquals(1352, PointService.getTileRow(45.2417));
+        assertEquals(1800, PointService.getTileRow(90));
+        assertEquals(0, PointService.getTileColumn(-180));
+        assertEquals(1800, PointService.getTileColumn(0));
+        assertEquals(1857, PointService.getTileColumn(5.7436));
+        assertEquals(PointService.TILES_PER_ROW - 1, PointService.getTileColumn(179.99));
+        assertEquals(PointService.TILES_PER_ROW - 1, PointService.getTileColumn(180));
+        assertEquals(0, PointService.getTileKey(-90, -180));
+        assertEquals(1352 * PointService.TILES_PER_ROW + 1857, PointService.getTileKey(45.2417, 5.7436));
+        // Tiles of a same row have contiguous keys
+        assertEquals(PointService.getTileKey(45.2417, 5.7436) + 1, PointService.getTileKey(45.2417, 5.8436));
+        // Neighbour points share the same tile
+        assertEquals(PointService.getTileKey(45.2417, 5.7436), PointService.getTileKey(45.2418, 5.7437));
+    }
+
+    /**
+     * Tests static method {@link PointService#getBoundingBoxes(double, double, int)}.
+     */
+    @Test
+    public void test_getBoundingBoxes() {
+        final int distance = 10000;
+        final double latitudeDelta = PointService.metersToDegrees(distance);
+        List<BoundingBox> boxes;
+
+        // At the equator, the longitude span equals the latitude span
+        boxes = PointService.getBoundingBoxes(0, 0, distance);
+        assertEquals(1, boxes.size());
+        assertEquals(-latitudeDelta, boxes.get(0).getLatitudeMin(), ERROR_TOLERANCE * latitudeDelta);
+        assertEquals(latitudeDelta, boxes.get(0).getLatitudeMax(), ERROR_TOLERANCE * latitudeDelta);
+        assertEquals(-latitudeDelta, boxes.get(0).getLongitudeMin(), ERROR_TOLERANCE * latitudeDelta);
+        assertEquals(latitudeDelta, boxes.get(0).getLongitudeMax(), ERROR_TOLERANCE * latitudeDelta);
+
+        // At 60° of latitude, the longitude span is twice the latitude span
+        boxes = PointService.getBoundingBoxes(60, 5, distance);
+        assertEquals(1, boxes.size());
+        assertEquals(60 - latitudeDelta, boxes.get(0).getLatitudeMin(), ERROR_TOLERANCE * latitudeDelta);
+        assertEquals(60 + latitudeDelta, boxes.get(0).getLatitudeMax(), ERROR_TOLERANCE * latitudeDelta);
+        assertEquals(5 - 2 * latitudeDelta, boxes.get(0).getLongitudeMin(), ERROR_TOLERANCE * latitudeDelta);
+        assertEquals(5 + 2 * latitudeDelta, boxes.get(0).getLongitudeMax(), ERROR_TOLERANCE * latitudeDelta);
+
+        // Crossing the antimeridian eastwards: one box on each side
+        boxes = PointService.getBoundingBoxes(-17, 179.95, distance);
+        assertEquals(2, boxes.size());
+        assertEquals(180, boxes.get(0).getLongitudeMax(), 0);
+        assertEquals(-180, boxes.get(1).getLongitudeMin(), 0);
+        assertTrue(boxes.get(0).getLongitudeMin() < 179.95);
+        assertTrue(boxes.get(1).getLongitudeMax() > -180 && boxes.get(1).getLongitudeMax() < -179.95);
+        assertTrue(boxes.get(0).contains(-17, 179.99));
+        assertTrue(boxes.get(1).contains(-17, -179.99));
+
+        // Crossing the antimeridian westwards: one box on each side
+        boxes = PointService.getBoundingBoxes(-17, -179.95, distance);
+        assertEquals(2, boxes.size());
+        assertTrue(boxes.get(0).contains(-17, 179.99));
+        assertTrue(boxes.get(1).contains(-17, -179.99));
+        assertFalse(boxes.get(0).contains(-17, 179));
+        assertFalse(boxes.get(1).contains(-17, -179));
+
+        // Containing a pole: all longitudes, clamped at the pole
+        boxes = PointService.getBoundingBoxes(89.95, 0, distance);
+        assertEquals(1, boxes.size());
+        assertEquals(90, boxes.get(0).getLatitudeMax(), 0);
+        assertEquals(-180, boxes.get(0).getLongitudeMin(), 0);
+        assertEquals(180, boxes.get(0).getLongitudeMax(), 0);
+        assertTrue(boxes.get(0).contains(89.99, 179));
+        boxes = PointService.getBoundingBoxes(-89.95, 120, distance);
+        assertEquals(1, boxes.size());
+        assertEquals(-90, boxes.get(0).getLatitudeMin(), 0);
+        assertTrue(boxes.get(0).contains(-89.99, -60));
+
+        // Near a pole without containing it, the longitude span is widened but not full
+        boxes = PointService.getBoundingBoxes(89, 0, distance);
+        assertEquals(1, boxes.size());
+        assertTrue(boxes.get(0).getLongitudeMax() > 5 && boxes.get(0).getLongitudeMax() < 180);
+        assertTrue(boxes.get(0).getLatitudeMax() < 90);
+    }
+
+    /**
+     * Tests static method {@link PointService#getTileKeys(List)}.
+     */
+    @Test
+    public void test_getTileKeys() {
+        int[] tileKeys;
+
+        // A box inside a single tile
+        tileKeys = PointService.getTileKeys(Collections.singletonList(new BoundingBox(45.21, 45.22, 5.71, 5.72)));
+        assertEquals(1, tileKeys.length);
+        assertEquals(PointService.getTileKey(45.21, 5.71), tileKeys[0]);
+
+        // A box over 2 rows and 3 columns of tiles, sorted by key
+        tileKeys = PointService.getTileKeys(Collections.singletonList(new BoundingBox(45.15, 45.25, 5.65, 5.85)));
+        assertEquals(6, tileKeys.length);
+        final int firstTileKey = PointService.getTileKey(45.15, 5.65);
+        assertEquals(firstTileKey, tileKeys[0]);
+        assertEquals(firstTileKey + 2, tileKeys[2]);
+        assertEquals(firstTileKey + PointService.TILES_PER_ROW, tileKeys[3]);
+        assertEquals(firstTileKey + PointService.TILES_PER_ROW + 2, tileKeys[5]);
+
+        // Boxes on both sides of the antimeridian
+        tileKeys = PointService.getTileKeys(PointService.getBoundingBoxes(-17.05, 179.995, 1000));
+        assertEquals(2, tileKeys.length);
+        assertEquals(PointService.getTileKey(-17.05, -180), tileKeys[0]);
+        assertEquals(PointService.getTileKey(-17.05, 180), tileKeys[1]);
+
+        // Overlapping boxes: no duplicates
+        tileKeys = PointService.getTileKeys(Arrays.asList(new BoundingBox(45.21, 45.22, 5.71, 5.72), new BoundingBox(45.21, 45.22, 5.71, 5.82)));
+        assertEquals(2, tileKeys.length);
+        assertTrue(tileKeys[0] < tileKeys[1]);
+    }
+
+    /**
+     * Tests static method {@link PointService#getDestination(double, double, double, double)}.
+     */
+    @Test
+    public void test_getDestination() {
+        final double oneDegree = PointService.degreesToMeters(1);
+        double[] destination;
+
+        // Along a meridian, northwards and southwards
+        destination = PointService.getDestination(45, 5, 0, oneDegree);
+        assertEquals(46, destination[0], ERROR_TOLERANCE);
+        assertEquals(5, destination[1], ERROR_TOLERANCE);
+        destination = PointService.getDestination(45, 5, 180, oneDegree);
+        assertEquals(44, destination[0], ERROR_TOLERANCE);
+        assertEquals(5, destination[1], ERROR_TOLERANCE);
+
+        // Along the equator, eastwards across the antimeridian
+        destination = PointService.getDestination(0, 179.5, 90, oneDegree);
+        assertEquals(0, destination[0], ERROR_TOLERANCE);
+        assertEquals(-179.5, destination[1], ERROR_TOLERANCE);
+
+        // Travelling nowhere
+        destination = PointService.getDestination(45.2417, 5.7436, 123, 0);
+        assertEquals(45.2417, destination[0], ERROR_TOLERANCE);
+        assertEquals(5.7436, destination[1], ERROR_TOLERANCE);
+    }
+
+    /**
+     * Tests static method {@link PointService#getApparentVerticalAngle(float, float, float)}.
+     */
+    @Test
+    public void test_getApparentVerticalAngle() {
+        // Same horizontal location: straight up or down, whatever the curvature
+        assertEquals(90, PointService.getApparentVerticalAngle(0, 0, PointService.REFRACTION_COEFFICIENT), 0);
+        assertEquals(90, PointService.getApparentVerticalAngle(100, 0, PointService.REFRACTION_COEFFICIENT), 0);
+        assertEquals(-90, PointService.getApparentVerticalAngle(-100, 0, PointService.REFRACTION_COEFFICIENT), 0);
+
+        // Lines of sight following the Earth curvature: same as on a flat Earth
+        assertEquals(PointService.getVerticalAngle(4638, 180000), PointService.getApparentVerticalAngle(4638, 180000, 1), ERROR_TOLERANCE);
+        assertEquals(45, PointService.getApparentVerticalAngle(100, 100, 1), ERROR_TOLERANCE);
+
+        // Close points: the curvature is negligible
+        assertEquals(45, PointService.getApparentVerticalAngle(100, 100, PointService.REFRACTION_COEFFICIENT), ERROR_TOLERANCE);
+        assertEquals(-45, PointService.getApparentVerticalAngle(-100, 100, PointService.REFRACTION_COEFFICIENT), ERROR_TOLERANCE);
+
+        // A point at the same altitude looks lower by half the central angle of the apparent Earth
+        final float distance = 30000;
+        final double halfCentralAngle = Math.toDegrees(distance * (1 - PointService.REFRACTION_COEFFICIENT) / PointService.EARTH_RADIUS / 2);
+        assertEquals(-halfCentralAngle, PointService.getApparentVerticalAngle(0, distance, PointService.REFRACTION_COEFFICIENT), ERROR_TOLERANCE * halfCentralAngle);
+        assertEquals(-2 * halfCentralAngle / (1 - PointService.REFRACTION_COEFFICIENT), PointService.getApparentVerticalAngle(0, 2 * distance, 0), ERROR_TOLERANCE * halfCentralAngle);
+
+        // Mont Blanc (4808m) from Lyon (170m), 180km away: the curvature drops it by around 2.2km
+        final float heightDifference = 4808 - 170;
+        final double drop = 180000.0 * 180000.0 * (1 - PointService.REFRACTION_COEFFICIENT) / (2 * PointService.EARTH_RADIUS);
+        assertEquals(2212, drop, 1);
+        final double expectedAngle = Math.toDegrees(Math.atan((heightDifference - drop) / 180000));
+        assertEquals(expectedAngle, PointService.getApparentVerticalAngle(heightDifference, 180000, PointService.REFRACTION_COEFFICIENT), ERROR_TOLERANCE);
+        assertTrue(PointService.getApparentVerticalAngle(heightDifference, 180000, PointService.REFRACTION_COEFFICIENT) < PointService.getVerticalAngle(heightDifference, 180000));
+    }
 }
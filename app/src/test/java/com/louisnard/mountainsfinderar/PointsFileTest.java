@@ -0,0 +1,153 @@
+package com.louisnard.mountainsfinderar;
+
+import com.louisnard.mountainsfinderar.model.database.PointsFile;
+import com.louisnard.mountainsfinderar.model.database.PointsFileWriter;
+import com.louisnard.mountainsfinderar.model.objects.BoundingBox;
+import com.louisnard.mountainsfinderar.model.objects.PointStore;
+import com.louisnard.mountainsfinderar.model.services.PointService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Unit testing for the {@link PointsFile} and {@link PointsFileWriter} classes.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class PointsFileTest {
+
+    // Constants
+    private static final int SEARCH_DISTANCE = 10000;
+    private static final int RANDOM_POINTS_NUMBER = 20000;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("points", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    /**
+     * Tests the points written by {@link PointsFileWriter} and read back by {@link PointsFile}.
+     */
+    @Test
+    public void test_writeAndRead() throws IOException {
+        final PointsFileWriter writer = new PointsFileWriter();
+        writer.add(45.832905, 6.865175, 4808, "Mont Blanc");
+        writer.add(45.9766, 7.6584, 4478, "Matterhorn / Cervin");
+        writer.add(-33.85, 151.2, -3, null);
+        writer.add(45.83, 6.87, 4000, "Pointe à été 山");
+        writer.write(mFile);
+
+        final PointsFile pointsFile = new PointsFile(mFile);
+        assertEquals(4, pointsFile.size());
+
+        final PointStore points = pointsFile.getPointsAround(45.85, 6.85, SEARCH_DISTANCE, null);
+        assertEquals(2, points.size());
+        final Set<String> names = new HashSet<>();
+        for (int i = 0; i < points.size(); i++) {
+            names.add(points.getName(i));
+            assertEquals(points.getName(i), pointsFile.getName((int) points.getId(i)));
+            if ("Mont Blanc".equals(points.getName(i))) {
+                assertEquals(45.832905, points.getLatitude(i), 1e-7);
+                assertEquals(6.865175, points.getLongitude(i), 1e-7);
+                assertEquals(4808, points.getAltitude(i));
+            }
+        }
+        assertTrue(names.contains("Mont Blanc"));
+        assertTrue(names.contains("Pointe à été 山"));
+
+        final PointStore southernPoints = pointsFile.getPointsAround(-33.85, 151.2, SEARCH_DISTANCE, null);
+        assertEquals(1, southernPoints.size());
+        assertEquals(-3, southernPoints.getAltitude(0));
+        assertNull(southernPoints.getName(0));
+
+        assertEquals(0, pointsFile.getPointsAround(0, 0, SEARCH_DISTANCE, null).size());
+    }
+
+    /**
+     * Tests {@link PointsFile#getPointsAround(double, double, int, android.os.CancellationSignal)} against a linear scan of random points, including across the antimeridian.
+     */
+    @Test
+    public void test_getPointsAround() throws IOException {
+        final Random random = new Random(17);
+        final double[] latitudes = new double[RANDOM_POINTS_NUMBER];
+        final double[] longitudes = new double[RANDOM_POINTS_NUMBER];
+        final PointsFileWriter writer = new PointsFileWriter();
+        for (int i = 0; i < RANDOM_POINTS_NUMBER; i++) {
+            // Half of the points around the Alps, half around the antimeridian
+            latitudes[i] = Math.round((45 + random.nextDouble()) * 1e7) / 1e7;
+            longitudes[i] = i % 2 == 0 ? Math.round((6 + random.nextDouble()) * 1e7) / 1e7 : Math.round((random.nextDouble() - 0.5) * 1e7) / 1e7 + (random.nextBoolean() ? 179.5 : -179.5);
+            writer.add(latitudes[i], longitudes[i], i, "Point " + i);
+        }
+        writer.write(mFile);
+        final PointsFile pointsFile = new PointsFile(mFile);
+        assertEquals(RANDOM_POINTS_NUMBER, pointsFile.size());
+
+        final double[][] centers = new double[][] {{45.5, 6.5}, {45.1, 6.9}, {45.5, 179.99}, {45.5, -179.99}, {45.5, 0}};
+        for (double[] center : centers) {
+            final List<BoundingBox> boundingBoxes = PointService.getBoundingBoxes(center[0], center[1], SEARCH_DISTANCE);
+            final Set<Integer> expectedAltitudes = new HashSet<>();
+            for (int i = 0; i < RANDOM_POINTS_NUMBER; i++) {
+                for (BoundingBox boundingBox : boundingBoxes) {
+                    if (boundingBox.contains(latitudes[i], longitudes[i])) {
+                        expectedAltitudes.add(i);
+                        break;
+                    }
+                }
+            }
+            final PointStore points = pointsFile.getPointsAround(center[0], center[1], SEARCH_DISTANCE, null);
+            final Set<Integer> altitudes = new HashSet<>();
+            for (int i = 0; i < points.size(); i++) {
+                altitudes.add(points.getAltitude(i));
+                assertEquals("Point " + points.getAltitude(i), points.getName(i));
+            }
+            assertEquals(expectedAltitudes.size(), points.size());
+            assertEquals(expectedAltitudes, altitudes);
+        }
+    }
+
+    /**
+     * Tests the empty and invalid points files.
+     */
+    @Test
+    public void test_invalidFiles() throws IOException {
+        new PointsFileWriter().write(mFile);
+        final PointsFile emptyPointsFile = new PointsFile(mFile);
+        assertEquals(0, emptyPointsFile.size());
+        assertEquals(0, emptyPointsFile.getPointsAround(45.5, 6.5, SEARCH_DISTANCE, null).size());
+
+        final FileOutputStream outputStream = new FileOutputStream(mFile);
+        try {
+            outputStream.write("<gpx></gpx>".getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+        try {
+            new PointsFile(mFile);
+            fail("Invalid points file opened");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.louisnard.mountainsfinderar;
+
+import android.hardware.Sensor;
+
+import com.louisnard.mountainsfinderar.model.services.OrientationCalculator;
+import com.louisnard.mountainsfinderar.model.services.SensorTraceReader;
+import com.louisnard.mountainsfinderar.model.services.SensorTraceReplayer;
+import com.louisnard.mountainsfinderar.model.services.SensorTraceWriter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Unit testing for the {@link SensorTraceWriter}, {@link SensorTraceReader} and {@link SensorTraceReplayer} classes.
+ *
+ * @author Alexandre Louisnard
+ */
+
+public class SensorTraceTest {
+
+    // Error tolerance for angles, in degrees
+    private final static float ERROR_TOLERANCE = 0.01f;
+
+    /**
+     * Tests that the written events are read back unchanged, whatever their number of values.
+     */
+    @Test
+    public void test_writeAndRead() throws IOException {
+        final ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        final SensorTraceWriter writer = new SensorTraceWriter(trace);
+        writer.write(Sensor.TYPE_ACCELEROMETER, 1000, new float[] {0.1f, 9.8f, -0.2f});
+        writer.write(Sensor.TYPE_ROTATION_VECTOR, Long.MAX_VALUE, new float[] {0.1f, 0.2f, 0.3f, 0.9f, -1f});
+        writer.write(Sensor.TYPE_GYROSCOPE, -1, new float[0]);
+        writer.close();
+        // Header, then type, timestamp, values number and values
+        assertEquals(8 + 3 * 10 + 8 * 4, trace.size());
+
+        final SensorTraceReader reader = new SensorTraceReader(new ByteArrayInputStream(trace.toByteArray()));
+        assertTrue(reader.next());
+        assertEquals(Sensor.TYPE_ACCELEROMETER, reader.getSensorType());
+        assertEquals(1000, reader.getTimestampNanos());
+        assertTrue(Arrays.equals(new float[] {0.1f, 9.8f, -0.2f}, reader.getValues()));
+        assertTrue(reader.next());
+        assertEquals(Sensor.TYPE_ROTATION_VECTOR, reader.getSensorType());
+        assertEquals(Long.MAX_VALUE, reader.getTimestampNanos());
+        assertTrue(Arrays.equals(new float[] {0.1f, 0.2f, 0.3f, 0.9f, -1f}, reader.getValues()));
+        assertTrue(reader.next());
+        assertEquals(Sensor.TYPE_GYROSCOPE, reader.getSensorType());
+        assertEquals(-1, reader.getTimestampNanos());
+        assertEquals(0, reader.getValues().length);
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    /**
+     * Tests that a record truncated at the end of the trace is ignored, and that an invalid trace is rejected.
+     */
+    @Test
+    public void test_read_invalidTrace() throws IOException {
+        final ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        final SensorTraceWriter writer = new SensorTraceWriter(trace);
+        writer.write(Sensor.TYPE_MAGNETIC_FIELD, 1000, new float[] {20, 0, -40});
+        writer.write(Sensor.TYPE_MAGNETIC_FIELD, 2000, new float[] {20, 0, -40});
+        writer.close();
+        final byte[] truncatedTrace = Arrays.copyOf(trace.toByteArray(), trace.size() - 1);
+        final SensorTraceReader reader = new SensorTraceReader(new ByteArrayInputStream(truncatedTrace));
+        assertTrue(reader.next());
+        assertEquals(1000, reader.getTimestampNanos());
+        assertFalse(reader.next());
+
+        try {
+            new SensorTraceReader(new ByteArrayInputStream(new byte[] {'M', 'F', 'P', 'T', 0, 0, 0, 1}));
+            fail("Invalid header accepted");
+        } catch (IOException e) {
+            // Expected
+        }
+        try {
+            new SensorTraceReader(new ByteArrayInputStream(new byte[0]));
+            fail("Empty trace accepted");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Tests that the replayed events follow the same pipeline as the live ones: the rotation vector, once received, is preferred over the other sensors.
+     */
+    @Test
+    public void test_replay() throws IOException {
+        final ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        final SensorTraceWriter writer = new SensorTraceWriter(trace);
+        // Device flat, top edge towards the North
+        writer.write(Sensor.TYPE_ACCELEROMETER, 1000, new float[] {0, 0, 9.81f});
+        writer.write(Sensor.TYPE_MAGNETIC_FIELD, 2000, new float[] {0, 22, -42});
+        // Rotation vector: 90° about the z axis, top edge towards the West
+        final float halfSqrt2 = (float) Math.sqrt(0.5);
+        writer.write(Sensor.TYPE_ROTATION_VECTOR, 3000, new float[] {0, 0, halfSqrt2, halfSqrt2});
+        // Ignored from now on
+        writer.write(Sensor.TYPE_MAGNETIC_FIELD, 4000, new float[] {0, 22, -42});
+        writer.write(Sensor.TYPE_GYROSCOPE, 5000, new float[] {0, 0, 1});
+        // Unknown sensor type
+        writer.write(Sensor.TYPE_GAME_ROTATION_VECTOR, 6000, new float[] {0, 0, 0, 1});
+        writer.close();
+
+        final OrientationCalculator calculator = new OrientationCalculator();
+        final float[] azimuths = new float[8];
+        final int[] updatesNumber = new int[1];
+        final int eventsNumber = new SensorTraceReplayer(calculator).replay(new SensorTraceReader(new ByteArrayInputStream(trace.toByteArray())), new SensorTraceReplayer.ReplayListener() {
+            @Override
+            public void onOrientationChanged(long timestampNanos, float azimuth, float pitch, float roll) {
+                azimuths[(int) (timestampNanos / 1000)] = azimuth;
+                updatesNumber[0]++;
+            }
+        });
+        assertEquals(6, eventsNumber);
+        assertEquals(3, updatesNumber[0]);
+        assertEquals(0, azimuths[2], ERROR_TOLERANCE);
+        assertEquals(270, azimuths[3], ERROR_TOLERANCE);
+        assertTrue(calculator.isUsingRotationVector());
+        assertEquals(270, calculator.getAzimuthDegrees(), ERROR_TOLERANCE);
+    }
+}
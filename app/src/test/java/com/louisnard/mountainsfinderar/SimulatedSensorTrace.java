@@ -0,0 +1,100 @@
+package com.louisnard.mountainsfinderar;
+
+import android.hardware.Sensor;
+
+import com.louisnard.mountainsfinderar.model.services.SensorTraceWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Simulated sensor trace of a device held upright (pitch = -80°), static for {@link #STATIC_DURATION_NANOS}, then panning at {@link #PAN_SPEED} for {@link #PAN_DURATION_NANOS}.<br>
+ * The accelerometer, magnetometer and gyroscope are sampled every {@link #SAMPLING_PERIOD_NANOS}, with a seeded Gaussian noise, and a bias on the gyroscope.
+ * The trace is written in the format of the {@link com.louisnard.mountainsfinderar.model.services.Compass} recordings, to be replayed by a {@link com.louisnard.mountainsfinderar.model.services.SensorTraceReplayer}.
+ *
+ * @author Alexandre Louisnard
+ */
+
+final class SimulatedSensorTrace {
+
+    // Constants
+    static final long SAMPLING_PERIOD_NANOS = 5000000;
+    static final long STATIC_DURATION_NANOS = 3000000000L;
+    static final long PAN_DURATION_NANOS = 1000000000L;
+    // Pan speed, in degrees per second
+    static final double PAN_SPEED = 60;
+    // The number of samples, each of one event per sensor
+    static final int SAMPLES_NUMBER = (int) ((STATIC_DURATION_NANOS + PAN_DURATION_NANOS) / SAMPLING_PERIOD_NANOS);
+    private static final double INITIAL_AZIMUTH = 100;
+    private static final double PITCH = -80;
+    // Earth magnetic field horizontal and downward components, in µT
+    private static final double MAGNETIC_FIELD_HORIZONTAL = 22;
+    private static final double MAGNETIC_FIELD_DOWN = 42;
+    // Sensors noise standard deviations and gyroscope bias
+    private static final double ACCELEROMETER_NOISE = 0.05;
+    private static final double MAGNETOMETER_NOISE = 0.6;
+    private static final double GYROSCOPE_NOISE = 0.005;
+    private static final double GYROSCOPE_BIAS = 0.002;
+
+    private SimulatedSensorTrace() {
+    }
+
+    /**
+     * Generates the trace: for each sample, a gyroscope, an accelerometer and a magnetometer event, 1 µs apart.
+     * @return the sensor trace bytes, to be read by a {@link com.louisnard.mountainsfinderar.model.services.SensorTraceReader}.
+     */
+    static byte[] generate() {
+        final ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        final Random random = new Random(31);
+        final double pitch = Math.toRadians(-PITCH);
+        final double cosPitch = Math.cos(pitch);
+        final double sinPitch = Math.sin(pitch);
+        final float[] gravity = new float[3];
+        final float[] geomagnetic = new float[3];
+        final float[] gyroscope = new float[3];
+        try {
+            final SensorTraceWriter writer = new SensorTraceWriter(trace);
+            for (int i = 0; i < SAMPLES_NUMBER; i++) {
+                final long timestampNanos = i * SAMPLING_PERIOD_NANOS;
+                // Rotation matrix Rz(-azimuth) * Rx(-PITCH): only its second and third rows are needed
+                final double yaw = Math.toRadians(-getAzimuth(timestampNanos));
+                final double[] north = {Math.sin(yaw), Math.cos(yaw) * cosPitch, -Math.cos(yaw) * sinPitch};
+                final double[] up = {0, sinPitch, cosPitch};
+                final double yawSpeed = timestampNanos >= STATIC_DURATION_NANOS ? Math.toRadians(PAN_SPEED) : 0;
+                for (int axis = 0; axis < 3; axis++) {
+                    gravity[axis] = (float) (9.81 * up[axis] + random.nextGaussian() * ACCELEROMETER_NOISE);
+                    geomagnetic[axis] = (float) (MAGNETIC_FIELD_HORIZONTAL * north[axis] - MAGNETIC_FIELD_DOWN * up[axis] + random.nextGaussian() * MAGNETOMETER_NOISE);
+                    gyroscope[axis] = (float) (-yawSpeed * up[axis] + random.nextGaussian() * GYROSCOPE_NOISE + GYROSCOPE_BIAS);
+                }
+                writer.write(Sensor.TYPE_GYROSCOPE, timestampNanos, gyroscope);
+                writer.write(Sensor.TYPE_ACCELEROMETER, timestampNanos + 1000, gravity);
+                writer.write(Sensor.TYPE_MAGNETIC_FIELD, timestampNanos + 2000, geomagnetic);
+            }
+            writer.close();
+        } catch (IOException e) {
+            // Cannot happen with a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return trace.toByteArray();
+    }
+
+    /**
+     * Returns the true azimuth of the device at the given time.
+     * @param timestampNanos the time since the beginning of the trace, in nanoseconds.
+     * @return the azimuth in degrees, from 0° to 360°.
+     */
+    static double getAzimuth(long timestampNanos) {
+        final double panSeconds = Math.min(Math.max(0, timestampNanos - STATIC_DURATION_NANOS), PAN_DURATION_NANOS) * 1e-9;
+        return (INITIAL_AZIMUTH + PAN_SPEED * panSeconds) % 360;
+    }
+
+    /**
+     * Returns the index of the sample of the given event.
+     * @param timestampNanos the event timestamp, in nanoseconds.
+     * @return the sample index.
+     */
+    static int getSample(long timestampNanos) {
+        return (int) (timestampNanos / SAMPLING_PERIOD_NANOS);
+    }
+}
@@ -0,0 +1,83 @@
+package com.louisnard.mountainsfinderar;
+
+/**
+ * Reference implementation of the distance and initial bearing between two coordinates on the WGS84 ellipsoid, using Vincenty's inverse formulae.<br>
+ * Same algorithm as {@link android.location.Location#distanceBetween(double, double, double, double, float[])}, which is not available in unit tests, in double precision.
+ *
+ * @author Alexandre Louisnard
+ */
+
+final class VincentyReference {
+
+    // Constants
+    private static final double SEMI_MAJOR_AXIS = 6378137;
+    private static final double SEMI_MINOR_AXIS = 6356752.3142;
+    private static final double FLATTENING = (SEMI_MAJOR_AXIS - SEMI_MINOR_AXIS) / SEMI_MAJOR_AXIS;
+    private static final int MAX_ITERATIONS = 20;
+    private static final double CONVERGENCE_THRESHOLD = 1.0e-12;
+
+    private VincentyReference() {
+    }
+
+    /**
+     * Computes the distance and the initial bearing between two coordinates.
+     * @param latitude1 the origin latitude in degrees.
+     * @param longitude1 the origin longitude in degrees.
+     * @param latitude2 the destination latitude in degrees.
+     * @param longitude2 the destination longitude in degrees.
+     * @param results the array receiving the distance in meters, and the initial bearing in degrees from 0° to 360°.
+     */
+    static void computeDistanceAndBearing(double latitude1, double longitude1, double latitude2, double longitude2, double[] results) {
+        final double lat1 = Math.toRadians(latitude1);
+        final double lat2 = Math.toRadians(latitude2);
+        final double aSqMinusBSqOverBSq = (SEMI_MAJOR_AXIS * SEMI_MAJOR_AXIS - SEMI_MINOR_AXIS * SEMI_MINOR_AXIS) / (SEMI_MINOR_AXIS * SEMI_MINOR_AXIS);
+        final double l = Math.toRadians(longitude2 - longitude1);
+        final double u1 = Math.atan((1.0 - FLATTENING) * Math.tan(lat1));
+        final double u2 = Math.atan((1.0 - FLATTENING) * Math.tan(lat2));
+        final double cosU1 = Math.cos(u1);
+        final double cosU2 = Math.cos(u2);
+        final double sinU1 = Math.sin(u1);
+        final double sinU2 = Math.sin(u2);
+        final double cosU1cosU2 = cosU1 * cosU2;
+        final double sinU1sinU2 = sinU1 * sinU2;
+
+        double sigma = 0;
+        double deltaSigma = 0;
+        double cosSqAlpha;
+        double cos2SM;
+        double cosSigma;
+        double sinSigma;
+        double cosLambda = 0;
+        double sinLambda = 0;
+        double a = 0;
+        double lambda = l;
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            final double lambdaOrig = lambda;
+            cosLambda = Math.cos(lambda);
+            sinLambda = Math.sin(lambda);
+            final double t1 = cosU2 * sinLambda;
+            final double t2 = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            final double sinSqSigma = t1 * t1 + t2 * t2;
+            sinSigma = Math.sqrt(sinSqSigma);
+            cosSigma = sinU1sinU2 + cosU1cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            final double sinAlpha = (sinSigma == 0) ? 0.0 : cosU1cosU2 * sinLambda / sinSigma;
+            cosSqAlpha = 1.0 - sinAlpha * sinAlpha;
+            cos2SM = (cosSqAlpha == 0) ? 0.0 : cosSigma - 2.0 * sinU1sinU2 / cosSqAlpha;
+            final double uSquared = cosSqAlpha * aSqMinusBSqOverBSq;
+            a = 1 + (uSquared / 16384.0) * (4096.0 + uSquared * (-768 + uSquared * (320.0 - 175.0 * uSquared)));
+            final double b = (uSquared / 1024.0) * (256.0 + uSquared * (-128.0 + uSquared * (74.0 - 47.0 * uSquared)));
+            final double c = (FLATTENING / 16.0) * cosSqAlpha * (4.0 + FLATTENING * (4.0 - 3.0 * cosSqAlpha));
+            final double cos2SMSq = cos2SM * cos2SM;
+            deltaSigma = b * sinSigma * (cos2SM + (b / 4.0) * (cosSigma * (-1.0 + 2.0 * cos2SMSq) - (b / 6.0) * cos2SM * (-3.0 + 4.0 * sinSigma * sinSigma) * (-3.0 + 4.0 * cos2SMSq)));
+            lambda = l + (1.0 - c) * FLATTENING * sinAlpha * (sigma + c * sinSigma * (cos2SM + c * cosSigma * (-1.0 + 2.0 * cos2SM * cos2SM)));
+            if (Math.abs((lambda - lambdaOrig) / lambda) < CONVERGENCE_THRESHOLD) {
+                break;
+            }
+        }
+
+        results[0] = SEMI_MINOR_AXIS * a * (sigma - deltaSigma);
+        final double bearing = Math.toDegrees(Math.atan2(cosU2 * sinLambda, cosU1 * sinU2 - sinU1 * cosU2 * cosLambda));
+        results[1] = bearing < 0 ? bearing + 360 : bearing;
+    }
+}